@@ -0,0 +1,564 @@
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+/**
+ * A memory-compact alternative to FXComponentTree for trees with millions of nodes. Nodes are int ids into parallel
+ * primitive arrays holding each node's parent, first child, next sibling, number of children, component type code and
+ * the id of its text in the tree's TextPool, so a node costs 21 bytes plus its share of a deduplicated text instead of
+ * a full FXTreeNode with its own children array. Ids of deleted nodes are reused by later additions. Node 0 is always
+ * the root AnchorPane.
+ * <p>
+ * This is a prototype of the layout, kept in the benchmarks module, which measures its footprint and load time
+ * against FXComponentTree. The editor does not use it: its history, snapshots, search index and incremental exports
+ * all work on FXTreeNodes, and toComponentTree copies every node to hand a tree over to them. For large files the
+ * editor instead reads them with FXComponentTree.readFromFileLazily, whose LazyTreeFile index costs 12 bytes per
+ * unread node. Children are found by walking the sibling chain, so numChildren takes constant time but getChild,
+ * insertChild and removeChild take time proportional to the index.
+ */
+public class CompactFXTree {
+    public static final int NONE = -1; //id used for a missing parent, child, sibling or text
+    private static final ComponentType[] TYPES = ComponentType.values(); //component types by type code
+
+    private int[] parent; //parent id of each node
+    private int[] firstChild; //first child id of each node
+    private int[] nextSibling; //next sibling id of each node
+    private int[] childCount; //number of children of each node
+    private byte[] type; //component type code of each node
+    private int[] text; //id of each node's text in the text pool
+    private final TextPool textPool = new TextPool(); //pool holding the texts of the tree's nodes
+    private int capacity; //number of ids used, including freed ones
+    private int size; //number of nodes in the tree, including the root
+    private int freeList = NONE; //first freed id, with the rest linked through nextSibling
+
+    /**
+     * Creates a tree holding only the root AnchorPane
+     */
+    public CompactFXTree() {
+        this(16);
+    }
+
+    /**
+     * Creates a tree holding only the root AnchorPane, with room for a number of nodes before the arrays must grow
+     * @param initialCapacity number of nodes to make room for
+     */
+    public CompactFXTree(int initialCapacity) {
+        initialCapacity = Math.max(initialCapacity, 1);
+        parent = new int[initialCapacity];
+        firstChild = new int[initialCapacity];
+        nextSibling = new int[initialCapacity];
+        childCount = new int[initialCapacity];
+        type = new byte[initialCapacity];
+        text = new int[initialCapacity];
+        newNode(NONE, ComponentType.AnchorPane, null);
+    }
+
+    /**
+     * Getter method for the root
+     * @return the id of the root AnchorPane
+     */
+    public int getRoot() {
+        return 0;
+    }
+
+    /**
+     * Getter method for the number of nodes
+     * @return the number of nodes in the tree, including the root
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Getter method for a node's parent
+     * @param node id of the node
+     * @return id of the node's parent, or NONE for the root
+     */
+    public int getParent(int node) {
+        return parent[node];
+    }
+
+    /**
+     * Getter method for a node's first child
+     * @param node id of the node
+     * @return id of the node's first child, or NONE if it has no children
+     */
+    public int getFirstChild(int node) {
+        return firstChild[node];
+    }
+
+    /**
+     * Getter method for a node's next sibling
+     * @param node id of the node
+     * @return id of the node's next sibling, or NONE if it is the last child of its parent
+     */
+    public int getNextSibling(int node) {
+        return nextSibling[node];
+    }
+
+    /**
+     * Getter method for a node's component type
+     * @param node id of the node
+     * @return the node's component type
+     */
+    public ComponentType getType(int node) {
+        return TYPES[type[node]];
+    }
+
+    /**
+     * Getter method for a node's text
+     * @param node id of the node
+     * @return the node's text, or null for containers
+     */
+    public String getText(int node) {
+        return textPool.get(text[node]);
+    }
+
+    /**
+     * Setter method for a node's text
+     * @param node id of the node
+     * @param value the text to change the node's text to
+     */
+    public void setText(int node, String value) {
+        int old = text[node];
+        text[node] = textPool.intern(value);
+        textPool.release(old);
+    }
+
+    /**
+     * Getter method for the tree's text pool
+     * @return the pool holding the texts of the tree's nodes
+     */
+    public TextPool getTextPool() {
+        return textPool;
+    }
+
+    /**
+     * Finds whether a node can have children
+     * @param node id of the node
+     * @return true if the node is an HBox, VBox or AnchorPane
+     */
+    public boolean isContainer(int node) {
+        return TYPES[type[node]].isContainer();
+    }
+
+    /**
+     * Getter method for the number of children of a node
+     * @param node id of the node
+     * @return the number of children of the node, or -1 if it is a control
+     */
+    public int numChildren(int node) {
+        return isContainer(node) ? childCount[node] : -1;
+    }
+
+    /**
+     * Finds the child at a specified index of a node
+     * @param node id of the node
+     * @param index index of the child
+     * @return id of the child, or NONE if the node has no child at that index
+     */
+    public int getChild(int node, int index) {
+        int c = index < 0 || index >= childCount[node] ? NONE : firstChild[node];
+        while (c != NONE && index-- > 0) {
+            c = nextSibling[c];
+        }
+        return c;
+    }
+
+    /**
+     * Adds a new node as a child of a container, shifting the children at and after the index one place to the right
+     * @param node id of the container
+     * @param index index at which to add the new child
+     * @param childType component type of the new child
+     * @param childText text of the new child, ignored for containers
+     * @return id of the new child
+     * @throws InvalidIndexException if the node is a control, meaning it cannot have child nodes
+     * @throws IndexOutOfBoundsException if the index is negative or adding the node at it makes a hole
+     */
+    public int insertChild(int node, int index, ComponentType childType, String childText)
+            throws InvalidIndexException, IndexOutOfBoundsException {
+        if (!isContainer(node)) {
+            throw new InvalidIndexException("Invalid");
+        }
+        if (index < 0 || index > childCount[node]) {
+            throw new IndexOutOfBoundsException("IndexOutOfBounds");
+        }
+        int previous = NONE;
+        int next = firstChild[node];
+        for (int i = 0; i < index; i++) {
+            previous = next;
+            next = nextSibling[next];
+        }
+        int child = newNode(node, childType, childText);
+        nextSibling[child] = next;
+        if (previous == NONE) {
+            firstChild[node] = child;
+        }
+        else {
+            nextSibling[previous] = child;
+        }
+        return child;
+    }
+
+    /**
+     * Removes the child at a specified index of a node, as well as all of its children, freeing their ids
+     * @param node id of the node
+     * @param index index of the child to remove
+     * @throws IndexOutOfBoundsException if the node has no child at that index
+     */
+    public void removeChild(int node, int index) throws IndexOutOfBoundsException {
+        int previous = NONE;
+        int child = index < 0 || !isContainer(node) || index >= childCount[node] ? NONE : firstChild[node];
+        for (int i = 0; i < index && child != NONE; i++) {
+            previous = child;
+            child = nextSibling[child];
+        }
+        if (child == NONE) {
+            throw new IndexOutOfBoundsException("IndexOutOfBounds");
+        }
+        if (previous == NONE) {
+            firstChild[node] = nextSibling[child];
+        }
+        else {
+            nextSibling[previous] = nextSibling[child];
+        }
+        nextSibling[child] = NONE;
+        childCount[node]--;
+        freeSubtree(child);
+    }
+
+    /**
+     * Creates a cursor at the root of the tree. Any number of cursors can be used at once.
+     * @return a new cursor
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * A position in a CompactFXTree, offering the cursor operations of FXComponentTree
+     */
+    public class Cursor {
+        private int node; //id of the node the cursor is at
+
+        /**
+         * Getter method for the node the cursor is at
+         * @return id of the node
+         */
+        public int getNode() {
+            return node;
+        }
+
+        /**
+         * Sets the cursor to the root node
+         */
+        public void cursorToRoot() {
+            node = 0;
+        }
+
+        /**
+         * Moves the cursor to the child at the specified index
+         * @param index index of the child to move to
+         * @throws InvalidIndexException if the node has no child at that index, or the index is not 0 at the root
+         */
+        public void cursorToChild(int index) throws InvalidIndexException {
+            int child = node == 0 && index != 0 ? NONE : getChild(node, index);
+            if (child == NONE) {
+                throw new InvalidIndexException("Invalid");
+            }
+            node = child;
+        }
+
+        /**
+         * Moves the cursor to the parent of the current node, staying put at the root
+         */
+        public void cursorToParent() {
+            if (node != 0) {
+                node = parent[node];
+            }
+        }
+
+        /**
+         * Adds a new child to the node at which the cursor is
+         * @param index index at which to add the child
+         * @param childType component type of the child
+         * @param childText text of the child, ignored for containers
+         * @return id of the new child
+         * @throws InvalidIndexException if the node is a control
+         * @throws IndexOutOfBoundsException if the index is negative or adding the node at it makes a hole
+         */
+        public int addChild(int index, ComponentType childType, String childText)
+                throws InvalidIndexException, IndexOutOfBoundsException {
+            return insertChild(node, index, childType, childText);
+        }
+
+        /**
+         * Removes the child at the specified index of the node at which the cursor is, as well as all of its children
+         * @param index index of the child to remove
+         * @throws IndexOutOfBoundsException if the node has no child at that index
+         */
+        public void deleteChild(int index) throws IndexOutOfBoundsException {
+            removeChild(node, index);
+        }
+
+        /**
+         * Changes the text attribute of the node at which the cursor is
+         * @param value text to change the text attribute of the node to
+         */
+        public void setTextAtCursor(String value) {
+            setText(node, value);
+        }
+    }
+
+    /**
+     * Finds the depth of a node
+     * @param node id of the node
+     * @return the number of ancestors of the node
+     */
+    public int findDepth(int node) {
+        int depth = 0;
+        for (int p = parent[node]; p != NONE; p = parent[p]) {
+            depth++;
+        }
+        return depth;
+    }
+
+    /**
+     * Method to load in a CompactFXTree based on the information from a provided text file, in the positional format
+     * read by FXComponentTree.readFromFile
+     * @param filename name of file to load from
+     * @return a CompactFXTree matching the node information provided in the text file
+     * @throws IOException if the file cannot be read
+     * @throws MalformedTreeFileException if a line of the file does not describe a valid node of the tree
+     */
+    public static CompactFXTree readFromFile(String filename) throws IOException, MalformedTreeFileException {
+        CompactFXTree tree = new CompactFXTree(1024);
+        int[] open = new int[16]; //open ancestors of the next node, by depth
+        int[] last = new int[16]; //last child read for each open ancestor, by depth
+        last[0] = NONE;
+        try (TreeFileReader reader = new TreeFileReader(filename)) {
+            while (reader.next()) {
+                int depth = reader.getDepth();
+                int p = open[depth - 1];
+                int node = tree.newNode(p, reader.getType(), reader.getText());
+                if (last[depth - 1] == NONE) {
+                    tree.firstChild[p] = node;
+                }
+                else {
+                    tree.nextSibling[last[depth - 1]] = node;
+                }
+                last[depth - 1] = node;
+                if (depth == open.length) {
+                    open = Arrays.copyOf(open, depth * 2);
+                    last = Arrays.copyOf(last, depth * 2);
+                }
+                open[depth] = node;
+                last[depth] = NONE;
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * Creates a CompactFXTree holding the same nodes as an FXComponentTree
+     * @param source the tree to copy
+     * @return a compact copy of the tree
+     */
+    public static CompactFXTree fromComponentTree(FXComponentTree source) {
+        CompactFXTree tree = new CompactFXTree(1024);
+        int[] open = new int[16]; //copies of the walker's path, by level
+        int[] last = new int[16]; //last child copied under each copy on the path, by level
+        last[0] = NONE;
+        TreeWalker walker = new TreeWalker().start(source.getRoot(), 0);
+        walker.nextPreOrder();
+        while (walker.nextPreOrder()) {
+            FXTreeNode child = walker.getNode();
+            int level = walker.getLevel();
+            int p = open[level - 1];
+            int node = tree.newNode(p, child.getType(), child.getText());
+            if (last[level - 1] == NONE) {
+                tree.firstChild[p] = node;
+            }
+            else {
+                tree.nextSibling[last[level - 1]] = node;
+            }
+            last[level - 1] = node;
+            if (level == open.length) {
+                open = Arrays.copyOf(open, level * 2);
+                last = Arrays.copyOf(last, level * 2);
+            }
+            open[level] = node;
+            last[level] = NONE;
+        }
+        return tree;
+    }
+
+    /**
+     * Creates an FXComponentTree holding the same nodes, so that the tree can be edited with the commands of
+     * FXGuiMaker and written by the exporters of FXComponentTree
+     * @return an FXComponentTree copy of the tree with its cursor at the root
+     */
+    public FXComponentTree toComponentTree() {
+        FXComponentTree tree = new FXComponentTree();
+        FXTreeNode current = tree.getRoot();
+        int node = firstChild[0];
+        while (node != NONE) {
+            FXTreeNode copy = FXTreeNode.create(getType(node), current);
+            copy.setText(tree.getTextPool().canonical(getText(node)));
+            current.insertChild(current.numChildren(), copy);
+            if (firstChild[node] != NONE) {
+                current = copy;
+                node = firstChild[node];
+                continue;
+            }
+            while (node != 0 && nextSibling[node] == NONE) {
+                node = parent[node];
+                current = current.getParent();
+            }
+            node = node == 0 ? NONE : nextSibling[node];
+        }
+        return tree;
+    }
+
+    /**
+     * Creates a valid FXML file that can be opened in SceneBuilder, walking the arrays without recursion
+     * @param filename name of FXML file to export to
+     * @throws IOException if the file cannot be written
+     */
+    public void exportToFXML(String filename) throws IOException {
+        try (FXMLWriter writer = new FXMLWriter(new FileOutputStream(filename), textPool)) {
+            writer.writeHeader();
+            int node = firstChild[0];
+            int depth = 1;
+            while (node != NONE) {
+                writer.writeStart(getType(node), getText(node), depth);
+                if (firstChild[node] != NONE) {
+                    node = firstChild[node];
+                    depth++;
+                    continue;
+                }
+                writer.writeEnd(getType(node), depth);
+                while (node != 0 && nextSibling[node] == NONE) {
+                    node = parent[node];
+                    depth--;
+                    if (node != 0) {
+                        writer.writeEnd(getType(node), depth);
+                    }
+                }
+                node = node == 0 ? NONE : nextSibling[node];
+            }
+            writer.writeFooter();
+        }
+    }
+
+    /**
+     * Generates a text file that reflects the structure of the tree, in the same indented form as
+     * FXComponentTree.writeToFile
+     * @param filename name of the file to write the tree in
+     * @param cursor id of the node to mark as the cursor, or NONE
+     * @throws IOException if the file cannot be written
+     */
+    public void writeToFile(String filename, int cursor) throws IOException {
+        try (PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(filename), 1 << 16))) {
+            int node = 0;
+            int depth = 0;
+            while (node != NONE) {
+                for (int i = 0; i < depth; i++) {
+                    pw.print('\t');
+                }
+                pw.print(node == cursor ? "==>" : "+--");
+                pw.print(getType(node).toString());
+                if (!isContainer(node)) {
+                    pw.print(": ");
+                    pw.print(getText(node));
+                }
+                pw.println();
+                if (firstChild[node] != NONE) {
+                    node = firstChild[node];
+                    depth++;
+                    continue;
+                }
+                while (node != 0 && nextSibling[node] == NONE) {
+                    node = parent[node];
+                    depth--;
+                }
+                node = node == 0 ? NONE : nextSibling[node];
+            }
+            if (pw.checkError()) {
+                throw new IOException("Could not write " + filename);
+            }
+        }
+    }
+
+    /**
+     * Allocates a node, reusing a freed id if there is one
+     * @param p id of the node's parent
+     * @param t component type of the node
+     * @param s text of the node, ignored for containers
+     * @return id of the new node, counted as a child of its parent but not yet linked to its siblings
+     */
+    private int newNode(int p, ComponentType t, String s) {
+        int node;
+        if (freeList != NONE) {
+            node = freeList;
+            freeList = nextSibling[node];
+        }
+        else {
+            if (capacity == parent.length) {
+                grow();
+            }
+            node = capacity++;
+        }
+        parent[node] = p;
+        firstChild[node] = NONE;
+        nextSibling[node] = NONE;
+        childCount[node] = 0;
+        if (p != NONE) {
+            childCount[p]++;
+        }
+        type[node] = (byte) t.ordinal();
+        boolean container = t.isContainer();
+        text[node] = container ? NONE : textPool.intern(s);
+        size++;
+        return node;
+    }
+
+    /**
+     * Frees a detached node and all of its children
+     * @param node id of the node to free
+     */
+    private void freeSubtree(int node) {
+        int stop = parent[node];
+        while (node != stop) {
+            if (firstChild[node] != NONE) {
+                int child = firstChild[node];
+                firstChild[node] = nextSibling[child];
+                node = child;
+                continue;
+            }
+            int up = parent[node];
+            textPool.release(text[node]);
+            parent[node] = NONE;
+            nextSibling[node] = freeList;
+            freeList = node;
+            size--;
+            node = up;
+        }
+    }
+
+    /**
+     * Grows the node arrays by half
+     */
+    private void grow() {
+        int newCapacity = capacity + (capacity >> 1) + 1;
+        parent = Arrays.copyOf(parent, newCapacity);
+        firstChild = Arrays.copyOf(firstChild, newCapacity);
+        nextSibling = Arrays.copyOf(nextSibling, newCapacity);
+        childCount = Arrays.copyOf(childCount, newCapacity);
+        type = Arrays.copyOf(type, newCapacity);
+        text = Arrays.copyOf(text, newCapacity);
+    }
+}
@@ -0,0 +1,119 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Builds synthetic FXComponentTrees for the benchmarks. Nodes are numbered like a heap: node i has the children
+ * fanOut*i+1 to fanOut*i+fanOut, node 0 is the only child of the root AnchorPane, and a node is a container exactly
+ * when it has children. Control texts repeat every 1000 nodes, like the labels of a generated layout.
+ */
+public class SyntheticTree {
+
+    /**
+     * Builds a tree in memory
+     * @param nodes number of nodes below the root
+     * @param fanOut number of children of each container
+     * @return the built tree with its cursor at the root
+     */
+    public static FXComponentTree build(int nodes, int fanOut) {
+        FXComponentTree tree = new FXComponentTree();
+        FXTreeNode[] built = new FXTreeNode[nodes];
+        for (int i = 0; i < nodes; i++) {
+            FXTreeNode parent = i == 0 ? tree.getRoot() : built[(i - 1) / fanOut];
+            FXTreeNode node = FXTreeNode.create(typeOf(i, nodes, fanOut), parent);
+            if (node.getChildren() == null) {
+                node.setText(textOf(i));
+            }
+            parent.insertChild(parent.numChildren(), node);
+            built[i] = node;
+        }
+        return tree;
+    }
+
+    /**
+     * Writes a tree in the positional text format read by FXComponentTree.readFromFile
+     * @param nodes number of nodes below the root
+     * @param fanOut number of children of each container
+     * @param file file to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void writePositionalFile(int nodes, int fanOut, Path file) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("0 AnchorPane\n");
+            if (nodes > 0) {
+                writeLines(out, 0, new StringBuilder("0-0"), nodes, fanOut);
+            }
+        }
+    }
+
+    /**
+     * Writes the line of a node followed by the lines of its children
+     * @param out writer to write to
+     * @param node number of the node
+     * @param position position of the node, which is restored before returning
+     * @param nodes number of nodes below the root
+     * @param fanOut number of children of each container
+     * @throws IOException if the file cannot be written
+     */
+    private static void writeLines(Writer out, int node, StringBuilder position, int nodes, int fanOut)
+            throws IOException {
+        ComponentType type = typeOf(node, nodes, fanOut);
+        out.append(position).append(' ').append(type.toString());
+        if (!type.isContainer()) {
+            out.append(' ').append(textOf(node));
+        }
+        out.append('\n');
+        int length = position.length();
+        for (int i = 0; i < fanOut; i++) {
+            long child = (long) fanOut * node + 1 + i;
+            if (child >= nodes) {
+                break;
+            }
+            position.append('-').append(i);
+            writeLines(out, (int) child, position, nodes, fanOut);
+            position.setLength(length);
+        }
+    }
+
+    /**
+     * Finds the position of a node in the positional text format
+     * @param node number of the node
+     * @param fanOut number of children of each container
+     * @return the position of the node, such as 0-0-3-1
+     */
+    public static String positionOf(int node, int fanOut) {
+        if (node == 0) {
+            return "0-0";
+        }
+        return positionOf((node - 1) / fanOut, fanOut) + "-" + (node - 1) % fanOut;
+    }
+
+    /**
+     * Finds the component type of a node
+     * @param node number of the node
+     * @param nodes number of nodes below the root
+     * @param fanOut number of children of each container
+     * @return VBox or HBox for nodes with children, otherwise Button, Label or TextArea
+     */
+    private static ComponentType typeOf(int node, int nodes, int fanOut) {
+        if ((long) fanOut * node + 1 < nodes) {
+            return node % 2 == 0 ? ComponentType.VBox : ComponentType.HBox;
+        }
+        switch (node % 3) {
+            case 0: return ComponentType.Button;
+            case 1: return ComponentType.Label;
+            default: return ComponentType.TextArea;
+        }
+    }
+
+    /**
+     * Finds the text of a control node
+     * @param node number of the node
+     * @return the text of the node
+     */
+    private static String textOf(int node) {
+        return "Item " + node % 1000;
+    }
+}
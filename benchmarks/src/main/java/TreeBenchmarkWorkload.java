@@ -0,0 +1,99 @@
+import bench.TreeWorkload;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Runs the benchmarked operations against FXComponentTree. Output that the operations print is sent to a stream that
+ * discards it, so the console is not measured.
+ */
+public class TreeBenchmarkWorkload implements TreeWorkload {
+    private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+
+    private Path directory; //temporary directory holding the files of the workload
+    private String textFile; //positional text file of the synthetic tree
+    private String savedFile; //file the tree is saved to
+    private String exportedFile; //file the tree is exported to
+    private FXComponentTree tree; //synthetic tree with its cursor at the first container
+    private String lastPosition; //position of the last node of the tree
+    private final FXTreeNode spare = FXTreeNode.create(ComponentType.Button, null); //node added by the edit benchmark
+    private final ParallelExporter parallelExporter = new ParallelExporter(); //exporter on the common pool
+
+    public void setUp(int nodes, int fanOut) throws Exception {
+        directory = Files.createTempDirectory("fxtree-bench");
+        textFile = directory.resolve("tree.txt").toString();
+        savedFile = directory.resolve("saved.txt").toString();
+        exportedFile = directory.resolve("exported.fxml").toString();
+        SyntheticTree.writePositionalFile(nodes, fanOut, Path.of(textFile));
+        tree = SyntheticTree.build(nodes, fanOut);
+        tree.cursorToChild(0);
+        lastPosition = SyntheticTree.positionOf(nodes - 1, fanOut);
+        spare.setText("Spare");
+    }
+
+    public Object readFromFile() throws Exception {
+        return new FXComponentTree().readFromFile(textFile);
+    }
+
+    public Object readFromFileLazily() throws Exception {
+        FXComponentTree lazy = new FXComponentTree().readFromFileLazily(textFile);
+        lazy.cursorToPath(lastPosition);
+        return lazy;
+    }
+
+    public Object readCompactFromFile() throws Exception {
+        return CompactFXTree.readFromFile(textFile);
+    }
+
+    public void writeToFile() throws IOException {
+        tree.writeToFile(savedFile);
+    }
+
+    public void exportToFXML() throws IOException {
+        FXComponentTree.exportToFXML(tree, exportedFile);
+    }
+
+    public void exportToFXMLParallel() throws IOException {
+        parallelExporter.exportToFXML(tree, OutputStream.nullOutputStream());
+    }
+
+    public void writeToFileParallel() throws IOException {
+        parallelExporter.writeToFile(tree, savedFile);
+    }
+
+    public void printTree() {
+        PrintStream out = System.out;
+        System.setOut(DISCARD);
+        try {
+            tree.printTree(tree.getRoot());
+        }
+        finally {
+            System.setOut(out);
+        }
+    }
+
+    public Object addAndDeleteChild(String position) throws Exception {
+        int count = tree.getCursor().numChildren();
+        int index;
+        switch (position) {
+            case "first": index = 0; break;
+            case "middle": index = count / 2; break;
+            default: index = count; break;
+        }
+        tree.addChild(index, spare);
+        return tree.deleteChild(index);
+    }
+
+    public Object findParent() {
+        return tree.findParent(lastPosition);
+    }
+
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(Path.of(textFile));
+        Files.deleteIfExists(Path.of(savedFile));
+        Files.deleteIfExists(Path.of(exportedFile));
+        Files.deleteIfExists(directory);
+    }
+}
@@ -0,0 +1,112 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of loading, saving, exporting, printing and editing synthetic trees of 10^3 to 10^6 nodes. Run with the
+ * GC profiler (the jmh Gradle task adds -prof gc) to also get the allocation rate of each operation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TreeBenchmarks {
+
+    /**
+     * A synthetic tree of a given size and fan-out
+     */
+    @State(Scope.Benchmark)
+    public static class Shape {
+        @Param({"1000", "10000", "100000", "1000000"})
+        public int nodes;
+
+        @Param({"2", "10", "100"})
+        public int fanOut;
+
+        TreeWorkload workload;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            workload = TreeWorkload.create();
+            workload.setUp(nodes, fanOut);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            workload.tearDown();
+        }
+    }
+
+    /**
+     * Where an edit happens among the children of a container
+     */
+    @State(Scope.Benchmark)
+    public static class Edit {
+        @Param({"first", "middle", "last"})
+        public String position;
+    }
+
+    @Benchmark
+    public Object readFromFile(Shape shape) throws Exception {
+        return shape.workload.readFromFile();
+    }
+
+    @Benchmark
+    public Object readFromFileLazily(Shape shape) throws Exception {
+        return shape.workload.readFromFileLazily();
+    }
+
+    @Benchmark
+    public Object readCompactFromFile(Shape shape) throws Exception {
+        return shape.workload.readCompactFromFile();
+    }
+
+    @Benchmark
+    public void writeToFile(Shape shape) throws Exception {
+        shape.workload.writeToFile();
+    }
+
+    @Benchmark
+    public void exportToFXML(Shape shape) throws Exception {
+        shape.workload.exportToFXML();
+    }
+
+    @Benchmark
+    public void exportToFXMLParallel(Shape shape) throws Exception {
+        shape.workload.exportToFXMLParallel();
+    }
+
+    @Benchmark
+    public void writeToFileParallel(Shape shape) throws Exception {
+        shape.workload.writeToFileParallel();
+    }
+
+    @Benchmark
+    public void printTree(Shape shape) {
+        shape.workload.printTree();
+    }
+
+    @Benchmark
+    public Object addAndDeleteChild(Shape shape, Edit edit) throws Exception {
+        return shape.workload.addAndDeleteChild(edit.position);
+    }
+
+    @Benchmark
+    public Object findParent(Shape shape) {
+        return shape.workload.findParent();
+    }
+}
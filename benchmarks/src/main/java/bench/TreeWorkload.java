@@ -0,0 +1,103 @@
+package bench;
+
+/**
+ * Operations of an FXComponentTree measured by the benchmarks. The tree classes live in the default package, which
+ * JMH benchmark classes cannot import, so the operations are reached through this interface and an implementation
+ * in the default package.
+ */
+public interface TreeWorkload {
+
+    /**
+     * Builds a synthetic tree and the files the operations read and write
+     * @param nodes number of nodes below the root
+     * @param fanOut number of children of each container, which also fixes the depth of the tree
+     * @throws Exception if the files cannot be written
+     */
+    void setUp(int nodes, int fanOut) throws Exception;
+
+    /**
+     * Loads the synthetic tree from its positional text file
+     * @return the loaded tree
+     * @throws Exception if the file cannot be read
+     */
+    Object readFromFile() throws Exception;
+
+    /**
+     * Opens the synthetic tree's positional text file lazily and moves the cursor to its last node, which reads only
+     * the subtrees on the way
+     * @return the opened tree
+     * @throws Exception if the file cannot be read
+     */
+    Object readFromFileLazily() throws Exception;
+
+    /**
+     * Loads the synthetic tree from its positional text file into a CompactFXTree
+     * @return the loaded tree
+     * @throws Exception if the file cannot be read
+     */
+    Object readCompactFromFile() throws Exception;
+
+    /**
+     * Saves the tree with writeToFile
+     * @throws Exception if the file cannot be written
+     */
+    void writeToFile() throws Exception;
+
+    /**
+     * Exports the tree to an FXML file with FXComponentTree.exportToFXML. The tree is not edited between calls, so
+     * after the first one the export copies the FXML cached for its unchanged subtrees.
+     * @throws Exception if the file cannot be written
+     */
+    void exportToFXML() throws Exception;
+
+    /**
+     * Exports the tree as FXML with a ParallelExporter on the common fork/join pool to a stream that discards its
+     * output
+     * @throws Exception if the export fails
+     */
+    void exportToFXMLParallel() throws Exception;
+
+    /**
+     * Saves the tree in the text format of writeToFile with a ParallelExporter on the common fork/join pool
+     * @throws Exception if the file cannot be written
+     */
+    void writeToFileParallel() throws Exception;
+
+    /**
+     * Prints the tree with printTree to a stream that discards its output
+     */
+    void printTree();
+
+    /**
+     * Adds a child to the first container and deletes it again
+     * @param position where the child goes among the container's children: first, middle or last
+     * @return the deleted child
+     * @throws Exception if the edit fails
+     */
+    Object addAndDeleteChild(String position) throws Exception;
+
+    /**
+     * Finds the parent of the last node of the tree from its position
+     * @return the parent node
+     */
+    Object findParent();
+
+    /**
+     * Deletes the files created by setUp
+     * @throws Exception if the files cannot be deleted
+     */
+    void tearDown() throws Exception;
+
+    /**
+     * Creates the workload implemented by the default package class TreeBenchmarkWorkload
+     * @return a new workload
+     */
+    static TreeWorkload create() {
+        try {
+            return (TreeWorkload) Class.forName("TreeBenchmarkWorkload").getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("TreeBenchmarkWorkload is missing from the classpath", e);
+        }
+    }
+}
@@ -0,0 +1,430 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves and exports an FXComponentTree on a background thread while the tree goes on being edited. Each job writes the
+ * version of the tree published when it was submitted, read through a SnapshotReader, so the file is consistent even if
+ * the tree is edited while it is being written. A job writes to a temporary file next to the target and renames it
+ * over the target once it is complete, so the target is never left half written. Jobs run one at a time, in the order
+ * they were submitted, on a single daemon thread, which also runs the autosave when one is set. Submitting a job only
+ * costs the editor the path from the root to the cursor, as versions are published by copying the path to each edit.
+ * FXML exports reuse the output of the previous export for the subtrees the versions share.
+ */
+public class BackgroundSaver {
+    private static final int MAX_JOBS_KEPT = 20; //most finished jobs listed by printStatus
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 60; //longest close waits for jobs still running
+
+    private final FXComponentTree tree; //tree the jobs write
+    private final ScheduledExecutorService executor; //single thread running the jobs
+    private final Deque<Job> jobs = new ArrayDeque<>(); //jobs submitted, oldest first, guarded by this saver
+    private int nextId = 1; //number of the next job submitted
+    private ScheduledFuture<?> autosave; //autosave task, or null if autosave is off
+    private String autosaveFile; //file the autosave writes
+    private long autosaveSeconds; //time between autosaves
+    private PersistentTree autosaved; //version last written by the autosave, only used on the saver thread
+    private final VersionFXMLExporter exporter = new VersionFXMLExporter(); //exporter of FXML jobs, on the saver thread
+
+    /**
+     * The formats a job can write
+     */
+    public enum Format {
+        TEXT("txt", TreeMetrics.Operation.WRITE_FILE), BINARY("fxtree", TreeMetrics.Operation.WRITE_BINARY),
+        FXML("fxml", TreeMetrics.Operation.EXPORT_FXML);
+
+        private final String name; //name of the format in job listings
+        private final TreeMetrics.Operation operation; //operation the writing of the format is timed as
+
+        Format(String name, TreeMetrics.Operation operation) {
+            this.name = name;
+            this.operation = operation;
+        }
+
+        /**
+         * Finds the format a file is saved in by S, binary if its name ends in BinaryTreeFile.EXTENSION and text
+         * otherwise
+         * @param filename name of the file
+         * @return the format to save the file in
+         */
+        public static Format forSave(String filename) {
+            return filename.endsWith(BinaryTreeFile.EXTENSION) ? BINARY : TEXT;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * The states a job goes through
+     */
+    public enum State {
+        QUEUED, RUNNING, DONE, FAILED
+    }
+
+    /**
+     * A save or export submitted to the saver
+     */
+    public static final class Job {
+        private final int id; //number of the job, counting from 1
+        private final Format format; //format the job writes
+        private final String filename; //name of the file the job writes
+        private final boolean automatic; //whether the job was started by the autosave
+        private final long submitted = System.nanoTime(); //time the job was submitted
+        private volatile State state = State.QUEUED; //state of the job
+        private volatile long started; //time the job started running
+        private volatile long finished; //time the job finished
+        private volatile String error; //message of the failure, if the job failed
+        private boolean reported; //whether the outcome was reported, guarded by the saver
+
+        /**
+         * Creates a job
+         * @param id number of the job
+         * @param format format the job writes
+         * @param filename name of the file the job writes
+         * @param automatic whether the job was started by the autosave
+         */
+        private Job(int id, Format format, String filename, boolean automatic) {
+            this.id = id;
+            this.format = format;
+            this.filename = filename;
+            this.automatic = automatic;
+        }
+
+        /**
+         * Getter method for the number of the job
+         * @return the number of the job, counting from 1
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * Getter method for the state of the job
+         * @return the state of the job
+         */
+        public State getState() {
+            return state;
+        }
+
+        /**
+         * Getter method for the message of the failure
+         * @return the message, or null if the job did not fail
+         */
+        public String getError() {
+            return error;
+        }
+
+        /**
+         * Finds whether the job has finished, successfully or not
+         * @return true if the job is done or failed
+         */
+        public boolean isFinished() {
+            return state == State.DONE || state == State.FAILED;
+        }
+
+        /**
+         * Describes the outcome of a finished job in one line
+         * @return the description
+         */
+        public String outcome() {
+            String what = automatic ? "Autosave of " + filename : filename;
+            if (state == State.FAILED) {
+                return what + " could not be saved: " + error;
+            }
+            return what + " saved to computer";
+        }
+
+        @Override
+        public String toString() {
+            long now = System.nanoTime();
+            String time;
+            switch (state) {
+                case QUEUED:
+                    time = "waiting for " + seconds(now - submitted);
+                    break;
+                case RUNNING:
+                    time = "running for " + seconds(now - started);
+                    break;
+                default:
+                    time = "took " + seconds(finished - started);
+            }
+            return "#" + id + " " + (automatic ? "autosave" : format == Format.FXML ? "export" : "save") + " " + format
+                    + " " + filename + ", " + state.toString().toLowerCase(Locale.ROOT) + ", " + time
+                    + (state == State.FAILED ? ": " + error : "");
+        }
+
+        /**
+         * Formats a duration in seconds
+         * @param nanos the duration, in nanoseconds
+         * @return the duration, such as 1.25 s
+         */
+        private static String seconds(long nanos) {
+            return String.format(Locale.ROOT, "%.2f s", nanos / 1e9);
+        }
+    }
+
+    /**
+     * Creates a saver of a tree, whose thread is started with the first job. The tree publishes its versions from
+     * then on, so the trees loaded into it make their first version while loading and the first job submitted does
+     * not have to copy the whole tree. This constructor must be called by the thread editing the tree.
+     * @param tree the tree to save
+     */
+    public BackgroundSaver(FXComponentTree tree) {
+        this.tree = tree;
+        tree.publishVersions();
+        ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "background-saver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        pool.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        executor = pool;
+    }
+
+    /**
+     * Submits a job writing the current version of the tree. This method must be called by the thread editing the
+     * tree, and returns without waiting for the file to be written.
+     * @param filename name of the file to write
+     * @param format format to write the file in
+     * @return the job, which can be followed with printStatus
+     */
+    public synchronized Job submit(String filename, Format format) {
+        SnapshotReader reader = tree.openReader();
+        if (format == Format.TEXT) {
+            try {
+                reader.cursorToPath(tree.findPath(tree.getCursor()));
+            }
+            catch (InvalidIndexException e) {
+                //the cursor is always in the version just published, the root is marked otherwise
+            }
+        }
+        Job job = add(filename, format, false);
+        executor.execute(() -> run(job, reader));
+        return job;
+    }
+
+    /**
+     * Sets the tree to be saved to a file periodically, whenever it was edited since the last autosave. Text files
+     * written by the autosave mark the root rather than the cursor. This method must be called by the thread editing
+     * the tree.
+     * @param filename name of the file to save to, in the format given by Format.forSave
+     * @param seconds time between autosaves, or 0 to turn autosave off
+     */
+    public synchronized void setAutosave(String filename, long seconds) {
+        if (autosave != null) {
+            autosave.cancel(false);
+            autosave = null;
+        }
+        autosaveFile = filename;
+        autosaveSeconds = seconds;
+        if (seconds <= 0) {
+            return;
+        }
+        SnapshotReader reader = tree.openReader();
+        Format format = Format.forSave(filename);
+        autosave = executor.scheduleWithFixedDelay(() -> {
+            reader.refresh();
+            if (reader.getVersion() == autosaved) {
+                return;
+            }
+            Job job = add(filename, format, true);
+            if (run(job, reader)) {
+                autosaved = reader.getVersion();
+            }
+        }, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Describes the autosave
+     * @return the file and interval of the autosave, or a note that it is off
+     */
+    public synchronized String getAutosave() {
+        if (autosave == null) {
+            return "Autosave is off";
+        }
+        return "Autosaving " + autosaveFile + " every " + autosaveSeconds + " s";
+    }
+
+    /**
+     * Records a new job
+     * @param filename name of the file the job writes
+     * @param format format the job writes
+     * @param automatic whether the job is started by the autosave
+     * @return the job
+     */
+    private synchronized Job add(String filename, Format format, boolean automatic) {
+        Job job = new Job(nextId++, format, filename, automatic);
+        jobs.addLast(job);
+        int finished = 0;
+        for (Job j : jobs) {
+            if (j.isFinished()) {
+                finished++;
+            }
+        }
+        for (Iterator<Job> it = jobs.iterator(); it.hasNext() && finished > MAX_JOBS_KEPT; ) {
+            Job j = it.next();
+            if (j.isFinished() && j.reported) {
+                it.remove();
+                finished--;
+            }
+        }
+        return job;
+    }
+
+    /**
+     * Runs a job on the saver thread
+     * @param job the job
+     * @param reader reader of the version the job writes
+     * @return true if the file was written
+     */
+    private boolean run(Job job, SnapshotReader reader) {
+        job.started = System.nanoTime();
+        job.state = State.RUNNING;
+        try {
+            write(reader, job.format, job.filename);
+            job.state = State.DONE;
+        }
+        catch (Throwable e) {
+            //errors such as OutOfMemoryError fail the job too, so that it is never left running
+            job.error = e.getMessage() != null ? e.getMessage() : e.toString();
+            job.state = State.FAILED;
+        }
+        finally {
+            job.finished = System.nanoTime();
+        }
+        return job.state == State.DONE;
+    }
+
+    /**
+     * Writes a version of the tree to a temporary file and renames it over the target. The write is timed and counted
+     * in the metrics as the tree's own save or export would be, and recorded as a TreeExportEvent, taking the number
+     * of nodes from the version so that no subtree is read to count it.
+     * @param reader reader of the version to write
+     * @param format format to write the file in
+     * @param filename name of the file to write
+     * @throws IOException if the file cannot be written or renamed
+     */
+    private void write(SnapshotReader reader, Format format, String filename) throws IOException {
+        long start = TreeMetrics.start();
+        TreeExportEvent event = new TreeExportEvent();
+        event.begin();
+        String temp = filename + ".tmp";
+        boolean moved = false;
+        try {
+            switch (format) {
+                case TEXT:
+                    reader.writeToFile(temp);
+                    break;
+                case BINARY:
+                    BinaryTreeFile.write(reader.getVersion().getRoot().toLazyTreeNode(null, new TextPool()), temp);
+                    break;
+                default:
+                    try (OutputStream out = new FileOutputStream(temp)) {
+                        exporter.export(reader.getVersion(), out);
+                    }
+            }
+            Files.move(Paths.get(temp), Paths.get(filename), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            moved = true;
+        }
+        finally {
+            if (!moved) {
+                Files.deleteIfExists(Paths.get(temp));
+            }
+        }
+        if (start != TreeMetrics.NOT_TIMED || event.shouldCommit()) {
+            int nodes = reader.getVersion().getRoot().size() - 1;
+            long bytes = new File(filename).length();
+            if (TreeMetrics.on()) {
+                TreeMetrics.written(nodes, bytes);
+            }
+            if (event.shouldCommit()) {
+                event.file = filename;
+                event.format = format.toString();
+                event.nodes = nodes;
+                event.bytes = bytes;
+                event.commit();
+            }
+        }
+        TreeMetrics.stop(format.operation, start);
+    }
+
+    /**
+     * Prints the outcome of each job that finished since the last call, so that the editor learns of them between
+     * commands
+     * @param out stream to print to
+     */
+    public synchronized void reportFinished(PrintStream out) {
+        for (Job job : jobs) {
+            if (job.isFinished() && !job.reported) {
+                job.reported = true;
+                out.println(job.outcome());
+            }
+        }
+    }
+
+    /**
+     * Prints the jobs still waiting or running and the most recently finished ones, along with the autosave
+     * @param out stream to print to
+     */
+    public synchronized void printStatus(PrintStream out) {
+        List<Job> pending = new ArrayList<>();
+        for (Job job : jobs) {
+            if (!job.isFinished()) {
+                pending.add(job);
+            }
+        }
+        out.println(pending.isEmpty() ? "No saves or exports in progress"
+                : pending.size() + (pending.size() == 1 ? " save or export" : " saves and exports") + " in progress");
+        for (Job job : jobs) {
+            out.println("\t" + job);
+            if (job.isFinished()) {
+                job.reported = true;
+            }
+        }
+        out.println(getAutosave());
+    }
+
+    /**
+     * Stops the autosave and waits for the jobs already submitted to finish, reporting their outcome
+     * @param out stream to report to
+     */
+    public void close(PrintStream out) {
+        int pending;
+        synchronized (this) {
+            if (autosave != null) {
+                autosave.cancel(false);
+                autosave = null;
+            }
+            pending = (int) jobs.stream().filter(job -> !job.isFinished()).count();
+        }
+        if (pending > 0) {
+            out.println("Waiting for " + pending + (pending == 1 ? " save" : " saves") + " to finish");
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        reportFinished(out);
+    }
+}
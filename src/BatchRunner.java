@@ -0,0 +1,393 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Applies a script of FXGuiMaker commands to a tree without prompting. Each line of the script holds one command
+ * letter followed by what the interactive menu would have asked for:
+ * <pre>
+ * L file           load a .txt, .fxml or .fxtree file, reading large .txt files lazily
+ * P [lines]        print the tree, or only that many nodes around the cursor
+ * C number         move the cursor to a child, starting with 1
+ * J position       jump the cursor to a position such as 0-0-2, or to a node id such as #12
+ * R                move the cursor to the root
+ * U                move the cursor to its parent
+ * A type index [text]  add a child (H, V, T, B, L or a type name) and move the cursor to it
+ * E text           edit the text of the cursor
+ * D number         delete a child, starting with 1
+ * S file           save the tree to a text file, or to a binary file if its name ends in .fxtree
+ * X file           export the tree to an FXML file
+ * Z                undo
+ * Y                redo
+ * M                print the operation metrics, which are only measured with -Dfxgui.metrics=true
+ * Q                stop reading the script
+ * </pre>
+ * Blank lines and lines starting with # are skipped. Status lines are buffered and can be turned off, errors are
+ * reported on standard error with the number of the script line, and a JSON summary is printed once the script ends.
+ */
+public class BatchRunner {
+    private static final int BUFFER_SIZE = 1 << 16; //size of the script and output buffers
+
+    private final FXComponentTree tree = new FXComponentTree(); //tree the commands are applied to
+    private final PrintStream out; //stream for status lines
+    private final PrintStream err; //stream for errors
+    private final boolean stopOnError; //whether to stop at the first failed command
+    private final long[] counts = new long[26]; //number of commands run, by letter
+    private long commands; //number of commands run
+    private long errors; //number of commands that failed
+    private int firstErrorLine; //script line of the first failed command, or 0
+    private long elapsed; //time taken by the script, in nanoseconds
+
+    /**
+     * Creates a runner with a new empty tree
+     * @param out stream for status lines
+     * @param err stream for errors
+     * @param stopOnError whether to stop at the first failed command
+     */
+    public BatchRunner(PrintStream out, PrintStream err, boolean stopOnError) {
+        this.out = out;
+        this.err = err;
+        this.stopOnError = stopOnError;
+    }
+
+    /**
+     * Runs a script given on the command line as --batch script [--quiet] [--stop-on-error], where a script of - is
+     * read from standard input
+     * @param args command line arguments, starting with --batch
+     * @return the exit status: 0 if every command succeeded, 1 if a command failed, 2 if the arguments are wrong
+     */
+    public static int run(String[] args) {
+        String script = null;
+        boolean quiet = false;
+        boolean stopOnError = false;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--quiet")) {
+                quiet = true;
+            }
+            else if (args[i].equals("--stop-on-error")) {
+                stopOnError = true;
+            }
+            else if (script == null) {
+                script = args[i];
+            }
+            else {
+                script = null;
+                break;
+            }
+        }
+        if (script == null) {
+            System.err.println("Usage: FXGuiMaker --batch <script|-> [--quiet] [--stop-on-error]");
+            return 2;
+        }
+        PrintStream stdout = System.out;
+        PrintStream out = new PrintStream(quiet ? OutputStream.nullOutputStream()
+                : new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), BUFFER_SIZE), false);
+        BatchRunner runner = new BatchRunner(out, System.err, stopOnError);
+        System.setOut(out); //printTree and the load messages print to System.out
+        try (InputStream in = script.equals("-") ? System.in : new FileInputStream(script)) {
+            runner.run(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE));
+        }
+        catch (IOException e) {
+            System.err.println(script + " could not be read: " + e.getMessage());
+            return 2;
+        }
+        finally {
+            out.flush();
+            System.setOut(stdout);
+        }
+        stdout.println(runner.summary(script));
+        return runner.getErrors() == 0 ? 0 : 1;
+    }
+
+    /**
+     * Runs every command of a script
+     * @param script reader for the lines of the script
+     * @return false if the script was stopped by a failed command, true otherwise
+     * @throws IOException if the script cannot be read
+     */
+    public boolean run(BufferedReader script) throws IOException {
+        long start = System.nanoTime();
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = script.readLine()) != null) {
+                lineNumber++;
+                String command = line.strip();
+                if (command.isEmpty() || command.charAt(0) == '#') {
+                    continue;
+                }
+                char letter = Character.toUpperCase(command.charAt(0));
+                if (letter == 'Q') {
+                    break;
+                }
+                String argument = command.length() > 1 && command.charAt(1) == ' ' ? command.substring(2) : "";
+                if (command.length() > 1 && command.charAt(1) != ' ') {
+                    letter = '?';
+                }
+                commands++;
+                if (letter >= 'A' && letter <= 'Z') {
+                    counts[letter - 'A']++;
+                }
+                try {
+                    execute(letter, argument);
+                }
+                catch (Exception e) {
+                    errors++;
+                    if (firstErrorLine == 0) {
+                        firstErrorLine = lineNumber;
+                    }
+                    err.println("Line " + lineNumber + ": " + e.getMessage());
+                    if (stopOnError) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        finally {
+            elapsed = System.nanoTime() - start;
+            out.flush();
+        }
+    }
+
+    /**
+     * Runs one command
+     * @param letter the command letter, in upper case
+     * @param argument the rest of the command line after the letter and a space
+     * @throws Exception if the command fails, with a message describing why
+     */
+    private void execute(char letter, String argument) throws Exception {
+        switch (letter) {
+            case 'L':
+                try {
+                    if (argument.endsWith(".fxml")) {
+                        tree.readFromFXMLFile(argument);
+                    }
+                    else if (argument.endsWith(BinaryTreeFile.EXTENSION)) {
+                        tree.readFromBinaryFile(argument);
+                    }
+                    else if (new File(argument).length() >= FXComponentTree.LAZY_LOAD_SIZE) {
+                        tree.readFromFileLazily(argument);
+                    }
+                    else {
+                        tree.readFromFile(argument);
+                    }
+                }
+                catch (FileNotFoundException e) {
+                    throw new FileNotFoundException(argument + " not found");
+                }
+                out.println(argument + " loaded");
+                break;
+            case 'P':
+                if (argument.isBlank()) {
+                    tree.printTree(tree.getRoot());
+                }
+                else {
+                    tree.printAroundCursor(parseNumber(argument));
+                }
+                break;
+            case 'C':
+                int index = parseNumber(argument);
+                if (index > tree.getCursor().numChildren() || index < 1) {
+                    throw new InvalidIndexException("Invalid");
+                }
+                tree.cursorToChild(index - 1);
+                out.println("Cursor moved to " + tree.getCursor());
+                break;
+            case 'J':
+                tree.jumpTo(argument.strip());
+                out.println("Cursor moved to " + tree.getCursor() + ", node #" + tree.idOf(tree.getCursor()));
+                break;
+            case 'R':
+                tree.cursorToRoot();
+                out.println("Cursor is at root.");
+                break;
+            case 'U':
+                if (tree.getCursor() == tree.getRoot()) {
+                    throw new InvalidIndexException("Cursor already at root");
+                }
+                tree.cursorToParent();
+                out.println("Cursor Moved to " + tree.getCursor());
+                break;
+            case 'A':
+                add(argument);
+                out.println("Added");
+                break;
+            case 'E':
+                if (tree.getCursor().getType().isContainer()) {
+                    throw new InvalidIndexException("Cannot edit text");
+                }
+                tree.setTextAtCursor(argument);
+                out.println("Text Edited.");
+                break;
+            case 'D':
+                FXTreeNode deleted = tree.deleteChild(parseNumber(argument) - 1);
+                out.println(deleted + " removed");
+                break;
+            case 'S':
+                if (argument.endsWith(BinaryTreeFile.EXTENSION)) {
+                    tree.writeToBinaryFile(argument);
+                }
+                else {
+                    tree.writeToFile(argument);
+                }
+                out.println(argument + " saved to computer");
+                break;
+            case 'X':
+                FXComponentTree.exportToFXML(tree, argument);
+                out.println(argument + " saved to computer");
+                break;
+            case 'Z':
+                TreeHistory.Edit undone = tree.undo();
+                if (undone == null) {
+                    throw new InvalidIndexException("Nothing to undo");
+                }
+                out.println("Undid: " + undone);
+                break;
+            case 'Y':
+                TreeHistory.Edit redone = tree.redo();
+                if (redone == null) {
+                    throw new InvalidIndexException("Nothing to redo");
+                }
+                out.println("Redid: " + redone);
+                break;
+            case 'M':
+                out.println(TreeMetrics.get());
+                break;
+            default:
+                throw new InvalidIndexException("Unknown command");
+        }
+    }
+
+    /**
+     * Adds a child to the cursor from the arguments of an A command and moves the cursor to it
+     * @param argument the component type, the index starting with 1 and, for controls, the text
+     * @throws Exception if the type or index is not valid or the child cannot be added
+     */
+    private void add(String argument) throws Exception {
+        int typeEnd = argument.indexOf(' ');
+        if (typeEnd < 0) {
+            throw new InvalidIndexException("Invalid");
+        }
+        ComponentType type = parseType(argument.substring(0, typeEnd));
+        int indexEnd = argument.indexOf(' ', typeEnd + 1);
+        if (indexEnd < 0) {
+            indexEnd = argument.length();
+        }
+        int index = parseNumber(argument.substring(typeEnd + 1, indexEnd));
+        FXTreeNode node = FXTreeNode.create(type, tree.getCursor());
+        if (!node.getType().isContainer()) {
+            node.setText(indexEnd < argument.length() ? argument.substring(indexEnd + 1) : "");
+        }
+        tree.addChild(index - 1, node);
+        tree.cursorToChild(index - 1);
+    }
+
+    /**
+     * Finds the component type named by the argument of an A command
+     * @param name H, V, T, B or L, or the name of a component type
+     * @return the component type
+     * @throws InvalidIndexException if the name is not a component type that can be added
+     */
+    private static ComponentType parseType(String name) throws InvalidIndexException {
+        switch (name.toUpperCase()) {
+            case "H":
+            case "HBOX":
+                return ComponentType.HBox;
+            case "V":
+            case "VBOX":
+                return ComponentType.VBox;
+            case "T":
+            case "TEXTAREA":
+                return ComponentType.TextArea;
+            case "B":
+            case "BUTTON":
+                return ComponentType.Button;
+            case "L":
+            case "LABEL":
+                return ComponentType.Label;
+            default:
+                throw new InvalidIndexException("Invalid component type");
+        }
+    }
+
+    /**
+     * Reads the number argument of a command
+     * @param argument the argument
+     * @return the number
+     * @throws InvalidIndexException if the argument is not a number
+     */
+    private static int parseNumber(String argument) throws InvalidIndexException {
+        try {
+            return Integer.parseInt(argument.strip());
+        }
+        catch (NumberFormatException e) {
+            throw new InvalidIndexException("Invalid");
+        }
+    }
+
+    /**
+     * Getter method for the number of commands that failed
+     * @return the number of failed commands
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * Getter method for the tree the commands were applied to
+     * @return the tree
+     */
+    public FXComponentTree getTree() {
+        return tree;
+    }
+
+    /**
+     * Provides a one-line JSON summary of the script's run
+     * @param script name of the script
+     * @return the number of commands run and failed, the time taken, the command rate, the number of nodes in the
+     * tree and the number of commands run of each letter
+     */
+    public String summary(String script) {
+        double seconds = elapsed / 1e9;
+        StringBuilder sb = new StringBuilder("{\"script\":\"");
+        for (int i = 0; i < script.length(); i++) {
+            char c = script.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            }
+            else if (c < ' ') {
+                sb.append(String.format("\\u%04x", (int) c));
+            }
+            else {
+                sb.append(c);
+            }
+        }
+        sb.append("\",\"commands\":").append(commands);
+        sb.append(",\"errors\":").append(errors);
+        sb.append(",\"firstErrorLine\":").append(firstErrorLine);
+        sb.append(",\"elapsedMillis\":").append(String.format(Locale.ROOT, "%.3f", elapsed / 1e6));
+        sb.append(",\"commandsPerSecond\":").append(seconds == 0 ? 0 : Math.round(commands / seconds));
+        sb.append(",\"nodes\":").append(tree.numNodes() + 1);
+        sb.append(",\"counts\":{");
+        boolean first = true;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                sb.append(first ? "" : ",").append('"').append((char) ('A' + i)).append("\":").append(counts[i]);
+                first = false;
+            }
+        }
+        return sb.append("}}").toString();
+    }
+}
@@ -0,0 +1,442 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Saves and loads trees in a compact binary format through memory-mapped files. The format is, in order:
+ * <pre>
+ * magic       the four bytes FXTB
+ * version     one byte, currently 1
+ * strings     a varint count, then each distinct text as a varint byte length followed by its UTF-8 bytes
+ * nodes       a varint count of the nodes including the root, then every node in pre-order as the ordinal of its
+ *             ComponentType in one byte followed by a varint: the number of children of a container, or for a
+ *             control 1 + the index of its text in the strings, or 0 if it has no text
+ * </pre>
+ * Varints are unsigned, seven bits to a byte with the lowest bits first. Every text is stored once however many
+ * controls use it, and a load only decodes each byte once without any parsing, so both directions run at the speed
+ * of the file system. New component types must be added after the existing ones to keep their ordinals.
+ */
+public class BinaryTreeFile {
+    public static final String EXTENSION = ".fxtree"; //extension of binary tree files
+    private static final byte[] MAGIC = {'F', 'X', 'T', 'B'}; //first bytes of every binary tree file
+    private static final int VERSION = 1; //version of the format written
+    private static final int CHUNK_SIZE = 1 << 30; //size of each mapped region
+    private static final ComponentType[] TYPES = ComponentType.values(); //component types by ordinal
+
+    /**
+     * A binary tree file being written, mapped one region at a time
+     */
+    private static final class Output {
+        private final FileChannel channel; //channel of the file
+        private final long size; //size of the whole file
+        private MappedByteBuffer region; //mapped region being written
+        private long regionEnd; //offset of the file at which the region ends
+
+        /**
+         * Creates an output over a file of a known size
+         * @param channel channel of the file, open for reading and writing
+         * @param size size of the whole file
+         */
+        Output(FileChannel channel, long size) {
+            this.channel = channel;
+            this.size = size;
+        }
+
+        /**
+         * Writes one byte
+         * @param b the byte
+         * @throws IOException if the next region cannot be mapped
+         */
+        void put(int b) throws IOException {
+            if (region == null || !region.hasRemaining()) {
+                next();
+            }
+            region.put((byte) b);
+        }
+
+        /**
+         * Writes an array of bytes
+         * @param bytes the bytes
+         * @throws IOException if the next region cannot be mapped
+         */
+        void put(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                if (region == null || !region.hasRemaining()) {
+                    next();
+                }
+                int n = Math.min(bytes.length - offset, region.remaining());
+                region.put(bytes, offset, n);
+                offset += n;
+            }
+        }
+
+        /**
+         * Writes an unsigned varint
+         * @param value the value, which must not be negative
+         * @throws IOException if the next region cannot be mapped
+         */
+        void putVarint(int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                put((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            put(value);
+        }
+
+        /**
+         * Maps the region after the current one
+         * @throws IOException if the region cannot be mapped
+         */
+        private void next() throws IOException {
+            long start = regionEnd;
+            regionEnd = Math.min(size, start + CHUNK_SIZE);
+            region = channel.map(FileChannel.MapMode.READ_WRITE, start, regionEnd - start);
+        }
+    }
+
+    /**
+     * A binary tree file being read, mapped one region at a time
+     */
+    private static final class Input {
+        private final FileChannel channel; //channel of the file
+        private final long size; //size of the whole file
+        private MappedByteBuffer region; //mapped region being read
+        private long regionEnd; //offset of the file at which the region ends
+
+        /**
+         * Creates an input over a file
+         * @param channel channel of the file, open for reading
+         * @throws IOException if the size of the file cannot be found
+         */
+        Input(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+        /**
+         * Reads one byte
+         * @return the byte, from 0 to 255
+         * @throws IOException if the file ends or the next region cannot be mapped
+         */
+        int get() throws IOException {
+            if (region == null || !region.hasRemaining()) {
+                next();
+            }
+            return region.get() & 0xFF;
+        }
+
+        /**
+         * Reads bytes into an array
+         * @param bytes the array to fill
+         * @throws IOException if the file ends or the next region cannot be mapped
+         */
+        void get(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                if (region == null || !region.hasRemaining()) {
+                    next();
+                }
+                int n = Math.min(bytes.length - offset, region.remaining());
+                region.get(bytes, offset, n);
+                offset += n;
+            }
+        }
+
+        /**
+         * Reads an unsigned varint
+         * @return the value
+         * @throws IOException if the file ends or the next region cannot be mapped
+         * @throws MalformedTreeFileException if the varint does not fit in an int
+         */
+        int getVarint() throws IOException, MalformedTreeFileException {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = get();
+                if (shift == 28 && (b & 0xF8) != 0) {
+                    break; //more than the 31 bits of a non-negative int
+                }
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw malformed(this, "number too large");
+        }
+
+        /**
+         * Finds whether every byte of the file has been read
+         * @return true at the end of the file
+         */
+        boolean atEnd() {
+            return position() == size;
+        }
+
+        /**
+         * Finds the number of bytes left to read
+         * @return the number of bytes after the current offset
+         */
+        long remaining() {
+            return size - position();
+        }
+
+        /**
+         * Finds the offset of the next byte to read
+         * @return the offset within the file
+         */
+        long position() {
+            return region == null ? 0 : regionEnd - region.remaining();
+        }
+
+        /**
+         * Maps the region after the current one
+         * @throws IOException if the file ends or the region cannot be mapped
+         */
+        private void next() throws IOException {
+            long start = regionEnd;
+            if (start == size) {
+                throw new EOFException("file ends early");
+            }
+            regionEnd = Math.min(size, start + CHUNK_SIZE);
+            region = channel.map(FileChannel.MapMode.READ_ONLY, start, regionEnd - start);
+        }
+    }
+
+    /**
+     * Writes a tree to a binary file, replacing the file if it exists. The tree is walked twice, first to collect its
+     * texts and find the size of the file, then to write the file through a mapping of exactly that size.
+     * @param root root of the tree
+     * @param filename name of the file to write
+     * @return the number of nodes written, not counting the root
+     * @throws IOException if the file cannot be written
+     */
+    public static int write(FXTreeNode root, String filename) throws IOException {
+        HashMap<String, Integer> index = new HashMap<>(); //position of each text in the strings
+        ArrayList<byte[]> strings = new ArrayList<>(); //UTF-8 bytes of each text
+        long size = MAGIC.length + 1;
+        int nodes = 0;
+        TreeWalker walker = new TreeWalker().start(root, 0);
+        while (walker.nextPreOrder()) {
+            FXTreeNode node = walker.getNode();
+            nodes++;
+            if (node.getType().isContainer()) {
+                size += 1 + varintSize(node.numChildren());
+            }
+            else {
+                String text = node.getText();
+                int ref = 0;
+                if (text != null) {
+                    Integer existing = index.get(text);
+                    if (existing == null) {
+                        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+                        existing = strings.size();
+                        index.put(text, existing);
+                        strings.add(bytes);
+                        size += varintSize(bytes.length) + bytes.length;
+                    }
+                    ref = existing + 1;
+                }
+                size += 1 + varintSize(ref);
+            }
+        }
+        size += varintSize(strings.size()) + varintSize(nodes);
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Output out = new Output(channel, size);
+            out.put(MAGIC);
+            out.put(VERSION);
+            out.putVarint(strings.size());
+            for (byte[] bytes : strings) {
+                out.putVarint(bytes.length);
+                out.put(bytes);
+            }
+            out.putVarint(nodes);
+            walker.start(root, 0);
+            while (walker.nextPreOrder()) {
+                FXTreeNode node = walker.getNode();
+                out.put(node.getType().ordinal());
+                if (node.getType().isContainer()) {
+                    out.putVarint(node.numChildren());
+                }
+                else {
+                    out.putVarint(node.getText() == null ? 0 : index.get(node.getText()) + 1);
+                }
+            }
+        }
+        return nodes - 1;
+    }
+
+    /**
+     * Reads a tree from a binary file
+     * @param filename name of the file to read
+     * @param pool pool the texts of the tree's controls are added to
+     * @param size the number of nodes read, not counting the root, followed by the depth of the deepest node, set
+     * once the file is read
+     * @return the root of the tree
+     * @throws IOException if the file cannot be read
+     * @throws MalformedTreeFileException if the file is not a valid binary tree file
+     */
+    public static FXTreeNode read(String filename, TextPool pool, int[] size) throws IOException,
+            MalformedTreeFileException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            Input in = new Input(channel);
+            try {
+                return read(in, pool, size);
+            }
+            catch (EOFException e) {
+                throw malformed(in, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reads a tree from a binary file, keeping the containers whose children are still being read on an explicit
+     * stack. Every count is checked against the bytes left in the file before anything is allocated for it.
+     * @param in the file
+     * @param pool pool the texts of the tree's controls are added to
+     * @param size the number of nodes read, not counting the root, followed by the depth of the deepest node
+     * @return the root of the tree
+     * @throws IOException if the file cannot be read or ends early
+     * @throws MalformedTreeFileException if the file is not a valid binary tree file
+     */
+    private static FXTreeNode read(Input in, TextPool pool, int[] size) throws IOException,
+            MalformedTreeFileException {
+        for (byte b : MAGIC) {
+            if (in.get() != b) {
+                throw malformed(in, "not a binary tree file");
+            }
+        }
+        int version = in.get();
+        if (version != VERSION) {
+            throw malformed(in, "unsupported version " + version);
+        }
+        String[] strings = new String[readCount(in, 1)];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[readCount(in, 1)];
+            in.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        int nodes = readCount(in, 2);
+        FXTreeNode root = FXTreeNode.create(readType(in), null);
+        if (root.getType() != ComponentType.AnchorPane) {
+            throw malformed(in, "root must be an AnchorPane");
+        }
+        FXTreeNode[] open = new FXTreeNode[16]; //containers whose children are still being read, by depth + 1
+        FXTreeNode[][] children = new FXTreeNode[16][]; //children of each open container, filled in order
+        int[] filled = new int[16]; //number of children read so far of each open container
+        int top = 0; //number of open containers
+        int read = 1; //number of nodes read, including the root
+        int maxDepth = 0;
+        int childCount = readCount(in, 2);
+        if (childCount > 0) {
+            top = 1;
+            open[1] = root;
+            children[1] = new FXTreeNode[childCount];
+        }
+        while (top > 0) {
+            FXTreeNode node = FXTreeNode.create(readType(in), open[top]);
+            children[top][filled[top]++] = node;
+            read++;
+            maxDepth = Math.max(maxDepth, top);
+            if (node.getType().isContainer()) {
+                childCount = readCount(in, 2);
+            }
+            else {
+                int ref = in.getVarint();
+                if (ref > strings.length) {
+                    throw malformed(in, "text " + ref + " is not in the file");
+                }
+                node.setText(ref == 0 ? null : pool.canonical(strings[ref - 1]));
+                childCount = 0;
+            }
+            if (childCount > 0) {
+                top++;
+                if (top == open.length) {
+                    open = Arrays.copyOf(open, top * 2);
+                    children = Arrays.copyOf(children, top * 2);
+                    filled = Arrays.copyOf(filled, top * 2);
+                }
+                open[top] = node;
+                children[top] = new FXTreeNode[childCount];
+                filled[top] = 0;
+            }
+            while (top > 0 && filled[top] == children[top].length) {
+                open[top].setChildren(children[top]);
+                open[top] = null;
+                children[top] = null;
+                top--;
+            }
+        }
+        if (read != nodes) {
+            throw malformed(in, "file holds " + read + " nodes but says it holds " + nodes);
+        }
+        if (!in.atEnd()) {
+            throw malformed(in, "unexpected bytes after the last node");
+        }
+        size[0] = read - 1;
+        size[1] = maxDepth;
+        return root;
+    }
+
+    /**
+     * Reads the component type of a node
+     * @param in the file
+     * @return the component type with the ordinal read
+     * @throws IOException if the file ends
+     * @throws MalformedTreeFileException if no component type has the ordinal read
+     */
+    private static ComponentType readType(Input in) throws IOException, MalformedTreeFileException {
+        int code = in.get();
+        if (code >= TYPES.length) {
+            throw malformed(in, "unknown component type " + code);
+        }
+        return TYPES[code];
+    }
+
+    /**
+     * Reads a count of things that each take at least a number of bytes of the rest of the file
+     * @param in the file
+     * @param bytesEach least number of bytes each of the things counted takes
+     * @return the count
+     * @throws IOException if the file ends
+     * @throws MalformedTreeFileException if the rest of the file is too short to hold that many things
+     */
+    private static int readCount(Input in, int bytesEach) throws IOException, MalformedTreeFileException {
+        int count = in.getVarint();
+        if ((long) count * bytesEach > in.remaining() || count > FXTreeNode.maxChildren) {
+            throw malformed(in, "count " + count + " is larger than the file can hold");
+        }
+        return count;
+    }
+
+    /**
+     * Finds the number of bytes needed to write an unsigned varint
+     * @param value the value, which must not be negative
+     * @return the number of bytes, from 1 to 5
+     */
+    private static int varintSize(int value) {
+        int bytes = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            bytes++;
+        }
+        return bytes;
+    }
+
+    /**
+     * Creates an exception for the current offset of a file
+     * @param in the file
+     * @param message description of the problem
+     * @return an exception whose message starts with the offset
+     */
+    private static MalformedTreeFileException malformed(Input in, String message) {
+        return new MalformedTreeFileException("Offset " + in.position() + ": " + message);
+    }
+}
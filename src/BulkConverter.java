@@ -0,0 +1,250 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Converts every tree text file (.txt) under a directory to an FXML file under another directory, keeping the layout
+ * of subdirectories. Each file is streamed through its own StreamingConverter on a fixed pool of threads, so files
+ * are converted concurrently without building their trees, and a file that cannot be converted is reported without
+ * stopping the others.
+ */
+public class BulkConverter {
+    private final int threads; //number of files converted at once
+
+    /**
+     * The outcome of converting a directory
+     */
+    public static final class Report {
+        private final int threads; //number of threads used
+        private final long[] latencies; //time taken by each file, in nanoseconds
+        private final long bytesRead; //total size of the converted text files
+        private final long bytesWritten; //total size of the written FXML files
+        private final List<String> failures; //path and error message of each file that could not be converted
+        private final long elapsed; //time taken by the whole conversion, in nanoseconds
+
+        /**
+         * Creates a report
+         * @param threads number of threads used
+         * @param latencies time taken by each file, in nanoseconds
+         * @param bytesRead total size of the converted text files
+         * @param bytesWritten total size of the written FXML files
+         * @param failures path and error message of each file that could not be converted
+         * @param elapsed time taken by the whole conversion, in nanoseconds
+         */
+        private Report(int threads, long[] latencies, long bytesRead, long bytesWritten, List<String> failures,
+                long elapsed) {
+            this.threads = threads;
+            this.latencies = latencies;
+            this.bytesRead = bytesRead;
+            this.bytesWritten = bytesWritten;
+            this.failures = failures;
+            this.elapsed = elapsed;
+        }
+
+        /**
+         * Getter method for the number of files found
+         * @return the number of text files found, including the ones that failed
+         */
+        public int getFiles() {
+            return latencies.length;
+        }
+
+        /**
+         * Getter method for the files that could not be converted
+         * @return the path and error message of each failed file
+         */
+        public List<String> getFailures() {
+            return failures;
+        }
+
+        /**
+         * Finds the time taken by a percentile of the files
+         * @param percentile the percentile, between 0 and 100
+         * @return the time in milliseconds within which the percentile of files were converted
+         */
+        public double latencyMillis(double percentile) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            long[] sorted = latencies.clone();
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+            return sorted[Math.max(rank, 0)] / 1e6;
+        }
+
+        /**
+         * Provides a summary of the conversion
+         * @return the number of files converted and failed, the throughput, the latency percentiles and the failures
+         */
+        public String toString() {
+            double seconds = elapsed / 1e9;
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format(Locale.ROOT, "Converted %d of %d files in %.3f s with %d threads%n",
+                    latencies.length - failures.size(), latencies.length, seconds, threads));
+            sb.append(String.format(Locale.ROOT, "Throughput: %.1f files/s, %.1f MB/s read, %.1f MB/s written%n",
+                    latencies.length / seconds, bytesRead / 1e6 / seconds, bytesWritten / 1e6 / seconds));
+            sb.append(String.format(Locale.ROOT,
+                    "Latency per file: p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, max %.3f ms", latencyMillis(50),
+                    latencyMillis(90), latencyMillis(99), latencyMillis(100)));
+            for (String failure : failures) {
+                sb.append(System.lineSeparator()).append("Failed: ").append(failure);
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * The outcome of converting one file
+     */
+    private static final class Result {
+        private final long latency; //time taken by the file, in nanoseconds
+        private final long bytesRead; //size of the text file
+        private final long bytesWritten; //size of the FXML file, or 0 if the file failed
+        private final String failure; //error message, or null if the file was converted
+
+        /**
+         * Creates a result
+         * @param latency time taken by the file, in nanoseconds
+         * @param bytesRead size of the text file
+         * @param bytesWritten size of the FXML file, or 0 if the file failed
+         * @param failure error message, or null if the file was converted
+         */
+        private Result(long latency, long bytesRead, long bytesWritten, String failure) {
+            this.latency = latency;
+            this.bytesRead = bytesRead;
+            this.bytesWritten = bytesWritten;
+            this.failure = failure;
+        }
+    }
+
+    /**
+     * Creates a converter
+     * @param threads number of files to convert at once
+     */
+    public BulkConverter(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Converts a directory given on the command line as --convert input output [--threads n]
+     * @param args command line arguments, starting with --convert
+     * @return the exit status: 0 if every file was converted, 1 if a file failed, 2 if the arguments are wrong
+     */
+    public static int run(String[] args) {
+        List<String> dirs = new ArrayList<>();
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].equals("--threads") && i + 1 < args.length) {
+                    threads = Integer.parseInt(args[++i]);
+                }
+                else {
+                    dirs.add(args[i]);
+                }
+            }
+        }
+        catch (NumberFormatException e) {
+            threads = 0;
+        }
+        if (dirs.size() != 2 || threads < 1) {
+            System.err.println("Usage: FXGuiMaker --convert <input directory> <output directory> [--threads n]");
+            return 2;
+        }
+        try {
+            Report report = new BulkConverter(threads).convert(Paths.get(dirs.get(0)), Paths.get(dirs.get(1)));
+            System.out.println(report);
+            return report.getFailures().isEmpty() ? 0 : 1;
+        }
+        catch (IOException e) {
+            System.err.println(dirs.get(0) + " could not be read: " + e.getMessage());
+            return 2;
+        }
+    }
+
+    /**
+     * Converts every text file under a directory to FXML
+     * @param input directory to look for text files in, including its subdirectories
+     * @param output directory to write the FXML files to, with the same names and subdirectories as the text files
+     * @return the outcome of the conversion
+     * @throws IOException if the input directory cannot be listed
+     */
+    public Report convert(Path input, Path output) throws IOException {
+        long start = System.nanoTime();
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(input)) {
+            files = walk.filter(path -> Files.isRegularFile(path) && path.toString().endsWith(".txt"))
+                    .sorted().collect(Collectors.toList());
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Result>> results = new ArrayList<>(files.size());
+        try {
+            for (Path file : files) {
+                String name = input.relativize(file).toString();
+                Path target = output.resolve(name.substring(0, name.length() - ".txt".length()) + ".fxml");
+                results.add(pool.submit(() -> convertFile(file, target)));
+            }
+            long[] latencies = new long[files.size()];
+            long bytesRead = 0;
+            long bytesWritten = 0;
+            List<String> failures = new ArrayList<>();
+            for (int i = 0; i < files.size(); i++) {
+                Result result = results.get(i).get();
+                latencies[i] = result.latency;
+                bytesRead += result.bytesRead;
+                bytesWritten += result.bytesWritten;
+                if (result.failure != null) {
+                    failures.add(files.get(i) + ": " + result.failure);
+                }
+            }
+            return new Report(threads, latencies, bytesRead, bytesWritten, failures, System.nanoTime() - start);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Conversion interrupted");
+        }
+        catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Converts one text file to FXML, deleting the FXML file if the conversion fails
+     * @param file the text file
+     * @param target the FXML file to write
+     * @return the outcome of the conversion
+     */
+    private static Result convertFile(Path file, Path target) {
+        long start = System.nanoTime();
+        long size = 0;
+        try {
+            size = Files.size(file);
+            Files.createDirectories(target.toAbsolutePath().getParent());
+            new StreamingConverter().convert(file, target);
+            return new Result(System.nanoTime() - start, size, Files.size(target), null);
+        }
+        catch (IOException | MalformedTreeFileException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(target);
+            }
+            catch (IOException ignored) {
+                //the failure is reported either way
+            }
+            String message = e.getMessage() == null ? e.toString() : e.getMessage();
+            return new Result(System.nanoTime() - start, size, 0, message);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * Supplies the children of FXTreeNodes that are only created when they are first needed, such as the nodes of a lazily
+ * loaded file or of shared subtrees. Each pending node keeps its source along with a key identifying it there.
+ */
+public interface ChildSource {
+
+    /**
+     * Creates the children of a pending node and gives them to it with setChildren
+     * @param parent the pending node
+     * @param key the key of the node within the source
+     */
+    void loadChildren(FXTreeNode parent, int key);
+
+    /**
+     * Finds the structural hash of a pending node's subtree, as SubtreeHash computes it, without creating its nodes
+     * @param key the key of the node within the source
+     * @return the hash of the node's subtree
+     */
+    long hash(int key);
+
+    /**
+     * Counts the nodes below a pending node without creating them
+     * @param key the key of the node within the source
+     * @return the number of nodes in the node's subtree, not counting the node itself
+     */
+    int countNodes(int key);
+
+    /**
+     * Provides the immutable node holding the same subtree as a pending node
+     * @param type the component type of the node
+     * @param key the key of the node within the source
+     * @return a PersistentTree node with the same subtree
+     */
+    PersistentTree.Node toNode(ComponentType type, int key);
+}
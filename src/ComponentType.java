@@ -1,31 +1,97 @@
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
 /**
- * Represents the component type of a node
+ * Represents the component type of a node, along with what nodes of the type can do and how they are written as FXML.
+ * Everything a type needs is worked out once when the enum is loaded, so code that depends on the type of a node only
+ * reads a field, and a new type is added by listing it here.
  */
 public enum ComponentType {
-    Button, Label, TextArea, HBox, VBox, AnchorPane; //possible component types of a node
+    Button(false, "javafx.scene.control"), Label(false, "javafx.scene.control"),
+    TextArea(false, "javafx.scene.control"), HBox(true, "javafx.scene.layout"), VBox(true, "javafx.scene.layout"),
+    AnchorPane(true, "javafx.scene.layout"); //possible component types of a node
+
+    private static final HashMap<String, ComponentType> BY_NAME = new HashMap<>(); //component types by name
+
+    static{
+        for (ComponentType type : values()){
+            BY_NAME.put(type.name(), type);
+        }
+    }
+
+    private final boolean container; //whether nodes of the type hold children rather than text
+    private final String importPackage; //package the type's class is imported from in FXML
+    private final byte[] nameBytes; //name of the type in ASCII
+    private final byte[] openTag; //"<Type" in UTF-8
+    private final byte[] closeTag; //"</Type>\n" in UTF-8
+
+    /**
+     * Creates a component type
+     * @param container whether nodes of the type hold children rather than text
+     * @param importPackage package the type's class is imported from in FXML
+     */
+    ComponentType(boolean container, String importPackage){
+        this.container=container;
+        this.importPackage=importPackage;
+        this.nameBytes=name().getBytes(StandardCharsets.US_ASCII);
+        this.openTag=("<" + name()).getBytes(StandardCharsets.UTF_8);
+        this.closeTag=("</" + name() + ">\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Finds the component type with a given name
+     * @param name the name of the type, such as HBox
+     * @return the component type, or null if there is none with that name
+     */
+    public static ComponentType fromName(String name){
+        return BY_NAME.get(name);
+    }
+
+    /**
+     * Finds whether nodes of the type are containers, which hold children, rather than controls, which hold text
+     * @return true for HBox, VBox and AnchorPane
+     */
+    public boolean isContainer(){
+        return container;
+    }
+
+    /**
+     * Getter method for the package the type's class is imported from in FXML
+     * @return the package, such as javafx.scene.layout
+     */
+    public String getImportPackage(){
+        return importPackage;
+    }
+
+    /**
+     * Getter method for the name of the type in ASCII
+     * @return the bytes of the name, which must not be modified
+     */
+    public byte[] getNameBytes(){
+        return nameBytes;
+    }
+
+    /**
+     * Getter method for the start of the FXML element of the type
+     * @return the bytes of "&lt;Type" in UTF-8, which must not be modified
+     */
+    public byte[] getOpenTag(){
+        return openTag;
+    }
+
+    /**
+     * Getter method for the closing tag of the FXML element of the type, followed by a line break
+     * @return the bytes of "&lt;/Type&gt;\n" in UTF-8, which must not be modified
+     */
+    public byte[] getCloseTag(){
+        return closeTag;
+    }
 
     /**
      * Provides a matching string representation of the component type
      * @return a string representation of the component type
      */
     public String toString(){
-        if (this==ComponentType.Button){
-            return "Button";
-        }
-        else if (this==ComponentType.Label){
-            return "Label";
-        }
-        else if (this==ComponentType.TextArea){
-            return "TextArea";
-        }
-        else if (this==ComponentType.HBox){
-            return "HBox";
-        }
-        else if (this==ComponentType.VBox){
-            return "VBox";
-        }
-        else{
-            return "AnchorPane";
-        }
+        return name();
     }
 }
@@ -1,21 +1,44 @@
 import java.io.FileNotFoundException;
-import java.util.Scanner;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Represents a tree representation of a JavaFX GUI modeled after SceneBuilder
  */
 public class FXComponentTree {
+    public static final long LAZY_LOAD_SIZE=1L<<26; //size from which the menus load text files lazily
     private FXTreeNode root; //root of the tree
     private FXTreeNode cursor; //cursor to traverse through the tree when user inputs are taken
+    private TextPool textPool; //pool holding the texts of the tree's nodes
+    private SearchIndex searchIndex; //index of the nodes by type and text, built on the first search
+    private final NodeIds nodeIds=new NodeIds(); //ids of the nodes named by id, which stay the same through edits
+    private IncrementalFXMLExporter exporter; //FXML exporter caching the output of unchanged subtrees
+    private TreeHistory history; //recent edits of the tree for undo and redo, started on the first edit
+    private volatile PersistentTree published; //current version for snapshot readers, or null if there are none
+    private LazyTreeFile lazyFile; //file the unread subtrees of a lazily loaded tree come from, or null
+    private boolean sharing; //whether repeated subtrees are kept as one shared node until they are edited
+    private int numNodes; //number of nodes below the root, kept without reading unread subtrees
 
     /**
      * returns a tree with the root node being the AnchorPane and the cursor set at the root
      */
     public FXComponentTree(){
-        root=new FXTreeNode(ComponentType.AnchorPane, null);
+        root=FXTreeNode.create(ComponentType.AnchorPane, null);
         cursor=root;
+        textPool=new TextPool();
     }
 
     /**
@@ -32,24 +55,117 @@ public class FXComponentTree {
      * @throws IndexOutOfBoundsException if the index is negative or greater than the highest index at which the array is not null
      */
     public FXTreeNode deleteChild(int index) throws IndexOutOfBoundsException{
-        FXTreeNode deletedNode = null;
         if (index>cursor.numChildren()-1 || index<0){
             throw new IndexOutOfBoundsException("IndexOutOfBounds");
         }
-        else {
-            deletedNode = cursor.getChildren()[index];
-            for (int i = index; i < cursor.numChildren(); i++) {
-                cursor.getChildren()[i] = cursor.getChildren()[i + 1];
-            }
-        }
+        long start=TreeMetrics.start();
+        int[] path=findIndices(cursor);
+        PersistentTree.Node deleted=versionChild(path, index);
+        FXTreeNode deletedNode=removeNode(cursor, index);
+        record(deleted!=null ? TreeHistory.Edit.delete(path, index, deleted)
+                : TreeHistory.Edit.delete(path, index, deletedNode));
+        TreeMetrics.stop(TreeMetrics.Operation.DELETE_CHILD, start);
         return deletedNode;
     }
+
+    /**
+     * Removes a child of a node along with all of its children, keeping the text pool and search index up to date
+     * @param parent the node to remove the child from
+     * @param index index of the child to remove
+     * @return the removed child
+     */
+    private FXTreeNode removeNode(FXTreeNode parent, int index){
+        FXTreeNode removed=parent.removeChild(index);
+        numNodes-=releaseTexts(removed);
+        if (searchIndex!=null){
+            searchIndex.removed(removed);
+        }
+        nodeIds.removed(removed);
+        return removed;
+    }
+
     /**
      * Changes the text attribute of the node at which the cursor is
      * @param text text to change the text attribute of the node to
      */
     public void setTextAtCursor(String text){
-        cursor.setText(text);
+        if (!cursor.getType().isContainer() && cursor!=root){
+            startHistory();
+            int[] path=findIndices(cursor.getParent());
+            int index=cursor.getIndex();
+            String old=cursor.getText();
+            changeText(cursor, text);
+            record(TreeHistory.Edit.text(path, index, old, cursor.getText()));
+        }
+        else {
+            cursor.setText(text);
+        }
+    }
+
+    /**
+     * Changes the text attribute of a control, keeping the text pool up to date
+     * @param node the control to change the text of
+     * @param text the new text of the control
+     */
+    private void changeText(FXTreeNode node, String text){
+        String old=node.getText();
+        node.setText(textPool.canonical(text));
+        textPool.release(old);
+        if (searchIndex!=null){
+            searchIndex.textChanged(node, old);
+        }
+    }
+
+    /**
+     * Adds the texts of a node and all of its children to the tree's text pool, replacing them with the pooled Strings
+     * @param node the node whose texts to add
+     * @return the number of nodes in the node's subtree, including those not read yet
+     */
+    private int internTexts(FXTreeNode node){
+        int count=0;
+        TreeWalker walker=new TreeWalker().start(node, 0);
+        while (walker.nextPreOrder()){
+            FXTreeNode curr=walker.getNode();
+            count++;
+            if (curr.getSource()!=null){
+                count+=curr.getSource().countNodes(curr.getSourceKey());
+                walker.skipChildren(); //the texts of unread subtrees are added as they are read
+            }
+            else if (!curr.getType().isContainer()){
+                curr.setText(textPool.canonical(curr.getText()));
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Removes the texts of a node and all of its children from the tree's text pool
+     * @param node the node whose texts to remove
+     * @return the number of nodes in the node's subtree, including those not read yet
+     */
+    private int releaseTexts(FXTreeNode node){
+        int count=0;
+        TreeWalker walker=new TreeWalker().start(node, 0);
+        while (walker.nextPreOrder()){
+            FXTreeNode curr=walker.getNode();
+            count++;
+            if (curr.getSource()!=null){
+                count+=curr.getSource().countNodes(curr.getSourceKey());
+                walker.skipChildren(); //the texts of unread subtrees were never added
+            }
+            else if (!curr.getType().isContainer()){
+                textPool.release(curr.getText());
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Getter method for the tree's text pool
+     * @return the pool holding the texts of the tree's nodes
+     */
+    public TextPool getTextPool(){
+        return textPool;
     }
 
     /**
@@ -63,7 +179,7 @@ public class FXComponentTree {
                 throw new InvalidIndexException("Invalid");
             }
         }
-        cursor=cursor.getChildren()[index];
+        cursor=cursor.getChild(index);
     }
 
     /**
@@ -73,6 +189,162 @@ public class FXComponentTree {
         cursor=cursor.getParent();
     }
 
+    /**
+     * Moves the cursor to the node at a specified position
+     * @param path position of the node, such as 0-0-2 for the third child of the root's child
+     * @throws InvalidIndexException if there is no node at the position
+     */
+    public void cursorToPath(String path) throws InvalidIndexException{
+        FXTreeNode node=findNode(path);
+        if (node==null){
+            throw new InvalidIndexException("Invalid");
+        }
+        cursor=node;
+    }
+
+    /**
+     * Finds the node at a specified position by walking down from the root, taking one array lookup per level, so it
+     * takes time proportional to the depth of the position and only reads the subtrees on the way in a lazily loaded
+     * tree
+     * @param path position of the node, such as 0-0-2 for the third child of the root's child
+     * @return the node at the position, or null if there is none
+     */
+    public FXTreeNode findNode(String path){
+        int[] indices=PersistentTree.parsePath(path);
+        return indices==null ? null : walkTo(indices);
+    }
+
+    /**
+     * Moves the cursor to a node given by its position or by its id, as the J command is given them
+     * @param target position of the node, such as 0-0-2, or # followed by its id, such as #12
+     * @throws InvalidIndexException if there is no node at the position or with the id
+     */
+    public void jumpTo(String target) throws InvalidIndexException{
+        if (!target.startsWith("#")){
+            cursorToPath(target);
+            return;
+        }
+        try {
+            cursorToId(Integer.parseInt(target.substring(1)));
+        }
+        catch (NumberFormatException e){
+            throw new InvalidIndexException("Invalid");
+        }
+    }
+
+    /**
+     * Moves the cursor to the node with a specified id
+     * @param id id of the node, as given by idOf
+     * @throws InvalidIndexException if no node of the tree has the id
+     */
+    public void cursorToId(int id) throws InvalidIndexException{
+        FXTreeNode node=nodeIds.find(id);
+        if (node==null){
+            throw new InvalidIndexException("Invalid");
+        }
+        cursor=node;
+    }
+
+    /**
+     * Finds the id of a node of the tree, giving it one if it has none yet. Unlike its position, the id of a node
+     * stays the same while other nodes are added and deleted, until the node itself is deleted or the tree replaced.
+     * @param node a node of the tree
+     * @return the id of the node
+     */
+    public int idOf(FXTreeNode node){
+        return nodeIds.idOf(node);
+    }
+
+    /**
+     * Finds the node with a specified id with a single lookup, however far the node has moved since it was given
+     * the id
+     * @param id id of the node, as given by idOf
+     * @return the node, or null if no node of the tree has the id
+     */
+    public FXTreeNode findById(int id){
+        return nodeIds.find(id);
+    }
+
+    /**
+     * Finds the position of a node of the tree by walking up its parents, each of which keeps the index of the child
+     * on the way, so it takes time proportional to the depth of the node without any index of the whole tree
+     * @param node a node of the tree
+     * @return the position of the node, such as 0-0-2, or null if it is not in the tree
+     */
+    public String findPath(FXTreeNode node){
+        int[] path=pathOf(node);
+        return path==null ? null : PersistentTree.formatPath(path);
+    }
+
+    /**
+     * Finds the nodes of a type whose text matches a query, using the tree's search index. The index is built the
+     * first time it is needed, reading every subtree of a lazily loaded tree, and is then kept up to date by every
+     * edit, so a search only looks at the nodes holding the words of the query. A query without letters or digits
+     * cannot be looked up, and is answered by walking the tree instead.
+     * @param type the component type of the nodes to find, or null for any
+     * @param query the text to match, ignoring case, or null or empty to find every node of the type
+     * @param mode how the query is matched against the texts of controls
+     * @return the positions of the matching nodes, such as 0-0-2, in the order they are listed in tree text files
+     */
+    public List<String> search(ComponentType type, String query, SearchIndex.Mode mode){
+        List<FXTreeNode> found;
+        if (SearchIndex.canAnswer(query)){
+            if (searchIndex==null){
+                searchIndex=new SearchIndex(root);
+            }
+            found=searchIndex.find(type, query, mode);
+        }
+        else{
+            found=new ArrayList<>();
+            collect(root, type, query.toLowerCase(Locale.ROOT), mode, found);
+        }
+        ArrayList<int[]> positions=new ArrayList<>(found.size());
+        for (FXTreeNode node : found){
+            positions.add(PersistentTree.parsePath(findPath(node)));
+        }
+        positions.sort(Arrays::compare);
+        ArrayList<String> paths=new ArrayList<>(positions.size());
+        for (int[] position : positions){
+            paths.add(PersistentTree.formatPath(position));
+        }
+        return paths;
+    }
+
+    /**
+     * Finds the nodes below a node whose type and text match a query
+     * @param node the node to search from
+     * @param type the component type of the nodes to find, or null for any
+     * @param query the text to match, in lower case
+     * @param mode how the query is matched
+     * @param found the matching nodes found so far
+     */
+    private static void collect(FXTreeNode node, ComponentType type, String query, SearchIndex.Mode mode,
+            List<FXTreeNode> found){
+        TreeWalker walker=new TreeWalker().start(node, 0);
+        while (walker.nextPreOrder()){
+            FXTreeNode curr=walker.getNode();
+            if ((type==null || curr.getType()==type) && SearchIndex.matches(curr.getText(), query, mode)){
+                found.add(curr);
+            }
+        }
+    }
+
+    /**
+     * Finds the node reached by following child indices from the root, checking each index on the way
+     * @param indices the child indices
+     * @return the node at the end of the path, or null if there is none
+     */
+    private FXTreeNode walkTo(int[] indices){
+        FXTreeNode node=root;
+        for (int index : indices){
+            if (index<0 || index>=node.numChildren()){
+                return null;
+            }
+            node=node.getChild(index);
+        }
+        return node;
+    }
+
     /**
      * Getter method for the tree's cursor
      * @return the tree's cursor node
@@ -96,120 +368,753 @@ public class FXComponentTree {
         return depth;
     }
 
+    /**
+     * Walks the nodes below a node without recursion, passing the visitor each node as it is entered, before its
+     * children, and as it is exited, after them
+     * @param node the node to walk from, usually the root
+     * @param visitor the visitor receiving the nodes
+     * @param <E> the type of exception the visitor can throw
+     * @throws E if the visitor fails
+     */
+    public <E extends Exception> void walk(FXTreeNode node, TreeWalker.Visitor<E> visitor) throws E{
+        new TreeWalker().walk(node, findDepth(node), visitor);
+    }
+
     /**
      * Provides a string containing how many tabs a node should have printed before it when the tree is printed
      * @param depth the depth of the node within the tree, which is how many tabs should be printed before it
      * @return a string containing how many tabs a node should have printed before it
      */
     public String addTabs(int depth){
-        String str= "";
-        for (int i=0; i<depth; i++){
-            str+="\t";
-        }
-        return str;
+        return "\t".repeat(depth);
     }
 
     /**
-     * Recursively prints the nodes of the tree
+     * Prints the nodes of the tree, marking the cursor
      * @param curr the root node of the tree
      */
     public void printTree(FXTreeNode curr){
-        if (curr == null) {
-            return;
+        new TreeRenderer(System.out).render(this, curr);
+    }
+
+    /**
+     * Prints the nodes nearest the cursor, summarizing the children left out, which takes time proportional to the
+     * number of lines printed rather than to the size of the tree
+     * @param lines most nodes to print, half of them before the cursor
+     */
+    public void printAroundCursor(int lines){
+        new TreeRenderer(System.out).setWindow(lines).render(this, root);
+    }
+
+    /**
+     * Method to load in an FXComponentTree from the elements of an FXML file, such as one saved by SceneBuilder
+     * @param filename name of FXML file to load from
+     * @return an FXComponentTree matching the components of the FXML file
+     * @throws FileNotFoundException if a file with the specified name cannot be found
+     * @throws IOException if the file cannot be read
+     * @throws MalformedTreeFileException if the file is not well-formed XML
+     */
+    public FXComponentTree readFromFXMLFile(String filename) throws IOException, MalformedTreeFileException {
+        long start=TreeMetrics.start();
+        TreeLoadEvent event=new TreeLoadEvent();
+        event.begin();
+        TextPool pool=new TextPool();
+        root=FXMLImporter.importFile(filename, sharing ? new TextPool() : pool);
+        int[] size=new int[2];
+        measure(root, 0, size);
+        if (sharing){
+            root=PersistentTree.copy(root, new PersistentTree.NodeTable()).toLazyTreeNode(null, pool);
         }
-        System.out.print(addTabs(findDepth(curr)));
-        System.out.println(curr.toTreeString(this));
-        for (int i=0; i<curr.numChildren(); i++){
-            if (curr.getChildren()==null){
-                continue;
+        cursor=root;
+        textPool=pool;
+        searchIndex=null;
+        nodeIds.clear();
+        lazyFile=null;
+        numNodes=size[0];
+        resetHistory();
+        if (start!=TreeMetrics.NOT_TIMED || event.shouldCommit()){
+            loaded(filename, "fxml", size[0], size[1], event);
+        }
+        TreeMetrics.stop(TreeMetrics.Operation.READ_FXML, start);
+        return this;
+    }
+
+    /**
+     * Method to load in an FXComponentTree based on the information from a provided text file. The file is read in a
+     * single pass, keeping only the currently open ancestors, and the tree is only replaced if the whole file is valid
+     * @param filename name of file to load from
+     * @return an FXComponentTree matching the node information provided in the text file
+     * @throws FileNotFoundException if a file with the specified file name is not found
+     * @throws IOException if the file cannot be read
+     * @throws MalformedTreeFileException if a line of the file does not describe a valid node of the tree
+     */
+    public FXComponentTree readFromFile(String filename) throws IOException, MalformedTreeFileException {
+        long start=TreeMetrics.start();
+        TreeLoadEvent event=new TreeLoadEvent();
+        event.begin();
+        int nodes=0;
+        int maxDepth=0;
+        FXTreeNode newRoot=FXTreeNode.create(ComponentType.AnchorPane, null);
+        TextPool pool=new TextPool();
+        FXTreeNode[] open=new FXTreeNode[16]; //open ancestors of the next node, by depth
+        open[0]=newRoot;
+        try (TreeFileReader reader=new TreeFileReader(filename)){
+            if (sharing){
+                int[] size=new int[2];
+                newRoot=readShared(reader, size).toLazyTreeNode(null, pool);
+                nodes=size[0];
+                maxDepth=size[1];
             }
             else {
-                printTree(curr.getChildren()[i]);
+                while (reader.next()){
+                    int depth=reader.getDepth();
+                    FXTreeNode parent=open[depth-1];
+                    FXTreeNode node=FXTreeNode.create(reader.getType(), parent);
+                    node.setText(pool.canonical(reader.getText()));
+                    parent.insertChild(parent.numChildren(), node);
+                    if (depth==open.length){
+                        open=Arrays.copyOf(open, depth*2);
+                    }
+                    open[depth]=node;
+                    nodes++;
+                    maxDepth=Math.max(maxDepth, depth);
+                }
             }
         }
+        root=newRoot;
+        cursor=root;
+        textPool=pool;
+        searchIndex=null;
+        nodeIds.clear();
+        lazyFile=null;
+        numNodes=nodes;
+        resetHistory();
+        if (start!=TreeMetrics.NOT_TIMED || event.shouldCommit()){
+            loaded(filename, "txt", nodes, maxDepth, event);
+        }
+        TreeMetrics.stop(TreeMetrics.Operation.READ_FILE, start);
+        return this;
     }
 
     /**
-     * Method to return a string representation of the contents of an FXML file
-     * @param filename name of file to print contents of
-     * @return a string representation of an FXML file's contents
-     * @throws FileNotFoundException if a file with the specified name cannot be found
+     * Method to load in an FXComponentTree from a binary tree file written by writeToBinaryFile. The file is
+     * memory-mapped and read in a single pass, and the tree is only replaced if the whole file is valid
+     * @param filename name of the binary file to load from
+     * @return an FXComponentTree matching the nodes stored in the file
+     * @throws FileNotFoundException if a file with the specified file name is not found
+     * @throws IOException if the file cannot be read
+     * @throws MalformedTreeFileException if the file is not a valid binary tree file
      */
-    public String readFromFXMLFile(String filename) throws FileNotFoundException{
-        String str="";
-        File file = new File(filename);
-        Scanner input = new Scanner(file);
-        while (input.hasNextLine()){
-            String line = input.nextLine();
-            str+=line;
-            str+="\n";
+    public FXComponentTree readFromBinaryFile(String filename) throws IOException, MalformedTreeFileException {
+        long start=TreeMetrics.start();
+        TreeLoadEvent event=new TreeLoadEvent();
+        event.begin();
+        if (!new File(filename).isFile()){
+            throw new FileNotFoundException(filename);
+        }
+        TextPool pool=new TextPool();
+        int[] size=new int[2];
+        FXTreeNode newRoot=BinaryTreeFile.read(filename, sharing ? new TextPool() : pool, size);
+        if (sharing){
+            newRoot=PersistentTree.copy(newRoot, new PersistentTree.NodeTable()).toLazyTreeNode(null, pool);
         }
-        input.close();
-        return str;
+        root=newRoot;
+        cursor=root;
+        textPool=pool;
+        searchIndex=null;
+        nodeIds.clear();
+        lazyFile=null;
+        numNodes=size[0];
+        resetHistory();
+        if (start!=TreeMetrics.NOT_TIMED || event.shouldCommit()){
+            loaded(filename, "fxtree", size[0], size[1], event);
+        }
+        TreeMetrics.stop(TreeMetrics.Operation.READ_BINARY, start);
+        return this;
     }
 
     /**
-     * Method to load in an FXComponentTree based on the information from a provided text file
+     * Reads the nodes of a text file bottom-up through a hash-consing table, so that each repeated subtree is kept once
+     * @param reader reader positioned before the first node of the file
+     * @param size the number of nodes read, followed by the depth of the deepest node, set once the file is read
+     * @return the shared root node of the tree
+     * @throws IOException if the file cannot be read
+     * @throws MalformedTreeFileException if a line of the file does not describe a valid node of the tree
+     */
+    private static PersistentTree.Node readShared(TreeFileReader reader, int[] size) throws IOException,
+            MalformedTreeFileException {
+        PersistentTree.NodeTable table=new PersistentTree.NodeTable();
+        ArrayList<ArrayList<PersistentTree.Node>> open=new ArrayList<>(); //children read so far of each open container
+        ArrayList<ComponentType> types=new ArrayList<>(); //component type of each open container
+        open.add(new ArrayList<>());
+        types.add(ComponentType.AnchorPane);
+        int openDepth=0;
+        while (reader.next()){
+            int depth=reader.getDepth();
+            while (openDepth>=depth){
+                openDepth=close(table, open, types, openDepth);
+            }
+            if (reader.getText()==null){
+                openDepth=depth;
+                if (open.size()==depth){
+                    open.add(new ArrayList<>());
+                    types.add(null);
+                }
+                types.set(depth, reader.getType());
+            }
+            else {
+                open.get(depth-1).add(table.control(reader.getType(), reader.getText()));
+            }
+            size[0]++;
+            size[1]=Math.max(size[1], depth);
+        }
+        while (openDepth>0){
+            openDepth=close(table, open, types, openDepth);
+        }
+        return table.container(ComponentType.AnchorPane, open.get(0).toArray(new PersistentTree.Node[0]));
+    }
+
+    /**
+     * Ends the deepest open container while reading a file through a hash-consing table, adding its shared node to
+     * the children of its parent
+     * @param table the hash-consing table
+     * @param open children read so far of each open container, by depth
+     * @param types component type of each open container, by depth
+     * @param depth depth of the deepest open container
+     * @return depth of the container's parent, which is now the deepest open container
+     */
+    private static int close(PersistentTree.NodeTable table, ArrayList<ArrayList<PersistentTree.Node>> open,
+            ArrayList<ComponentType> types, int depth){
+        ArrayList<PersistentTree.Node> children=open.get(depth);
+        PersistentTree.Node node=table.container(types.get(depth), children.toArray(new PersistentTree.Node[0]));
+        children.clear();
+        open.get(depth-1).add(node);
+        return depth-1;
+    }
+
+    /**
+     * Turns keeping repeated subtrees shared on or off. While it is on, the trees loaded from files, and the current
+     * tree as soon as it is turned on, keep each distinct subtree once as an immutable node, and the mutable nodes
+     * of a subtree are only created when it is first visited or edited. Repetitive layouts then take a fraction of
+     * the memory, and equal subtrees are the same object. Exports are written from the shared nodes, so they do not
+     * undo the sharing. Turning it off creates the nodes of every subtree still shared, so that the tree may be
+     * written in parallel again without several threads reading subtrees into the text pool at once.
+     * @param sharing whether to keep repeated subtrees shared
+     */
+    public void setSharing(boolean sharing){
+        boolean wasSharing=this.sharing;
+        this.sharing=sharing;
+        if (sharing){
+            TextPool pool=new TextPool();
+            root=PersistentTree.copy(root, new PersistentTree.NodeTable()).toLazyTreeNode(null, pool);
+            cursor=root;
+            textPool=pool;
+            searchIndex=null;
+            nodeIds.clear();
+            resetHistory();
+        }
+        else if (wasSharing && lazyFile==null){
+            TreeWalker walker=new TreeWalker().start(root, 0);
+            while (walker.nextPreOrder()){
+                //each shared subtree is read as the walk enters it
+            }
+        }
+    }
+
+    /**
+     * Finds whether repeated subtrees are kept shared
+     * @return true if repeated subtrees are kept shared
+     */
+    public boolean isSharing(){
+        return sharing;
+    }
+
+    /**
+     * Finds whether another tree has the same layout as this one by comparing the structural hashes of their roots,
+     * which takes constant time once both are hashed
+     * @param other the other tree
+     * @return true if both trees have the same nodes in the same places
+     */
+    public boolean sameTree(FXComponentTree other){
+        return root.sameSubtree(other.root);
+    }
+
+    /**
+     * Method to load in an FXComponentTree from a text file without reading its nodes up front. The file is
+     * memory-mapped and checked in one pass that records where each subtree's lines are, and the children of a node
+     * are only created when they are first needed, such as when the cursor moves to them or the tree is exported. A
+     * huge file therefore opens quickly, and only the parts of it that are visited take up memory. The file must not
+     * be changed by other programs while the tree is open; saving the tree over it is safe.
      * @param filename name of file to load from
      * @return an FXComponentTree matching the node information provided in the text file
      * @throws FileNotFoundException if a file with the specified file name is not found
+     * @throws IOException if the file cannot be read
+     * @throws MalformedTreeFileException if a line of the file does not describe a valid node of the tree
      */
-    public FXComponentTree readFromFile(String filename) throws FileNotFoundException {
-        File file = new File(filename);
-        Scanner input = new Scanner(file);
-        while (input.hasNextLine()){
-            String line=input.nextLine();
-            String[] parts=line.split(" ", 2);
-            String pos=parts[0];
-            int index=Integer.parseInt(pos.substring(pos.length()-1));
-            if (parts[1].contains(" ")){
-                String[] parts2=parts[1].split(" ", 2);
-                String component=parts2[0];
-                String text=parts2[1];
-                FXTreeNode node=new FXTreeNode(findType(component), this.findParent(pos));
-                node.setText(text);
-                setChild(index, node, this.findParent(pos));
-            }
-            else{
-                String component=parts[1];
-                FXTreeNode node=new FXTreeNode(findType(component), this.findParent(pos));
-                setChild(index, node, this.findParent(pos));
-            }
+    public FXComponentTree readFromFileLazily(String filename) throws IOException, MalformedTreeFileException {
+        long start=TreeMetrics.start();
+        TreeLoadEvent event=new TreeLoadEvent();
+        event.begin();
+        TextPool pool=new TextPool();
+        LazyTreeFile file=new LazyTreeFile(filename, pool);
+        FXTreeNode newRoot=FXTreeNode.create(ComponentType.AnchorPane, null);
+        newRoot.setSource(file, -1);
+        root=newRoot;
+        cursor=root;
+        textPool=pool;
+        searchIndex=null;
+        nodeIds.clear();
+        lazyFile=file;
+        numNodes=file.numNodes();
+        resetHistory();
+        if (start!=TreeMetrics.NOT_TIMED || event.shouldCommit()){
+            loaded(filename, "txt", file.numNodes(), file.getMaxDepth(), event);
         }
+        TreeMetrics.stop(TreeMetrics.Operation.READ_LAZY, start);
         return this;
     }
 
+    /**
+     * Finds whether a file is the one a lazily loaded tree still reads its subtrees from, and must therefore be
+     * replaced rather than overwritten in place
+     * @param filename name of the file to write
+     * @return true if the file is the tree's source file
+     */
+    private boolean isSource(String filename){
+        return lazyFile!=null && lazyFile.isFile(filename);
+    }
+
+    /**
+     * Replaces a file with a newly written one, leaving the old file's contents readable by the mappings still open
+     * on it
+     * @param written the newly written file
+     * @param filename name of the file to replace
+     * @throws IOException if the file cannot be replaced
+     */
+    private static void replaceFile(String written, String filename) throws IOException {
+        try {
+            Files.move(Paths.get(written), Paths.get(filename), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e){
+            Files.deleteIfExists(Paths.get(written));
+            throw e;
+        }
+    }
+
+    /**
+     * Records the size of a loaded tree in the metrics and commits its load event
+     * @param filename name of the file loaded
+     * @param format format of the file, txt, fxml or fxtree
+     * @param nodes number of nodes loaded, not counting the root
+     * @param maxDepth depth of the deepest node loaded
+     * @param event the load event, begun before the file was read
+     */
+    private static void loaded(String filename, String format, int nodes, int maxDepth, TreeLoadEvent event){
+        long bytes=new File(filename).length();
+        if (TreeMetrics.on()){
+            TreeMetrics.loaded(nodes, bytes, maxDepth);
+        }
+        if (event.shouldCommit()){
+            event.file=filename;
+            event.format=format;
+            event.nodes=nodes;
+            event.bytes=bytes;
+            event.maxDepth=maxDepth;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records the size of a written tree in the metrics and commits its export event
+     * @param filename name of the file written
+     * @param format format of the file, txt, fxml or fxtree
+     * @param event the export event, begun before the file was written
+     */
+    private void written(String filename, String format, TreeExportEvent event){
+        int[] size=new int[2];
+        measure(root, 0, size);
+        long bytes=new File(filename).length();
+        if (TreeMetrics.on()){
+            TreeMetrics.written(size[0], bytes);
+        }
+        if (event.shouldCommit()){
+            event.file=filename;
+            event.format=format;
+            event.nodes=size[0];
+            event.bytes=bytes;
+            event.commit();
+        }
+    }
+
+    /**
+     * Counts the nodes of a node's subtree, taking the size of each subtree not read yet from its source
+     * @param node the node to count from
+     * @return the number of nodes in the node's subtree, including the node itself
+     */
+    private static int countNodes(FXTreeNode node){
+        int count=0;
+        TreeWalker walker=new TreeWalker().start(node, 0);
+        while (walker.nextPreOrder()){
+            FXTreeNode curr=walker.getNode();
+            count++;
+            if (curr.getSource()!=null){
+                count+=curr.getSource().countNodes(curr.getSourceKey());
+                walker.skipChildren();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Counts the nodes below a node and finds the depth of the deepest one
+     * @param node the node to measure from
+     * @param depth depth of the node within the tree
+     * @param size the number of nodes found so far, followed by the greatest depth found so far
+     */
+    private static void measure(FXTreeNode node, int depth, int[] size){
+        TreeWalker walker=new TreeWalker().start(node, depth);
+        walker.nextPreOrder();
+        size[1]=Math.max(size[1], depth);
+        while (walker.nextPreOrder()){
+            size[0]++;
+            size[1]=Math.max(size[1], walker.getDepth());
+        }
+    }
+
     /**
      * Adds the given node to the corresponding index of the children array
      * @param index index at which to add the new child node to
      * @param node the child node to add to the cursor node's children array
      * @throws InvalidIndexException if the node is a control, meaning it cannot have child nodes
-     * @throws IndexOutOfBoundsException if adding the node at the specified index makes a hole in the array
-     * @throws FullNodeException if the children array of the node is already full
+     * @throws IndexOutOfBoundsException if the index is negative or adding the node at it makes a hole in the array
+     * @throws FullNodeException if the node already holds the maximum number of children
      */
     public void addChild(int index, FXTreeNode node) throws
             InvalidIndexException, IndexOutOfBoundsException, FullNodeException{
-        if (cursor.getType()!=ComponentType.HBox && cursor.getType()!=ComponentType.VBox
-        && cursor.getType()!=ComponentType.AnchorPane){
+        if (!cursor.getType().isContainer()){
             throw new InvalidIndexException("Invalid");
         }
-        else if (index>cursor.numChildren()){
+        else if (index>cursor.numChildren() || index<0){
             throw new IndexOutOfBoundsException("IndexOutOfBounds");
         }
-        else if (cursor.numChildren()==10){
+        else if (cursor.numChildren()==FXTreeNode.maxChildren){
             throw new FullNodeException("Full node");
         }
-        else if (index==cursor.numChildren()){
-            cursor.getChildren()[index]=node;
+        long start=TreeMetrics.start();
+        startHistory();
+        int[] path=findIndices(cursor);
+        insertNode(cursor, index, node);
+        record(TreeHistory.Edit.add(path, index, PersistentTree.copy(node)));
+        TreeMetrics.stop(TreeMetrics.Operation.ADD_CHILD, start);
+    }
+
+    /**
+     * Inserts a child into a node, keeping the text pool and search index up to date
+     * @param parent the node to insert the child into
+     * @param index index to insert the child at
+     * @param node the child to insert
+     */
+    private void insertNode(FXTreeNode parent, int index, FXTreeNode node){
+        parent.insertChild(index, node);
+        numNodes+=internTexts(node);
+        if (searchIndex!=null){
+            searchIndex.added(node);
         }
-        else if (index<cursor.numChildren()){
-            for (int i=cursor.numChildren(); i>index; i--){
-                cursor.getChildren()[i]=cursor.getChildren()[i-1];
+    }
+
+    /**
+     * Getter method for the tree's history of versions. The versions are made from the current tree the first time
+     * they are needed, and from then on each edit adds the version it makes.
+     * @return the recent versions of the tree
+     */
+    public TreeHistory getHistory(){
+        startHistory();
+        if (!history.hasVersions()){
+            PersistentTree current=PersistentTree.of(root);
+            try {
+                history.addVersions(current);
+            }
+            catch (InvalidIndexException | IndexOutOfBoundsException e){
+                history=new TreeHistory(current); //the tree was changed behind the history's back
             }
-            cursor.getChildren()[index]=node;
+        }
+        return history;
+    }
+
+    /**
+     * Starts the tree's history before an edit, if it was not started yet. The history only keeps the edits, which
+     * undo and redo replay on the tree, until its versions are needed.
+     */
+    private void startHistory(){
+        if (history==null){
+            history=new TreeHistory();
+        }
+    }
+
+    /**
+     * Finds the immutable copy of a child about to be deleted in the current version, if the history keeps its
+     * versions. Otherwise the edit keeps the deleted child itself, which is only copied once a version needs it.
+     * @param path child indices leading from the root to the parent
+     * @param index index of the child within its parent
+     * @return the immutable copy of the child, or null if there is no current version
+     */
+    private PersistentTree.Node versionChild(int[] path, int index){
+        startHistory();
+        PersistentTree.Node version=history.hasVersions() ? history.getCurrent().find(path) : null;
+        return version!=null && index<version.numChildren() ? version.getChild(index) : null;
+    }
+
+    /**
+     * Adds an edit of the tree to its history, along with the version it makes if the history keeps its versions. If
+     * the edit does not fit the current version, which can only happen if the tree was changed behind the history's
+     * back, the history is started again.
+     * @param edit the edit made to the tree
+     */
+    private void record(TreeHistory.Edit edit){
+        try {
+            history.record(edit);
+            publish();
+        }
+        catch (InvalidIndexException | IndexOutOfBoundsException e){
+            resetHistory();
+        }
+    }
+
+    /**
+     * Drops the tree's history after the tree was replaced or changed without it, starting it again at once if there
+     * are snapshot readers so that they can see the new tree
+     */
+    private void resetHistory(){
+        history=null;
+        if (published!=null){
+            getHistory();
+            publish();
         }
     }
 
+    /**
+     * Makes the current version of the tree the one snapshot readers see next, if there are any
+     */
+    private void publish(){
+        if (published!=null){
+            published=history.getCurrent();
+        }
+    }
+
+    /**
+     * Opens a reader of the tree that other threads can use while the tree is being edited. Readers see immutable
+     * versions of the tree, which are published after each edit without blocking the editor or the readers. This
+     * method must be called by the thread editing the tree.
+     * @return a reader positioned at the root of the current version
+     */
+    public SnapshotReader openReader(){
+        publishVersions();
+        return new SnapshotReader(this);
+    }
+
+    /**
+     * Starts publishing the versions of the tree for snapshot readers, if it has not started yet. From then on, each
+     * tree loaded has its first version made as part of the load, rather than when the next reader is opened. This
+     * method must be called by the thread editing the tree.
+     */
+    public void publishVersions(){
+        if (published==null){
+            published=getHistory().getCurrent();
+        }
+    }
+
+    /**
+     * Getter method for the version of the tree most recently published to snapshot readers, which may be called by
+     * any thread
+     * @return the current version of the tree as of the last edit, or null if no reader was ever opened
+     */
+    public PersistentTree getPublished(){
+        return published;
+    }
+
+    /**
+     * Undoes the last edit of the tree that has not been undone yet, moving the cursor to the node it was made at
+     * @return the edit undone, or null if there is none
+     */
+    public TreeHistory.Edit undo(){
+        if (history==null || !history.canUndo()){
+            return null;
+        }
+        TreeHistory.Edit edit=history.undo();
+        FXTreeNode parent=findNode(edit.getPath());
+        if (edit.getKind()==TreeHistory.Kind.ADD){
+            removeNode(parent, edit.getIndex());
+            cursor=parent;
+        }
+        else if (edit.getKind()==TreeHistory.Kind.DELETE){
+            insertNode(parent, edit.getIndex(), edit.getNode().toTreeNode(parent));
+            cursor=parent;
+        }
+        else {
+            cursor=parent.getChild(edit.getIndex());
+            changeText(cursor, edit.getOldText());
+        }
+        publish();
+        return edit;
+    }
+
+    /**
+     * Redoes the last edit of the tree that was undone, moving the cursor to the node it was made at
+     * @return the edit redone, or null if there is none
+     */
+    public TreeHistory.Edit redo(){
+        if (history==null || !history.canRedo()){
+            return null;
+        }
+        TreeHistory.Edit edit=history.redo();
+        FXTreeNode parent=findNode(edit.getPath());
+        if (edit.getKind()==TreeHistory.Kind.ADD){
+            insertNode(parent, edit.getIndex(), edit.getNode().toTreeNode(parent));
+            cursor=parent;
+        }
+        else if (edit.getKind()==TreeHistory.Kind.DELETE){
+            removeNode(parent, edit.getIndex());
+            cursor=parent;
+        }
+        else {
+            cursor=parent.getChild(edit.getIndex());
+            changeText(cursor, edit.getNewText());
+        }
+        publish();
+        return edit;
+    }
+
+    /**
+     * Applies an edit script made by TreeDiff to the tree, one operation after another, and moves the cursor to the
+     * root. Each operation is recorded in the tree's history, a move as a delete followed by an add, so the script can
+     * be undone one operation at a time. The whole script is checked against the current version of the tree before
+     * any operation is applied, so a script that does not fit the tree leaves it unchanged.
+     * @param patch the edit script to apply
+     * @throws InvalidIndexException if an operation is located in a control or changes the text of a container
+     * @throws IndexOutOfBoundsException if an operation is located at an index the container does not have
+     */
+    public void applyPatch(TreeDiff patch) throws InvalidIndexException, IndexOutOfBoundsException{
+        checkPatch(patch);
+        cursor=root;
+        for (TreeDiff.Op op : patch.getOps()){
+            int[] path=op.getPath();
+            int index=op.getIndex();
+            FXTreeNode parent=walkTo(path);
+            if (op.getKind()==TreeDiff.Kind.ADD){
+                insertNode(parent, index, op.getNode().toTreeNode(parent));
+                record(TreeHistory.Edit.add(path, index, op.getNode()));
+            }
+            else if (op.getKind()==TreeDiff.Kind.TEXT){
+                FXTreeNode control=parent.getChild(index);
+                String old=control.getText();
+                changeText(control, op.getText());
+                record(TreeHistory.Edit.text(path, index, old, control.getText()));
+            }
+            else {
+                PersistentTree.Node child=versionChild(path, index);
+                FXTreeNode removed=removeNode(parent, index);
+                if (op.getKind()==TreeDiff.Kind.MOVE){
+                    child=child!=null ? child : PersistentTree.copy(removed); //the moved child goes on changing
+                    record(TreeHistory.Edit.delete(path, index, child));
+                    insertNode(parent, op.getTarget(), removed);
+                    record(TreeHistory.Edit.add(path, op.getTarget(), child));
+                }
+                else {
+                    record(child!=null ? TreeHistory.Edit.delete(path, index, child)
+                            : TreeHistory.Edit.delete(path, index, removed));
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that every operation of an edit script fits the tree as the operations before it leave it, by applying
+     * them to the current version, which leaves the tree itself untouched
+     * @param patch the edit script to check
+     * @throws InvalidIndexException if an operation is located in a control or changes the text of a container
+     * @throws IndexOutOfBoundsException if an operation is located at an index the container does not have
+     */
+    private void checkPatch(TreeDiff patch) throws InvalidIndexException, IndexOutOfBoundsException{
+        PersistentTree version=getHistory().getCurrent();
+        for (TreeDiff.Op op : patch.getOps()){
+            int[] path=op.getPath();
+            int index=op.getIndex();
+            PersistentTree.Node parent=version.find(path);
+            if (parent==null){
+                throw new IndexOutOfBoundsException("IndexOutOfBounds");
+            }
+            if (!parent.getType().isContainer()){
+                throw new InvalidIndexException("Invalid");
+            }
+            int limit=op.getKind()==TreeDiff.Kind.ADD ? parent.numChildren() : parent.numChildren()-1;
+            boolean badTarget=op.getKind()==TreeDiff.Kind.MOVE && (op.getTarget()<0 || op.getTarget()>limit);
+            if (index<0 || index>limit || badTarget){
+                throw new IndexOutOfBoundsException("IndexOutOfBounds");
+            }
+            if (op.getKind()==TreeDiff.Kind.ADD){
+                version=version.addChild(path, index, op.getNode());
+            }
+            else if (op.getKind()==TreeDiff.Kind.TEXT){
+                int[] target=Arrays.copyOf(path, path.length+1);
+                target[path.length]=index;
+                version=version.setText(target, op.getText());
+            }
+            else {
+                PersistentTree.Node child=parent.getChild(index);
+                version=version.deleteChild(path, index);
+                if (op.getKind()==TreeDiff.Kind.MOVE){
+                    version=version.addChild(path, op.getTarget(), child);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the child indices leading from the root to a node of the tree, in time proportional to its depth
+     * @param node a node of the tree
+     * @return the child indices, empty for the root
+     */
+    private int[] findIndices(FXTreeNode node){
+        int[] path=new int[findDepth(node)];
+        for (int i=path.length-1; i>=0; i--){
+            path[i]=node.getIndex();
+            node=node.getParent();
+        }
+        return path;
+    }
+
+    /**
+     * Finds the child indices leading from the root to a node by walking up its parents. A removed node keeps its
+     * parent and index, so each step checks that the parent still holds the node at that index.
+     * @param node a node
+     * @return the child indices, empty for the root, or null if the node is not in the tree
+     */
+    private int[] pathOf(FXTreeNode node){
+        FXTreeNode curr=node;
+        while (curr.getParent()!=null){
+            FXTreeNode parent=curr.getParent();
+            if (curr.getIndex()>=parent.numChildren() || parent.getChild(curr.getIndex())!=curr){
+                return null;
+            }
+            curr=parent;
+        }
+        return curr==root ? findIndices(node) : null;
+    }
+
+    /**
+     * Finds the node reached by following child indices from the root
+     * @param path the child indices
+     * @return the node at the end of the path
+     */
+    private FXTreeNode findNode(int[] path){
+        FXTreeNode node=root;
+        for (int index : path){
+            node=node.getChild(index);
+        }
+        return node;
+    }
+
     /**
      * Sets the element at a specified index of a children array of a specified parent node to a specified child node
      * @param index index of the children array at which to set the element as the child node
@@ -217,7 +1122,14 @@ public class FXComponentTree {
      * @param parent parent node to add the child node to
      */
     public void setChild(int index, FXTreeNode node, FXTreeNode parent){
-        parent.getChildren()[index]=node;
+        if (index<parent.numChildren()){
+            numNodes-=countNodes(parent.getChild(index));
+            nodeIds.removed(parent.getChild(index));
+        }
+        parent.setChild(index, node);
+        numNodes+=countNodes(node);
+        searchIndex=null;
+        resetHistory();
     }
 
     /**
@@ -233,7 +1145,7 @@ public class FXComponentTree {
         else{
             FXTreeNode cursor2=root;
             for (int i=1; i<indices.length-1; i++){ //the last index stores the children array index for the parent node
-                cursor2=cursor2.getChildren()[Integer.parseInt(indices[i])];
+                cursor2=cursor2.getChild(Integer.parseInt(indices[i]));
             }
             return cursor2;
         }
@@ -242,24 +1154,11 @@ public class FXComponentTree {
     /**
      * Finds what ComponentType enum a node's type attribute should be based on its string version
      * @param str the string version of the ComponentType of a node
-     * @return ComponentType enum matching the string input
+     * @return ComponentType enum matching the string input, or VBox if it matches none
      */
     public ComponentType findType(String str){
-        if (str.equals("Button")){
-            return ComponentType.Button;
-        }
-        else if (str.equals("Label")){
-            return ComponentType.Label;
-        }
-        else if (str.equals("TextArea")){
-            return ComponentType.TextArea;
-        }
-        else if (str.equals("HBox")){
-            return ComponentType.HBox;
-        }
-        else{
-            return ComponentType.VBox;
-        }
+        ComponentType type=ComponentType.fromName(str);
+        return type==null ? ComponentType.VBox : type;
     }
 
     /**
@@ -270,38 +1169,83 @@ public class FXComponentTree {
         return this.root;
     }
 
+    /**
+     * Getter method for the number of nodes in the tree, which is kept as the tree is loaded and edited so that
+     * subtrees not read yet are counted without being read
+     * @return the number of nodes below the root
+     */
+    public int numNodes(){
+        return numNodes;
+    }
+
     /**
      * Generates a text file that reflects the structure of the FXComponentTree
      * @param filename name of the file to write the tree in
      * @throws FileNotFoundException if a file with the given name cannot be written in
      */
     public void writeToFile(String filename) throws FileNotFoundException {
-        File file = new File(filename);
-        PrintWriter pw = new PrintWriter(file);
-        FXTreeNode curr = root;
-        printNodesInFile(pw, curr);
-        pw.close();
+        long start = TreeMetrics.start();
+        TreeExportEvent event = new TreeExportEvent();
+        event.begin();
+        String target = isSource(filename) ? filename + ".tmp" : filename;
+        if (isParallel()) {
+            try {
+                new ParallelExporter().writeToFile(this, target);
+            }
+            catch (IOException e) {
+                throw new FileNotFoundException(filename + " could not be written: " + e.getMessage());
+            }
+        }
+        else {
+            File file = new File(target);
+            PrintWriter pw = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file),
+                    StandardCharsets.UTF_8));
+            FXTreeNode curr = root;
+            printNodesInFile(pw, curr);
+            pw.close();
+        }
+        if (!target.equals(filename)) {
+            try {
+                replaceFile(target, filename);
+            }
+            catch (IOException e) {
+                throw new FileNotFoundException(filename + " could not be replaced: " + e.getMessage());
+            }
+        }
+        if (start != TreeMetrics.NOT_TIMED || event.shouldCommit()) {
+            written(filename, "txt", event);
+        }
+        TreeMetrics.stop(TreeMetrics.Operation.WRITE_FILE, start);
     }
 
     /**
-     * Helper method to recursively write the tree nodes in a text file
+     * Saves the tree in the binary format of BinaryTreeFile, which readFromBinaryFile loads far faster than a text
+     * file. The cursor is not saved.
+     * @param filename name of the file to write the tree in
+     * @throws IOException if the file cannot be written
+     */
+    public void writeToBinaryFile(String filename) throws IOException {
+        long start = TreeMetrics.start();
+        TreeExportEvent event = new TreeExportEvent();
+        event.begin();
+        String target = isSource(filename) ? filename + ".tmp" : filename;
+        BinaryTreeFile.write(root, target);
+        if (!target.equals(filename)) {
+            replaceFile(target, filename);
+        }
+        if (start != TreeMetrics.NOT_TIMED || event.shouldCommit()) {
+            written(filename, "fxtree", event);
+        }
+        TreeMetrics.stop(TreeMetrics.Operation.WRITE_BINARY, start);
+    }
+
+    /**
+     * Helper method to write the tree nodes in a text file
      * @param pw PrintWriter object to write in the file
      * @param curr root node of the tree
      */
     public void printNodesInFile(PrintWriter pw, FXTreeNode curr){
-        if (curr == null) {
-            return;
-        }
-        pw.print(addTabs(findDepth(curr)));
-        pw.println(curr.toTreeString(this));
-        for (int i=0; i<curr.numChildren(); i++){
-            if (curr.getChildren()==null){
-                continue;
-            }
-            else {
-                printNodesInFile(pw, curr.getChildren()[i]);
-            }
-        }
+        new TreeRenderer(pw).render(this, curr);
     }
     //for FXML file output
     /**
@@ -309,65 +1253,70 @@ public class FXComponentTree {
      * @param tree FXComponentTree to write the contents of in fxml
      * @param filename name of FXML file to export to
      * @throws FileNotFoundException if unable to write in file with specified name
+     * @throws IOException if the file cannot be written
      */
-    public static void exportToFXML(FXComponentTree tree, String filename) throws FileNotFoundException {
-        File file = new File(filename);
-        PrintWriter pw = new PrintWriter(file);
-        pw.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-        pw.println("<?import javafx.scene.control.*?>");
-        pw.println("<?import javafx.scene.layout.*?>");
-        pw.println("<AnchorPane xmlns:fx=\"http://javafx.com/fxml\">");
-        if (tree.getRoot().numChildren()!=0){
-            FXTreeNode curr = tree.getRoot().getChildren()[0];
-            tree.printNodesInFXMLFile(pw, curr);
+    public static void exportToFXML(FXComponentTree tree, String filename) throws IOException {
+        long start = TreeMetrics.start();
+        TreeExportEvent event = new TreeExportEvent();
+        event.begin();
+        String target = tree.isSource(filename) ? filename + ".tmp" : filename;
+        try (OutputStream out = new FileOutputStream(target)) {
+            tree.writeFXML(out);
+        }
+        if (!target.equals(filename)) {
+            replaceFile(target, filename);
         }
-        pw.println("</AnchorPane>");
-        pw.close();
-        System.out.println(filename + " saved to computer");
+        if (start != TreeMetrics.NOT_TIMED || event.shouldCommit()) {
+            tree.written(filename, "fxml", event);
+        }
+        TreeMetrics.stop(TreeMetrics.Operation.EXPORT_FXML, start);
     }
 
     /**
-     * Recursively prints the nodes of the FXComponentTree while abiding by FXML format
-     * @param pw PrintWriter object to write the contents of the file
-     * @param curr the first child of the tree's root node if applicable (root node is already printed regardless)
+     * Writes the tree as an FXML document. Only the nodes changed since the last call are serialized again, and the
+     * cached FXML of every unchanged subtree is copied as is. The first document, which has nothing cached to copy, is
+     * written by a ParallelExporter when there are several cores to write it on, and the next call caches the
+     * fragments. A tree keeping repeated subtrees shared is written from its current immutable version instead, which
+     * leaves the sharing intact.
+     * @param out stream to write the document to
+     * @throws IOException if the document cannot be written
      */
-    public void printNodesInFXMLFile(PrintWriter pw, FXTreeNode curr){
-        if (curr == root) {
+    public void writeFXML(OutputStream out) throws IOException {
+        if (sharing) {
+            getHistory().getCurrent().writeFXML(out, textPool);
             return;
         }
-        pw.print(addTabs(findDepth(curr)));
-        if (curr.getType()==ComponentType.Button || curr.getType()==ComponentType.Label) {
-            pw.println("<" + curr.getType().toString() + " text=\"" + curr.getText() + "\"/>");
-        }
-        else if (curr.getType()==ComponentType.TextArea){
-            String str = curr.getText();
-            String id = "\"";
-            str = str.trim();
-            String delims = "\\W+";
-            String[] words = str.split(delims);
-            id+=words[0].substring(0,1).toLowerCase()+words[0].substring(1);
-            if (words.length>1){
-                for (int i=1; i<words.length; i++){
-                    id+=words[i].substring(0,1).toUpperCase()+words[i].substring(1);
-                }
-            }
-            id+="\"";
-            pw.println("<" + curr.getType().toString() + " fx:id=" + id + " text=\"" + curr.getText() + "\"/>");
-        }
-        else{
-            pw.println("<" + curr.getType().toString() + ">");
-        }
-        for (int i=0; i<curr.numChildren(); i++){
-            if (curr.getChildren()==null){
-                continue;
-            }
-            else {
-                printNodesInFXMLFile(pw, curr.getChildren()[i]);
+        if (exporter == null) {
+            exporter = new IncrementalFXMLExporter(this);
+            if (isParallel()) {
+                new ParallelExporter().exportToFXML(this, out);
+                return;
             }
         }
-        if (curr.getType()==ComponentType.HBox || curr.getType()==ComponentType.VBox){
-            pw.print(addTabs(findDepth(curr)));
-            pw.println("</" + curr.getType().toString() + ">");
+        exporter.export(out);
+    }
+
+    /**
+     * Finds whether the tree is written by a ParallelExporter, which needs more than one thread in the common
+     * fork/join pool and a tree whose nodes were all read, since unread subtrees cannot be read by several threads
+     * @return true if the tree is to be written in parallel
+     */
+    private boolean isParallel(){
+        return ForkJoinPool.getCommonPoolParallelism()>1 && lazyFile==null && !sharing;
+    }
+
+    /**
+     * Prints the nodes of the FXComponentTree while abiding by FXML format, handing the subtree to
+     * FXMLWriter.writeSubtree, which walks it without recursion
+     * @param writer FXMLWriter object to write the contents of the file
+     * @param curr the node to print along with its children (root node is already printed regardless)
+     * @param depth depth of the node within the tree
+     * @throws IOException if the file cannot be written
+     */
+    public void printNodesInFXMLFile(FXMLWriter writer, FXTreeNode curr, int depth) throws IOException {
+        if (curr == root) {
+            return;
         }
+        writer.writeSubtree(curr, depth);
     }
 }
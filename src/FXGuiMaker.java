@@ -1,17 +1,23 @@
 import java.io.*;
+import java.util.List;
 import java.util.Scanner;
 
 /**
  * Allows the user to load an FXComponentTree with information from a text file and edit it, as well to export it
  */
 public class FXGuiMaker {
+    private static final int MAX_MATCHES_SHOWN = 20; //most search matches listed
+    private static final int PRINT_WINDOW = 200; //most nodes printed around the cursor by P
     private static FXComponentTree tree = new FXComponentTree();
-    private static String FXMLFile;
+    private static final BackgroundSaver saver = new BackgroundSaver(tree); //saves the tree in the background
 
     /**
      * Runs a menu-driven application which first creates an FXComponentTree based on the passed in file and then prompts
      * the user for a menu command selecting the operation. The required information is then requested from the user
-     * based on the selected operation
+     * based on the selected operation. Started as FXGuiMaker --batch script, it instead applies the commands of a script
+     * without prompting, as described in BatchRunner, and started as FXGuiMaker --convert input output, it converts
+     * every text file under the input directory to FXML with a BulkConverter, and started as FXGuiMaker --stream input
+     * output, it converts one text file to FXML with a StreamingConverter
      * @param args command line arguments
      * @throws InvalidIndexException if an index is entered for control node or if an input index is negative
      * @throws FullNodeException if user attempts to add a child node to a node with full children array
@@ -19,9 +25,21 @@ public class FXGuiMaker {
      * non-null index or delete a child node at such an index
      */
     public static void main(String[] args) throws InvalidIndexException, FullNodeException, IndexOutOfBoundsException {
+        if (args.length > 0 && args[0].equals("--batch")){
+            System.exit(BatchRunner.run(args));
+        }
+        if (args.length > 0 && args[0].equals("--convert")){
+            System.exit(BulkConverter.run(args));
+        }
+        if (args.length > 0 && args[0].equals("--stream")){
+            System.exit(StreamingConverter.run(args));
+        }
+        TreeMetrics.get().setEnabled(true);
+        TreeMetrics.registerMBean();
         Scanner sc = new Scanner(System.in);
         System.out.println("Welcome to counterfeit SceneBuilder.");
         while (true){
+            saver.reportFinished(System.out);
             printMenu();
             System.out.print("Please select an option: ");
             String option = sc.nextLine().toUpperCase();
@@ -29,34 +47,31 @@ public class FXGuiMaker {
                 case "L":
                     System.out.println("Please enter filename:");
                     String filename = sc.nextLine();
-                    if (filename.substring(filename.length()-4).equals("fxml")){
-                        try{
-                            FXMLFile = tree.readFromFXMLFile(filename);
-                            System.out.println(filename + " loaded");
+                    try {
+                        if (filename.endsWith(".fxml")){
+                            tree = tree.readFromFXMLFile(filename);
                         }
-                        catch (Exception e){
-                            System.out.println("File not found");
-                            break;
+                        else if (filename.endsWith(BinaryTreeFile.EXTENSION)){
+                            tree = tree.readFromBinaryFile(filename);
                         }
-                        break;
-                    }
-                    else {
-                        try {
+                        else if (new File(filename).length() >= FXComponentTree.LAZY_LOAD_SIZE){
+                            tree = tree.readFromFileLazily(filename);
+                        }
+                        else {
                             tree = tree.readFromFile(filename);
-                            System.out.println(filename + " loaded");
-                        } catch (FileNotFoundException e) {
-                            System.out.println(filename + " not found");
-                            break;
                         }
-                        break;
+                        System.out.println(filename + " loaded");
+                    } catch (FileNotFoundException e) {
+                        System.out.println(filename + " not found");
+                    } catch (IOException | MalformedTreeFileException e) {
+                        System.out.println(filename + " could not be loaded: " + e.getMessage());
                     }
+                    break;
                 case "P":
-                    if (FXMLFile!=null){
-                        System.out.println(FXMLFile);
-                    }
-                    else{
-                        tree.printTree(tree.getRoot());
-                    }
+                    tree.printAroundCursor(PRINT_WINDOW);
+                    break;
+                case "W":
+                    tree.printTree(tree.getRoot());
                     break;
                 case "C":
                     System.out.println("Please enter number of child (starting with 1):");
@@ -73,6 +88,18 @@ public class FXGuiMaker {
                         System.out.println(e.getMessage());
                     }
                     break;
+                case "J":
+                    System.out.println("Please enter a position (such as 0-0-2) or a node id (such as #12):");
+                    String path = sc.nextLine().trim();
+                    try{
+                        tree.jumpTo(path);
+                        System.out.println("Cursor moved to " + tree.getCursor().toString() + ", node #"
+                                + tree.idOf(tree.getCursor()));
+                    }
+                    catch (InvalidIndexException e){
+                        System.out.println(e.getMessage());
+                    }
+                    break;
                 case "R":
                     tree.cursorToRoot();
                     System.out.println("Cursor is at root.");
@@ -94,8 +121,7 @@ public class FXGuiMaker {
                     }
                     String text="";
                     ComponentType type = tree.findType(component);
-                    boolean control = (type!=ComponentType.HBox && type!=ComponentType.VBox &&
-                            type!=ComponentType.AnchorPane);
+                    boolean control = !type.isContainer();
                     if (control){
                         System.out.println("Please enter text: ");
                         text = sc.nextLine();
@@ -105,7 +131,7 @@ public class FXGuiMaker {
                     try {
                         addIndex = sc.nextInt();
                         sc.nextLine();
-                        FXTreeNode node = new FXTreeNode(tree.findType(component), tree.getCursor());
+                        FXTreeNode node = FXTreeNode.create(tree.findType(component), tree.getCursor());
                         if (control) {
                             node.setText(text);
                         }
@@ -131,9 +157,7 @@ public class FXGuiMaker {
                 case "E":
                     System.out.println("Please enter new text: ");
                     String txt = sc.nextLine();
-                    if (tree.getCursor().getType()==ComponentType.HBox ||
-                            tree.getCursor().getType()==ComponentType.VBox ||
-                            tree.getCursor().getType()==ComponentType.AnchorPane){
+                    if (tree.getCursor().getType().isContainer()){
                         System.out.println("Cannot edit text");
                         break;
                     }
@@ -158,28 +182,190 @@ public class FXGuiMaker {
                 case "S":
                     System.out.println("Please enter a filename: ");
                     String file = sc.nextLine();
-                    try {
-                        tree.writeToFile(file);
-                    }
-                    catch (FileNotFoundException e){
-                        System.out.println("File not found");
-                        sc.nextLine();
-                        break;
-                    }
-                    System.out.println(file + " saved to computer");
+                    BackgroundSaver.Job save = saver.submit(file, BackgroundSaver.Format.forSave(file));
+                    System.out.println("Saving " + file + " in the background (job #" + save.getId() + ")");
                     break;
                 case "X":
                     System.out.println("Please enter a filename: ");
                     String fileNameFXML = sc.nextLine();
+                    BackgroundSaver.Job export = saver.submit(fileNameFXML, BackgroundSaver.Format.FXML);
+                    System.out.println("Exporting " + fileNameFXML + " in the background (job #" + export.getId() + ")");
+                    break;
+                case "B":
+                    saver.printStatus(System.out);
+                    break;
+                case "O":
+                    System.out.println(saver.getAutosave());
+                    System.out.println("Please enter the seconds between autosaves (0 to turn autosave off): ");
+                    long seconds;
                     try{
-                        FXComponentTree.exportToFXML(tree, fileNameFXML);
+                        seconds = Long.parseLong(sc.nextLine().trim());
                     }
-                    catch (Exception e){
+                    catch (NumberFormatException e){
+                        System.out.println("Please enter a number of seconds");
+                        break;
+                    }
+                    if (seconds <= 0){
+                        saver.setAutosave(null, 0);
+                    }
+                    else {
+                        System.out.println("Please enter a filename: ");
+                        saver.setAutosave(sc.nextLine(), seconds);
+                    }
+                    System.out.println(saver.getAutosave());
+                    break;
+                case "Z":
+                    TreeHistory.Edit undone = tree.undo();
+                    if (undone == null){
+                        System.out.println("Nothing to undo");
+                    }
+                    else{
+                        System.out.println("Undid: " + undone);
+                    }
+                    break;
+                case "Y":
+                    TreeHistory.Edit redone = tree.redo();
+                    if (redone == null){
+                        System.out.println("Nothing to redo");
+                    }
+                    else{
+                        System.out.println("Redid: " + redone);
+                    }
+                    break;
+                case "V":
+                    TreeHistory history = tree.getHistory();
+                    System.out.println("Versions " + history.getFirstNumber() + " to " + history.getLastNumber() +
+                            " are kept, the current one is " + history.getCurrentNumber() + ".");
+                    System.out.println("Please enter a version number: ");
+                    try{
+                        int number = Integer.parseInt(sc.nextLine().trim());
+                        PersistentTree version = history.getVersion(number);
+                        if (version == null){
+                            throw new InvalidIndexException("Invalid");
+                        }
+                        System.out.println("Please enter a filename: ");
+                        String versionFile = sc.nextLine();
+                        version.exportToFXML(versionFile, tree.getTextPool());
+                        System.out.println(versionFile + " saved to computer");
+                    }
+                    catch (NumberFormatException e){
+                        System.out.println("Invalid");
+                    }
+                    catch (InvalidIndexException | IOException e){
                         System.out.println(e.getMessage());
-                        sc.nextLine();
                     }
                     break;
+                case "M":
+                    System.out.println(TreeMetrics.get());
+                    System.out.println("Text pool: " + tree.getTextPool());
+                    break;
+                case "F":
+                    System.out.println("Please enter a component type, or leave blank for any: ");
+                    String typeName = sc.nextLine().trim();
+                    ComponentType searchType = null;
+                    if (!typeName.isEmpty()){
+                        searchType = ComponentType.fromName(typeName);
+                        if (searchType == null){
+                            System.out.println("Invalid");
+                            break;
+                        }
+                    }
+                    System.out.println("Please enter the text to find, or leave blank for every node of the type: ");
+                    String query = sc.nextLine();
+                    SearchIndex.Mode mode = SearchIndex.Mode.SUBSTRING;
+                    if (!query.isEmpty()){
+                        System.out.println("Please enter E for the exact text, P for words starting with it or S for " +
+                                "text containing it: ");
+                        String match = sc.nextLine().trim().toUpperCase();
+                        if (match.equals("E")){
+                            mode = SearchIndex.Mode.EXACT;
+                        }
+                        else if (match.equals("P")){
+                            mode = SearchIndex.Mode.PREFIX;
+                        }
+                    }
+                    List<String> matches = tree.search(searchType, query, mode);
+                    if (matches.isEmpty()){
+                        System.out.println("No matches");
+                        break;
+                    }
+                    int shown = Math.min(matches.size(), MAX_MATCHES_SHOWN);
+                    for (int i = 0; i < shown; i++){
+                        System.out.println((i + 1) + ") " + matches.get(i) + " " + tree.findNode(matches.get(i)));
+                    }
+                    if (shown < matches.size()){
+                        System.out.println("... and " + (matches.size() - shown) + " more");
+                    }
+                    System.out.println("Please enter the number of a match to move the cursor to, or leave blank: ");
+                    String choice = sc.nextLine().trim();
+                    if (!choice.isEmpty()){
+                        try{
+                            int number = Integer.parseInt(choice);
+                            if (number < 1 || number > shown){
+                                throw new InvalidIndexException("Invalid");
+                            }
+                            tree.cursorToPath(matches.get(number - 1));
+                            System.out.println("Cursor moved to " + tree.getCursor());
+                        }
+                        catch (NumberFormatException e){
+                            System.out.println("Invalid");
+                        }
+                        catch (InvalidIndexException e){
+                            System.out.println(e.getMessage());
+                        }
+                    }
+                    break;
+                case "G":
+                    System.out.println("Please enter the filename of the tree to compare with:");
+                    String otherFile = sc.nextLine();
+                    try {
+                        FXComponentTree other = otherFile.endsWith(".fxml") ?
+                                new FXComponentTree().readFromFXMLFile(otherFile) :
+                                new FXComponentTree().readFromFile(otherFile);
+                        TreeDiff diff = TreeDiff.compare(tree, other);
+                        if (diff.isEmpty()){
+                            System.out.println("The trees are the same");
+                        }
+                        else{
+                            System.out.print(diff);
+                            System.out.println(diff.size() + " operations turn the tree into " + otherFile);
+                            System.out.println("Please enter a filename to save the script to, or nothing to skip:");
+                            String diffFile = sc.nextLine().trim();
+                            if (!diffFile.isEmpty()){
+                                try {
+                                    diff.writeToFile(diffFile);
+                                    System.out.println(diffFile + " saved to computer");
+                                } catch (IOException e) {
+                                    System.out.println(diffFile + " could not be written: " + e.getMessage());
+                                }
+                            }
+                        }
+                    } catch (FileNotFoundException e) {
+                        System.out.println(otherFile + " not found");
+                    } catch (IOException | MalformedTreeFileException e) {
+                        System.out.println(otherFile + " could not be loaded: " + e.getMessage());
+                    }
+                    break;
+                case "H":
+                    System.out.println("Please enter the filename of the patch:");
+                    String patchFile = sc.nextLine();
+                    try {
+                        TreeDiff patch = TreeDiff.readFromFile(patchFile);
+                        tree.applyPatch(patch);
+                        System.out.println(patch.size() + " operations applied");
+                    } catch (IOException | MalformedTreeFileException e) {
+                        System.out.println(patchFile + " could not be read: " + e.getMessage());
+                    } catch (InvalidIndexException | IndexOutOfBoundsException e) {
+                        System.out.println("The patch does not fit the tree: " + e.getMessage());
+                    }
+                    break;
+                case "K":
+                    tree.setSharing(!tree.isSharing());
+                    System.out.println(tree.isSharing() ? "Identical subtrees are now shared" :
+                            "Identical subtrees will no longer be shared once loaded");
+                    break;
                 case "Q":
+                    saver.close(System.out);
                     System.out.println("Make like a tree and leave!");
                     System.exit(0);
                 default:
@@ -194,15 +380,28 @@ public class FXGuiMaker {
      */
     public static void printMenu(){
         System.out.println("Menu:");
-        System.out.println("\tL) Load from file");
-        System.out.println("\tP) Print tree");
+        System.out.println("\tL) Load from file (.txt, .fxml or " + BinaryTreeFile.EXTENSION + ")");
+        System.out.println("\tP) Print tree around cursor");
+        System.out.println("\tW) Print whole tree");
         System.out.println("\tC) Move cursor to a child node");
+        System.out.println("\tJ) Jump cursor to a position or node id");
         System.out.println("\tR) Move cursor to root");
         System.out.println("\tA) Add child");
         System.out.println("\tU) Cursor up (to parent)");
         System.out.println("\tE) Edit text of cursor");
         System.out.println("\tD) Delete child");
-        System.out.println("\tS) Save to file");
+        System.out.println("\tS) Save to file (" + BinaryTreeFile.EXTENSION + " for a binary file)");
+        System.out.println("\tX) Export to FXML");
+        System.out.println("\tB) Show background saves and exports");
+        System.out.println("\tO) Set autosave");
+        System.out.println("\tZ) Undo");
+        System.out.println("\tY) Redo");
+        System.out.println("\tV) Export an earlier version to FXML");
+        System.out.println("\tM) Show statistics");
+        System.out.println("\tK) Share identical subtrees");
+        System.out.println("\tF) Find nodes");
+        System.out.println("\tG) Compare with a file");
+        System.out.println("\tH) Apply a patch file");
         System.out.println("\tQ) Quit");
     }
 }
\ No newline at end of file
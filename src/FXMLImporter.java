@@ -0,0 +1,137 @@
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Builds the nodes of an FXComponentTree from an FXML file in a single streaming pass. Button, Label, TextArea, HBox,
+ * VBox and AnchorPane elements become nodes, children wrapper elements are passed through, and any other element is
+ * skipped along with everything inside it. Only the chain of currently open elements is kept besides the tree itself.
+ */
+public class FXMLImporter {
+    private static final int BUFFER_SIZE = 1 << 16; //size of the input buffer
+    private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        FACTORY.setProperty(XMLInputFactory.IS_COALESCING, false);
+    }
+
+    /**
+     * Reads an FXML file into a new tree root
+     * @param filename name of the FXML file to read
+     * @param pool text pool to intern the texts of the new nodes in
+     * @return the root AnchorPane holding the nodes of the file
+     * @throws java.io.FileNotFoundException if a file with the specified name is not found
+     * @throws IOException if the file cannot be read
+     * @throws MalformedTreeFileException if the file is not well-formed XML
+     */
+    public static FXTreeNode importFile(String filename, TextPool pool) throws IOException, MalformedTreeFileException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(filename), BUFFER_SIZE)) {
+            return importStream(in, pool);
+        }
+    }
+
+    /**
+     * Reads FXML from a stream into a new tree root
+     * @param in stream to read the FXML from
+     * @param pool text pool to intern the texts of the new nodes in
+     * @return the root AnchorPane holding the nodes of the stream
+     * @throws MalformedTreeFileException if the stream is not well-formed XML
+     */
+    public static FXTreeNode importStream(InputStream in, TextPool pool) throws MalformedTreeFileException {
+        FXTreeNode root = FXTreeNode.create(ComponentType.AnchorPane, null);
+        FXTreeNode[] open = new FXTreeNode[16]; //node each open element adds its children to, by element depth
+        int depth = 0; //number of open elements that are not being skipped
+        int skipDepth = 0; //number of open elements inside a skipped element, including itself
+        XMLStreamReader reader = null;
+        try {
+            reader = FACTORY.createXMLStreamReader(in);
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    if (skipDepth > 0) {
+                        skipDepth++;
+                        continue;
+                    }
+                    FXTreeNode parent = depth == 0 ? null : open[depth - 1];
+                    FXTreeNode opened = openElement(reader, root, parent, pool);
+                    if (opened == null) {
+                        skipDepth = 1;
+                        continue;
+                    }
+                    if (depth == open.length) {
+                        open = Arrays.copyOf(open, depth * 2);
+                    }
+                    open[depth++] = opened;
+                }
+                else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (skipDepth > 0) {
+                        skipDepth--;
+                    }
+                    else {
+                        open[--depth] = null;
+                    }
+                }
+            }
+        }
+        catch (XMLStreamException e) {
+            int line = e.getLocation() == null ? 0 : e.getLocation().getLineNumber();
+            throw new MalformedTreeFileException(line, e.getMessage());
+        }
+        finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                }
+                catch (XMLStreamException e) {
+                    //the underlying stream is closed by the caller
+                }
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Handles the start of an element
+     * @param reader reader positioned at the start of the element
+     * @param root root of the tree being built
+     * @param parent node the enclosing element adds its children to, or null for the document element
+     * @param pool text pool to intern the text of the new node in
+     * @return the node the element's children should be added to, or null if the element should be skipped
+     */
+    private static FXTreeNode openElement(XMLStreamReader reader, FXTreeNode root, FXTreeNode parent,
+            TextPool pool) {
+        String name = reader.getLocalName();
+        name = name.substring(name.lastIndexOf('.') + 1);
+        if (parent == null) {
+            if (name.equals("AnchorPane")) {
+                return root;
+            }
+            parent = root;
+        }
+        if (!parent.getType().isContainer()) {
+            return null;
+        }
+        if (name.equals("children")) {
+            return parent;
+        }
+        ComponentType type = ComponentType.fromName(name);
+        if (type == null) {
+            return null;
+        }
+        FXTreeNode node = FXTreeNode.create(type, parent);
+        if (!node.getType().isContainer()) {
+            String text = reader.getAttributeValue(null, "text");
+            node.setText(pool.canonical(text == null ? "" : text));
+        }
+        parent.insertChild(parent.numChildren(), node);
+        return node;
+    }
+}
@@ -0,0 +1,501 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+
+/**
+ * Writes the nodes of an FXComponentTree as FXML. Output is encoded as UTF-8 straight into one large byte buffer that
+ * is flushed to the underlying stream when full, and the depth of each node is passed in by the caller, so writing a
+ * node only copies preencoded tag names, cached indentation and the escaped text attribute. A writer created without
+ * a stream keeps the whole document in a growing buffer instead, so that ranges of it can be copied out. A writer with
+ * a stream can be asked to retain the output from a position on, so that recent ranges can be copied out too.
+ */
+public class FXMLWriter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16; //size of the output buffer
+    private static final int MAX_BYTES_PER_CHAR = 6; //longest escape of one character, &quot;
+    private static final byte[] HEADER = header(); //XML declaration, imports and opening tag of the root
+    private static final byte[] FOOTER = "</AnchorPane>\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TEXT_ATTRIBUTE = " text=\"".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ID_ATTRIBUTE = " fx:id=\"".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] DEFAULT_ID = "textArea".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TABS = new byte[64]; //indentation copied in chunks for any depth
+
+    static {
+        Arrays.fill(TABS, (byte) '\t');
+    }
+
+    /**
+     * Builds the start of every document, importing the package of each component type once
+     * @return the XML declaration, imports and opening tag of the root AnchorPane in UTF-8
+     */
+    private static byte[] header() {
+        StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        LinkedHashSet<String> packages = new LinkedHashSet<>();
+        for (ComponentType type : ComponentType.values()) {
+            packages.add(type.getImportPackage());
+        }
+        for (String importPackage : packages) {
+            sb.append("<?import ").append(importPackage).append(".*?>\n");
+        }
+        sb.append("<AnchorPane xmlns:fx=\"http://javafx.com/fxml\">\n");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private final OutputStream out; //stream the buffer is flushed to, or null to keep all output in the buffer
+    private final TextPool pool; //pool holding preencoded texts, or null
+    private byte[] buf; //encoded output not yet flushed
+    private int count; //number of bytes in use in the buffer
+    private long flushed; //number of bytes flushed to the stream before the start of the buffer
+    private long retained = Long.MAX_VALUE; //position from which output is kept in the buffer when it is flushed
+    private TreeWalker walker; //walker reused for every subtree written, created on first use
+
+    /**
+     * Creates a writer that writes FXML to a stream
+     * @param out stream to write to, which is closed when the writer is closed
+     */
+    public FXMLWriter(OutputStream out) {
+        this(out, null);
+    }
+
+    /**
+     * Creates a writer that writes FXML to a stream, copying the encoded form of texts kept in a text pool
+     * @param out stream to write to, which is closed when the writer is closed
+     * @param pool pool of the tree being written, or null to encode every text as it is written
+     */
+    public FXMLWriter(OutputStream out, TextPool pool) {
+        this(out, pool, BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a writer that keeps all of its output in memory
+     * @param pool pool of the tree being written, or null to encode every text as it is written
+     */
+    public FXMLWriter(TextPool pool) {
+        this(null, pool, BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a writer that keeps all of its output in memory, starting from a buffer of a given size
+     * @param pool pool of the tree being written, or null to encode every text as it is written
+     * @param bufferSize initial size of the buffer, which is grown as needed, at least 64 bytes
+     */
+    public FXMLWriter(TextPool pool, int bufferSize) {
+        this(null, pool, Math.max(bufferSize, 64));
+    }
+
+    /**
+     * Creates a writer
+     * @param out stream to write to, or null to keep all of the output in memory
+     * @param pool pool of the tree being written, or null to encode every text as it is written
+     * @param bufferSize size of the buffer
+     */
+    private FXMLWriter(OutputStream out, TextPool pool, int bufferSize) {
+        this.out = out;
+        this.pool = pool;
+        this.buf = new byte[bufferSize];
+    }
+
+    /**
+     * Writes the XML declaration, imports and opening tag of the root AnchorPane
+     * @throws IOException if the output cannot be written
+     */
+    public void writeHeader() throws IOException {
+        write(HEADER);
+    }
+
+    /**
+     * Writes the closing tag of the root AnchorPane
+     * @throws IOException if the output cannot be written
+     */
+    public void writeFooter() throws IOException {
+        write(FOOTER);
+    }
+
+    /**
+     * Writes a node and all of its children
+     * @param node the node to write
+     * @param depth depth of the node within its tree, which is the number of tabs it is indented by
+     * @throws IOException if the output cannot be written
+     */
+    public void writeSubtree(FXTreeNode node, int depth) throws IOException {
+        if (walker == null) {
+            walker = new TreeWalker();
+        }
+        walker.start(node, depth);
+        while (walker.next()) {
+            FXTreeNode current = walker.getNode();
+            if (walker.isEntering()) {
+                writeStart(current.getType(), current.getText(), walker.getDepth());
+            }
+            else {
+                writeEnd(current.getType(), walker.getDepth());
+            }
+        }
+    }
+
+    /**
+     * Writes the opening tag of a container, or the whole element of a control
+     * @param type component type of the node
+     * @param text text attribute of the node, ignored for containers
+     * @param depth depth of the node within its tree
+     * @throws IOException if the output cannot be written
+     */
+    public void writeStart(ComponentType type, String text, int depth) throws IOException {
+        indent(depth);
+        write(type.getOpenTag());
+        if (type.isContainer()) {
+            writeByte('>');
+        }
+        else {
+            int id = pool == null ? TextPool.NONE : pool.find(text);
+            if (type == ComponentType.TextArea) {
+                write(ID_ATTRIBUTE);
+                if (id == TextPool.NONE) {
+                    writeId(text);
+                }
+                else {
+                    write(pool.getEncodedId(id));
+                }
+                writeByte('"');
+            }
+            write(TEXT_ATTRIBUTE);
+            if (id == TextPool.NONE) {
+                writeEscaped(text);
+            }
+            else {
+                write(pool.getEncoded(id));
+            }
+            writeByte('"');
+            writeByte('/');
+            writeByte('>');
+        }
+        writeByte('\n');
+    }
+
+    /**
+     * Writes the closing tag of a container. Nothing is written for controls, which close themselves.
+     * @param type component type of the node
+     * @param depth depth of the node within its tree
+     * @throws IOException if the output cannot be written
+     */
+    public void writeEnd(ComponentType type, int depth) throws IOException {
+        if (type.isContainer()) {
+            indent(depth);
+            write(type.getCloseTag());
+        }
+    }
+
+    /**
+     * Writes the indentation for a node at a specified depth
+     * @param depth number of tabs to write
+     * @throws IOException if the output cannot be written
+     */
+    private void indent(int depth) throws IOException {
+        while (depth > 0) {
+            int n = Math.min(depth, TABS.length);
+            write(TABS, n);
+            depth -= n;
+        }
+    }
+
+    /**
+     * Writes the fx:id of a TextArea, built by camel-casing the words of its text
+     * @param text text of the TextArea
+     * @throws IOException if the output cannot be written
+     */
+    private void writeId(String text) throws IOException {
+        int room = Math.max(text == null ? 0 : text.length(), DEFAULT_ID.length);
+        if (room > buf.length) {
+            write(encodeId(text));
+            return;
+        }
+        ensureRoom(room);
+        count = deriveId(text, buf, count);
+    }
+
+    /**
+     * Writes text as UTF-8, escaping the characters that cannot appear inside a double-quoted XML attribute
+     * @param text the text to write, written as null if it is missing
+     * @throws IOException if the output cannot be written
+     */
+    private void writeEscaped(String text) throws IOException {
+        if (text == null) {
+            text = "null";
+        }
+        int chunk = buf.length / MAX_BYTES_PER_CHAR;
+        int start = 0;
+        int length = text.length();
+        while (start < length) {
+            int end = Math.min(start + chunk, length);
+            if (end < length && Character.isHighSurrogate(text.charAt(end - 1))) {
+                end--;
+            }
+            ensureRoom((end - start) * MAX_BYTES_PER_CHAR);
+            count = escape(text, start, end, buf, count);
+            start = end;
+        }
+    }
+
+    /**
+     * Encodes the fx:id of a TextArea, built by camel-casing the words of its text
+     * @param text text of the TextArea
+     * @return the ASCII bytes of the id
+     */
+    public static byte[] encodeId(String text) {
+        byte[] bytes = new byte[Math.max(text == null ? 0 : text.length(), DEFAULT_ID.length)];
+        return Arrays.copyOf(bytes, deriveId(text, bytes, 0));
+    }
+
+    /**
+     * Encodes text as UTF-8, escaping the characters that cannot appear inside a double-quoted XML attribute
+     * @param text the text to encode, encoded as null if it is missing
+     * @return the encoded bytes
+     */
+    public static byte[] encodeAttribute(String text) {
+        if (text == null) {
+            text = "null";
+        }
+        byte[] bytes = new byte[text.length() * MAX_BYTES_PER_CHAR];
+        return Arrays.copyOf(bytes, escape(text, 0, text.length(), bytes, 0));
+    }
+
+    /**
+     * Camel-cases the words of a TextArea's text into an array, using textArea if the text has no words
+     * @param text text of the TextArea
+     * @param dest array to write to, with room for the length of the text or of textArea, whichever is larger
+     * @param pos index of the array to start writing at
+     * @return index after the last byte written
+     */
+    private static int deriveId(String text, byte[] dest, int pos) {
+        int start = pos;
+        boolean inWord = false; //whether the previous character belonged to a word
+        int length = text == null ? 0 : text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            boolean wordChar = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+            if (!wordChar) {
+                inWord = false;
+                continue;
+            }
+            if (!inWord) {
+                c = pos == start ? Character.toLowerCase(c) : Character.toUpperCase(c);
+                inWord = true;
+            }
+            dest[pos++] = (byte) c;
+        }
+        if (pos == start) {
+            System.arraycopy(DEFAULT_ID, 0, dest, pos, DEFAULT_ID.length);
+            pos += DEFAULT_ID.length;
+        }
+        return pos;
+    }
+
+    /**
+     * Escapes part of a text into an array as UTF-8
+     * @param text the text to escape
+     * @param start index of the first character to escape
+     * @param end index after the last character to escape, which must not split a surrogate pair
+     * @param dest array to write to, with room for MAX_BYTES_PER_CHAR bytes per character
+     * @param pos index of the array to start writing at
+     * @return index after the last byte written
+     */
+    private static int escape(String text, int start, int end, byte[] dest, int pos) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                switch (c) {
+                    case '&': pos = ascii("&amp;", dest, pos); break;
+                    case '<': pos = ascii("&lt;", dest, pos); break;
+                    case '>': pos = ascii("&gt;", dest, pos); break;
+                    case '"': pos = ascii("&quot;", dest, pos); break;
+                    case '\t': pos = ascii("&#9;", dest, pos); break;
+                    case '\n': pos = ascii("&#10;", dest, pos); break;
+                    case '\r': pos = ascii("&#13;", dest, pos); break;
+                    default:
+                        if (c >= 0x20) {
+                            dest[pos++] = (byte) c;
+                        }
+                        break;
+                }
+            }
+            else if (c < 0x800) {
+                dest[pos++] = (byte) (0xC0 | (c >> 6));
+                dest[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, text.charAt(++i));
+                dest[pos++] = (byte) (0xF0 | (cp >> 18));
+                dest[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                dest[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                dest[pos++] = (byte) (0x80 | (cp & 0x3F));
+            }
+            else if (Character.isSurrogate(c)) {
+                dest[pos++] = '?';
+            }
+            else {
+                dest[pos++] = (byte) (0xE0 | (c >> 12));
+                dest[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                dest[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * Copies a string made only of ASCII characters into an array
+     * @param s the string to copy
+     * @param dest array to write to
+     * @param pos index of the array to start writing at
+     * @return index after the last byte written
+     */
+    private static int ascii(String s, byte[] dest, int pos) {
+        for (int i = 0; i < s.length(); i++) {
+            dest[pos++] = (byte) s.charAt(i);
+        }
+        return pos;
+    }
+
+    /**
+     * Writes a single ASCII character
+     * @param c the character to write
+     * @throws IOException if the output cannot be written
+     */
+    private void writeByte(int c) throws IOException {
+        if (count == buf.length) {
+            ensureRoom(1);
+        }
+        buf[count++] = (byte) c;
+    }
+
+    /**
+     * Writes all of an array of bytes, such as a previously copied range of output
+     * @param bytes the bytes to write
+     * @throws IOException if the output cannot be written
+     */
+    public void write(byte[] bytes) throws IOException {
+        write(bytes, bytes.length);
+    }
+
+    /**
+     * Writes the start of an array of bytes
+     * @param bytes the bytes to write
+     * @param length number of bytes to write from the start of the array
+     * @throws IOException if the output cannot be written
+     */
+    private void write(byte[] bytes, int length) throws IOException {
+        if (length > buf.length - count) {
+            flushBuffer();
+            if (out != null && count == 0 && length > buf.length) {
+                out.write(bytes, 0, length);
+                flushed += length;
+                return;
+            }
+            ensureRoom(length);
+        }
+        System.arraycopy(bytes, 0, buf, count, length);
+        count += length;
+    }
+
+    /**
+     * Makes sure the buffer has room for a number of bytes, flushing it if it does not, and growing it if the
+     * writer has no stream or retains too much of its output for the bytes to fit
+     * @param n number of bytes about to be written
+     * @throws IOException if the output cannot be written
+     */
+    private void ensureRoom(int n) throws IOException {
+        if (n > buf.length - count) {
+            flushBuffer();
+            if (n > buf.length - count) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + n));
+            }
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the underlying stream, up to the position output is retained from, and moves the
+     * retained bytes to the start of the buffer. Nothing is done for a writer without a stream.
+     * @throws IOException if the output cannot be written
+     */
+    private void flushBuffer() throws IOException {
+        flushBuffer(retained);
+    }
+
+    /**
+     * Writes the buffered bytes to the underlying stream up to a position, and moves the rest to the start of the
+     * buffer. Nothing is done for a writer without a stream.
+     * @param keepFrom position of the first byte to keep in the buffer
+     * @throws IOException if the output cannot be written
+     */
+    private void flushBuffer(long keepFrom) throws IOException {
+        if (out != null) {
+            int n = (int) Math.max(0, Math.min(count, keepFrom - flushed));
+            out.write(buf, 0, n);
+            System.arraycopy(buf, n, buf, 0, count - n);
+            count -= n;
+            flushed += n;
+        }
+    }
+
+    /**
+     * Getter method for the amount of output written
+     * @return the number of bytes written since the writer was created or reset
+     */
+    public long position() {
+        return flushed + count;
+    }
+
+    /**
+     * Keeps the output of a writer with a stream from a position on in the buffer when it is flushed, so that ranges
+     * starting there can still be copied. Moving the position forward lets the bytes before it be flushed.
+     * @param position position of the first byte to keep, no earlier than any given before
+     */
+    public void retainFrom(long position) {
+        retained = position;
+    }
+
+    /**
+     * Copies a range of the output kept in the buffer, which is all of it for a writer without a stream
+     * @param start position of the first byte to copy, no earlier than the position output is retained from
+     * @param end position after the last byte to copy
+     * @return a copy of the range
+     */
+    public byte[] copyRange(long start, long end) {
+        return Arrays.copyOfRange(buf, (int) (start - flushed), (int) (end - flushed));
+    }
+
+    /**
+     * Discards the output kept by a writer without a stream, keeping its buffer for the next document
+     */
+    public void reset() {
+        count = 0;
+        flushed = 0;
+    }
+
+    /**
+     * Writes all buffered output, even output that is retained, and flushes the underlying stream
+     * @throws IOException if the output cannot be written
+     */
+    public void flush() throws IOException {
+        flushBuffer(Long.MAX_VALUE);
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    /**
+     * Writes any buffered output and closes the underlying stream
+     * @throws IOException if the output cannot be written or closed
+     */
+    public void close() throws IOException {
+        try {
+            flushBuffer(Long.MAX_VALUE);
+        }
+        finally {
+            if (out != null) {
+                out.close();
+            }
+        }
+    }
+}
@@ -1,65 +1,293 @@
+import java.util.Arrays;
+
 /**
- * Represents a node of an FXComponentTree
+ * Represents a node of an FXComponentTree. A node is either a container, which holds children, or a control, which
+ * holds text, as decided by its ComponentType, and create makes the right kind. Controls carry no child storage at all.
  */
-public class FXTreeNode {
-    private String text; //text attribute of a node
+public abstract class FXTreeNode {
+    static final int maxChildren=Integer.MAX_VALUE-8; //largest number of children a node can hold
     private ComponentType type; //component type of node
     private FXTreeNode parent; //parent node of the node
-    private FXTreeNode[] children; //children array of the node
-    final int maxChildren=10; //capacity for the children array of the node
+    private int index; //index of the node within its parent's children, kept up to date by the parent
+    private boolean dirty=true; //whether the node or one of its children changed since its FXML was last written
+    private byte[] fragment; //cached FXML of the node and its children, or null
+    private int fragmentDepth; //depth the cached FXML is indented for
+    private long hash; //structural hash of the node and its children, if computed
+    private boolean hashed; //whether the hash is computed and no node of the subtree changed since
 
     /**
      * Creates a new node with a specified type and parent node
      * @param type the component type of the node
      * @param parent the parent node of the node
      */
-    public FXTreeNode(ComponentType type, FXTreeNode parent){
-        if (type==ComponentType.VBox || type==ComponentType.HBox
-        || type==ComponentType.AnchorPane){
-            this.text=null;
-        }
+    private FXTreeNode(ComponentType type, FXTreeNode parent){
         this.type=type;
         this.parent=parent;
-        if (type!=ComponentType.VBox && type!=ComponentType.HBox && type!=ComponentType.AnchorPane){
-            this.children=null;
-        }
-        else{
-            this.children=new FXTreeNode[10];
+    }
+
+    /**
+     * Creates a new node with a specified type and parent node, which is a container or a control depending on the type
+     * @param type the component type of the node
+     * @param parent the parent node of the node
+     * @return the new node, without children or text
+     */
+    public static FXTreeNode create(ComponentType type, FXTreeNode parent){
+        if (type.isContainer()){
+            return new Container(type, parent);
         }
+        return new Control(type, parent);
     }
 
     /**
-     * Finds the number of children a node has
-     * @return the number of children a node has
+     * A node holding text
      */
-    public int numChildren(){
-        int count=0;
-        FXTreeNode[] children=this.children;
-        if (children==null){
+    private static final class Control extends FXTreeNode {
+        private String text; //text attribute of the control
+
+        /**
+         * Creates a control without text
+         * @param type the component type of the control
+         * @param parent the parent node of the control
+         */
+        Control(ComponentType type, FXTreeNode parent){
+            super(type, parent);
+        }
+
+        public int numChildren(){
             return -1;
         }
-        else {
-            for (int i = 0; i < maxChildren; i++) {
-                if (children[i] == null) {
-                    break;
+
+        public FXTreeNode getChild(int index){
+            throw new UnsupportedOperationException("A control has no children");
+        }
+
+        public void insertChild(int index, FXTreeNode node){
+            throw new UnsupportedOperationException("A control has no children");
+        }
+
+        public FXTreeNode removeChild(int index){
+            throw new UnsupportedOperationException("A control has no children");
+        }
+
+        public void setChild(int index, FXTreeNode node){
+            throw new UnsupportedOperationException("A control has no children");
+        }
+
+        public FXTreeNode[] getChildren(){
+            return null;
+        }
+
+        public void setChildren(FXTreeNode[] children){
+            if (children!=null){
+                throw new UnsupportedOperationException("A control has no children");
+            }
+        }
+
+        public void setSource(ChildSource source, int key){
+            throw new UnsupportedOperationException("A control has no children");
+        }
+
+        public String getText(){
+            return text;
+        }
+
+        public void setText(String text){
+            this.text=text;
+            markDirty();
+        }
+
+        long computeHash(){
+            return SubtreeHash.finish(SubtreeHash.start(getType(), text), -1);
+        }
+
+        public String toString(){
+            return getType() + ": " + text;
+        }
+    }
+
+    /**
+     * A node holding children, which may be left to a source until they are first needed
+     */
+    private static final class Container extends FXTreeNode {
+        private static final FXTreeNode[] EMPTY_CHILDREN = new FXTreeNode[0]; //shared by containers without children
+        private FXTreeNode[] children=EMPTY_CHILDREN; //children array of the node, grown on demand
+        private int childCount; //number of children stored at the front of the children array
+        private ChildSource source; //source the children are created from when first needed, or null once they are
+        private int sourceKey; //key of the node within its source
+
+        /**
+         * Creates a container without children
+         * @param type the component type of the container
+         * @param parent the parent node of the container
+         */
+        Container(ComponentType type, FXTreeNode parent){
+            super(type, parent);
+        }
+
+        public int numChildren(){
+            load();
+            return childCount;
+        }
+
+        public FXTreeNode getChild(int index){
+            load();
+            return children[index];
+        }
+
+        public void insertChild(int index, FXTreeNode node){
+            load();
+            ensureCapacity(childCount+1);
+            System.arraycopy(children, index, children, index+1, childCount-index);
+            children[index]=node;
+            childCount++;
+            node.setParent(this);
+            renumber(index);
+            markDirty();
+        }
+
+        public FXTreeNode removeChild(int index){
+            load();
+            FXTreeNode removed=children[index];
+            System.arraycopy(children, index+1, children, index, childCount-index-1);
+            children[--childCount]=null;
+            renumber(index);
+            markDirty();
+            return removed;
+        }
+
+        public void setChild(int index, FXTreeNode node){
+            load();
+            if (index==childCount){
+                insertChild(index, node);
+            }
+            else{
+                children[index]=node;
+                node.setParent(this);
+                node.index=index;
+                markDirty();
+            }
+        }
+
+        /**
+         * Stores the index of each child from a specified one on, after the children there were shifted
+         * @param from index of the first child whose index changed
+         */
+        private void renumber(int from){
+            for (int i=from; i<childCount; i++){
+                children[i].index=i;
+            }
+        }
+
+        /**
+         * Grows the children array so that it can hold at least the specified number of children
+         * @param minCapacity the number of children the array must be able to hold
+         */
+        private void ensureCapacity(int minCapacity){
+            if (minCapacity>children.length){
+                int newCapacity=Math.max(children.length+(children.length>>1), 2);
+                if (newCapacity<minCapacity || newCapacity>maxChildren){
+                    newCapacity=minCapacity;
                 }
-                count++;
+                children=Arrays.copyOf(children, newCapacity);
             }
-            return count;
+        }
+
+        public FXTreeNode[] getChildren(){
+            load();
+            return children;
+        }
+
+        public void setChildren(FXTreeNode[] children){
+            this.source=null;
+            this.children=children==null ? EMPTY_CHILDREN : children;
+            this.childCount=0;
+            while (childCount<this.children.length && this.children[childCount]!=null){
+                this.children[childCount].index=childCount;
+                childCount++;
+            }
+            markDirty();
+        }
+
+        public void setSource(ChildSource source, int key){
+            this.source=source;
+            this.sourceKey=key;
+        }
+
+        public ChildSource getSource(){
+            return source;
+        }
+
+        public int getSourceKey(){
+            return sourceKey;
+        }
+
+        /**
+         * Creates the node's children from its source if they have not been loaded yet
+         */
+        private void load(){
+            if (source!=null){
+                ChildSource from=source;
+                source=null;
+                from.loadChildren(this, sourceKey);
+            }
+        }
+
+        long computeHash(){
+            if (source!=null){
+                return source.hash(sourceKey);
+            }
+            long h=SubtreeHash.start(getType(), null);
+            for (int i=0; i<childCount; i++){
+                h=SubtreeHash.add(h, children[i].hash);
+            }
+            return SubtreeHash.finish(h, childCount);
         }
     }
 
+    /**
+     * Finds the number of children a node has
+     * @return the number of children a node has, or -1 if the node is a control
+     */
+    public abstract int numChildren();
+
+    /**
+     * Getter method for the child at a specified index of the node's children array
+     * @param index index of the child, which must be less than numChildren()
+     * @return the child node at the index
+     * @throws UnsupportedOperationException if the node is a control
+     */
+    public abstract FXTreeNode getChild(int index);
+
+    /**
+     * Inserts a child at a specified index, shifting the children at and after that index one place to the right
+     * @param index index at which to insert the child, which must be between 0 and numChildren()
+     * @param node the child node to insert
+     * @throws UnsupportedOperationException if the node is a control
+     */
+    public abstract void insertChild(int index, FXTreeNode node);
+
+    /**
+     * Removes the child at a specified index, shifting the children after that index one place to the left
+     * @param index index of the child to remove, which must be less than numChildren()
+     * @return the removed child node
+     * @throws UnsupportedOperationException if the node is a control
+     */
+    public abstract FXTreeNode removeChild(int index);
+
+    /**
+     * Sets the child at a specified index, appending it if the index is equal to the number of children
+     * @param index index of the child to set, which must be between 0 and numChildren()
+     * @param node the child node to set
+     * @throws UnsupportedOperationException if the node is a control
+     */
+    public abstract void setChild(int index, FXTreeNode node);
+
     /**
      * Provides a string representation of a node
      * @return a string representation of a node's type and, if applicable, text
      */
     public String toString(){
-        String str=this.getType().toString();
-        if (this.getType()!=ComponentType.HBox && this.getType()!=ComponentType.VBox
-                && this.getType()!=ComponentType.AnchorPane) {
-            str+=": " + this.getText();
-        }
-        return str;
+        return type.toString();
     }
 
     /**
@@ -68,27 +296,15 @@ public class FXTreeNode {
      * @return a string representation of a node's attributes for when the tree it is in is printed
      */
     public String toTreeString(FXComponentTree tree){
-        String str="";
-        if (this==tree.getCursor()){
-            str+="==>";
-        }
-        else{
-            str+="+--";
-        }
-        str+=this.getType().toString();
-        if (this.getType()!=ComponentType.HBox && this.getType()!=ComponentType.VBox
-        && this.getType()!=ComponentType.AnchorPane) {
-            str+=": " + this.getText();
-        }
-        return str;
+        return (this==tree.getCursor() ? "==>" : "+--") + this;
     }
 
     /**
      * Getter method for a node's text attribute
-     * @return a node's text
+     * @return a node's text, or null for containers
      */
     public String getText(){
-        return this.text;
+        return null;
     }
 
     /**
@@ -108,27 +324,41 @@ public class FXTreeNode {
     }
 
     /**
-     * Getter method for a node's children array
-     * @return a node's children array
+     * Getter method for the index of a node within its parent's children, which takes constant time. The index is
+     * only meaningful while the node is still a child of its parent, so callers walking up from a node that may have
+     * been removed check it against parent.getChild(index).
+     * @return the index of the node within its parent's children, or 0 for a node without a parent
      */
-    public FXTreeNode[] getChildren(){
-        return this.children;
+    public int getIndex(){
+        return index;
     }
 
     /**
-     * Setter method for a node's text attribute
-     * @param text the text to change a node's text attribute to
+     * Getter method for a node's children array
+     * @return a node's children array, of which only the first numChildren() elements are in use, or null if the node
+     * is a control
+     */
+    public abstract FXTreeNode[] getChildren();
+
+    /**
+     * Setter method for a node's text attribute, which containers do not have
+     * @param text the text to change a node's text attribute to, ignored for containers
      */
     public void setText(String text){
-        this.text=text;
+        //containers have no text
     }
 
     /**
      * Setter method for a node's component type
-     * @param type a node's component type
+     * @param type a node's component type, which must be a container if and only if the node is one
+     * @throws IllegalArgumentException if the type is of the other kind of node
      */
     public void setType(ComponentType type){
+        if (type.isContainer()!=this.type.isContainer()){
+            throw new IllegalArgumentException("A " + this.type + " cannot become a " + type);
+        }
         this.type=type;
+        markDirty();
     }
 
     /**
@@ -142,8 +372,129 @@ public class FXTreeNode {
     /**
      * Setter method for a node's children array
      * @param children an array to change a node's children array to
+     * @throws UnsupportedOperationException if the node is a control and the array is not null
+     */
+    public abstract void setChildren(FXTreeNode[] children);
+
+    /**
+     * Leaves the node's children to be created by a source the first time they are needed
+     * @param source the source of the node's children
+     * @param key key of the node within the source
+     * @throws UnsupportedOperationException if the node is a control
+     */
+    public abstract void setSource(ChildSource source, int key);
+
+    /**
+     * Getter method for the source the node's children are still to be created from
+     * @return the source, or null if the node's children are loaded or it is a control
+     */
+    public ChildSource getSource(){
+        return null;
+    }
+
+    /**
+     * Getter method for the node's key within the source its children are still to be created from
+     * @return key of the node within its source
+     */
+    public int getSourceKey(){
+        return 0;
+    }
+
+    /**
+     * Finds the structural hash of the node's subtree, which covers the type and text of every node in it and is equal
+     * for two subtrees exactly when they have the same nodes in the same places, apart from a chance of about one in
+     * 2^64. The hash is cached, and an edit anywhere in the subtree drops the cached hashes of the edited node and its
+     * ancestors, so only they are hashed again. The nodes not hashed yet are hashed in post-order by a TreeWalker,
+     * which does not go into hashed subtrees or into unread ones, whose hash comes from their source.
+     * @return the hash of the node's subtree
+     */
+    public long hash(){
+        if (!hashed){
+            TreeWalker walker=new TreeWalker().start(this, 0);
+            while (walker.next()){
+                FXTreeNode node=walker.getNode();
+                if (node.hashed){
+                    walker.skipChildren();
+                }
+                else if (!walker.isEntering() || node.getSource()!=null || !node.type.isContainer()){
+                    node.hash=node.computeHash();
+                    node.hashed=true;
+                    walker.skipChildren();
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Computes the structural hash of the node's subtree from the hashes of its children, which must all be computed
+     * already
+     * @return the hash of the node's subtree
+     */
+    abstract long computeHash();
+
+    /**
+     * Finds whether the node's subtree has the same structure as another node's by comparing their hashes, which
+     * takes constant time once both are hashed
+     * @param other the other node
+     * @return true if the two subtrees have the same nodes in the same places
+     */
+    public boolean sameSubtree(FXTreeNode other){
+        return this==other || hash()==other.hash();
+    }
+
+    /**
+     * Marks the node and its ancestors as changed, dropping their cached FXML and hashes. Since the ancestors of a
+     * changed node are always marked too, each walk up stops at the first node that is already marked.
+     */
+    public void markDirty(){
+        for (FXTreeNode node=this; node!=null && !node.dirty; node=node.parent){
+            node.dirty=true;
+            node.fragment=null;
+        }
+        for (FXTreeNode node=this; node!=null && node.hashed; node=node.parent){
+            node.hashed=false;
+        }
+    }
+
+    /**
+     * Finds whether the node or one of its children changed since its FXML was last written
+     * @return true if the node is marked as changed
+     */
+    public boolean isDirty(){
+        return dirty;
+    }
+
+    /**
+     * Marks the node as unchanged once its FXML has been written
+     */
+    public void markClean(){
+        dirty=false;
+    }
+
+    /**
+     * Getter method for the node's cached FXML
+     * @return the cached FXML of the node and its children, or null if there is none
+     */
+    public byte[] getFragment(){
+        return fragment;
+    }
+
+    /**
+     * Getter method for the depth the node's cached FXML is indented for
+     * @return the depth of the node when its FXML was cached
+     */
+    public int getFragmentDepth(){
+        return fragmentDepth;
+    }
+
+    /**
+     * Setter method for the node's cached FXML
+     * @param fragment the FXML of the node and its children, or null to drop the cache
+     * @param depth the depth the FXML is indented for
      */
-    public void setChildren(FXTreeNode[] children){
-        this.children=children;
+    public void setFragment(byte[] fragment, int depth){
+        this.fragment=fragment;
+        this.fragmentDepth=depth;
     }
 }
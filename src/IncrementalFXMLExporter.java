@@ -0,0 +1,154 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Exports an FXComponentTree as FXML, reusing the output of earlier exports for the parts of the tree that have not
+ * changed since. After an export, each largest subtree whose FXML is at most FRAGMENT_LIMIT bytes keeps a copy of
+ * those bytes, so every byte of the document is cached once. Edits mark the changed node and its ancestors dirty, and
+ * the next export only serializes those nodes, copying the cached fragments of everything else. The document is
+ * streamed to its destination as it is written: the writer only retains the output of the open nodes that may still
+ * be small enough to cache, and a subtree's fragment is copied out as soon as its parent is known to be too large.
+ */
+public class IncrementalFXMLExporter implements TreeWalker.Visitor<IOException> {
+    private static final int FRAGMENT_LIMIT = 8192; //largest subtree FXML, in bytes, cached as one fragment
+
+    private final FXComponentTree tree; //tree being exported
+    private FXMLWriter writer; //writer of the export in progress
+    private long[] offsets = new long[64]; //start and end of each finished child of the open nodes, and their starts
+    private int top; //number of offsets in use
+    private int[] bases = new int[64]; //size of the offset stack when the children of each open node began, by depth
+    private int firstSmall; //depth of the first open node below the root whose output is still small enough to cache
+    private final TreeWalker walker = new TreeWalker(); //walker reused between exports
+
+    /**
+     * Creates an exporter for a tree
+     * @param tree the tree to export
+     */
+    public IncrementalFXMLExporter(FXComponentTree tree) {
+        this.tree = tree;
+    }
+
+    /**
+     * Writes the whole tree as an FXML document
+     * @param out stream to write the document to
+     * @throws IOException if the document cannot be written
+     */
+    public void export(OutputStream out) throws IOException {
+        writer = new FXMLWriter(out, tree.getTextPool());
+        try {
+            writer.writeHeader();
+            walker.walk(tree.getRoot(), 0, this);
+            writer.writeFooter();
+            writer.flush();
+        }
+        finally {
+            writer = null;
+            top = 0;
+        }
+    }
+
+    /**
+     * Starts writing a node, copying its cached fragment instead if it is still valid. The start of every node below
+     * the root is pushed onto the offset stack, followed by its end once it is written.
+     * @param node the node entered
+     * @param depth depth of the node within the tree
+     * @return false if the fragment was copied, so that the node's children are skipped
+     * @throws IOException if the output cannot be written
+     */
+    public boolean enter(FXTreeNode node, int depth) throws IOException {
+        if (depth == 0) {
+            bases[0] = top;
+            firstSmall = 1;
+            writer.retainFrom(writer.position());
+            return true;
+        }
+        push(writer.position());
+        byte[] cached = node.getFragment();
+        if (cached != null && !node.isDirty() && node.getFragmentDepth() == depth) {
+            writer.write(cached);
+            push(writer.position());
+            settle(depth - 1);
+            return false;
+        }
+        node.setFragment(null, 0);
+        if (depth == bases.length) {
+            bases = Arrays.copyOf(bases, depth * 2);
+        }
+        writer.writeStart(node.getType(), node.getText(), depth);
+        bases[depth] = top;
+        settle(depth);
+        return true;
+    }
+
+    /**
+     * Finishes writing a node once its children are written. A node that is still small drops the fragments of its
+     * children, since it is cached whole, and copies its own fragment if its parent is too large to be cached.
+     * @param node the node exited
+     * @param depth depth of the node within the tree
+     * @throws IOException if the output cannot be written
+     */
+    public void exit(FXTreeNode node, int depth) throws IOException {
+        if (depth == 0) {
+            node.markClean();
+            top = bases[0];
+            return;
+        }
+        writer.writeEnd(node.getType(), depth);
+        node.markClean();
+        settle(depth);
+        if (firstSmall <= depth) {
+            for (int i = 0; i < node.numChildren(); i++) {
+                node.getChild(i).setFragment(null, 0);
+            }
+        }
+        top = bases[depth];
+        push(writer.position());
+        if (firstSmall == depth) {
+            node.setFragment(writer.copyRange(offsets[top - 2], offsets[top - 1]), depth);
+        }
+        firstSmall = Math.min(firstSmall, depth);
+        settle(depth - 1);
+    }
+
+    /**
+     * Passes over the open nodes whose output has grown beyond FRAGMENT_LIMIT, copying the fragments of their small
+     * finished children, and lets the writer flush everything before the first open node that may still be cached
+     * @param depth depth of the deepest open node
+     */
+    private void settle(int depth) {
+        while (firstSmall <= depth && writer.position() - offsets[bases[firstSmall] - 1] > FRAGMENT_LIMIT) {
+            int end = firstSmall < depth ? bases[firstSmall + 1] - 1 : top;
+            cacheChildren(walker.getNode(firstSmall), firstSmall + 1, bases[firstSmall], end);
+            firstSmall++;
+        }
+        writer.retainFrom(firstSmall <= depth ? offsets[bases[firstSmall] - 1] : writer.position());
+    }
+
+    /**
+     * Copies the fragment of each freshly written child of a node that is small enough to be cached
+     * @param node the node whose children were written
+     * @param depth depth of the children within the tree
+     * @param from index in the offset stack of the start of the first child
+     * @param to index in the offset stack after the end of the last finished child
+     */
+    private void cacheChildren(FXTreeNode node, int depth, int from, int to) {
+        for (int i = 0, k = from; k + 1 < to; i++, k += 2) {
+            FXTreeNode child = node.getChild(i);
+            if (child.getFragment() == null && offsets[k + 1] - offsets[k] <= FRAGMENT_LIMIT) {
+                child.setFragment(writer.copyRange(offsets[k], offsets[k + 1]), depth);
+            }
+        }
+    }
+
+    /**
+     * Pushes an offset onto the offset stack
+     * @param offset the offset to push
+     */
+    private void push(long offset) {
+        if (top == offsets.length) {
+            offsets = Arrays.copyOf(offsets, top * 2);
+        }
+        offsets[top++] = offset;
+    }
+}
@@ -0,0 +1,502 @@
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * An index of the node lines of a tree text file, which is memory-mapped instead of read. Opening the file scans it
+ * once, checking every line as TreeFileReader does and recording where each node's line starts and where its subtree
+ * ends, which costs 12 bytes per node. Nodes are only created when their parent's children are first needed, by
+ * reading just the lines of those children from the mapped file, so a huge file opens quickly and only the parts of it
+ * that are visited take up memory. The file must not be changed by other programs while a tree loaded from it is open.
+ */
+public class LazyTreeFile implements ChildSource {
+    private static final int CHUNK_BITS = 30; //log2 of the size of each mapped region
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1; //offset within a mapped region
+    private static final ComponentType[] TYPES = ComponentType.values(); //component types by ordinal
+    private static final int WINDOW_SIZE = 1 << 16; //number of bytes scanned at a time while indexing
+    private static final int MAX_NODES = Integer.MAX_VALUE - 8; //most nodes a file can hold
+
+    private final Path path; //the mapped file
+    private final TextPool pool; //pool the texts of the loaded nodes are taken from
+    private final long size; //size of the file
+    private final MappedByteBuffer[] chunks; //mapped regions of the file, each 1 GiB except the last
+    private long[] starts; //offset of each node's line, in the order of the file
+    private int[] ends; //index of the first node after each node's subtree
+    private int count; //number of nodes, not counting the root
+    private int maxDepth; //depth of the deepest node
+
+    /**
+     * Maps a tree text file and indexes its nodes
+     * @param filename name of the file
+     * @param pool text pool to take the texts of the loaded nodes from
+     * @throws FileNotFoundException if a file with the specified name is not found
+     * @throws IOException if the file cannot be read
+     * @throws MalformedTreeFileException if a line does not describe a valid node of the tree
+     */
+    public LazyTreeFile(String filename, TextPool pool) throws IOException, MalformedTreeFileException {
+        path = Paths.get(filename);
+        this.pool = pool;
+        if (!Files.isRegularFile(path)) {
+            throw new FileNotFoundException(filename);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            size = channel.size();
+            chunks = new MappedByteBuffer[(int) ((size + CHUNK_MASK) >>> CHUNK_BITS)];
+            for (int i = 0; i < chunks.length; i++) {
+                long offset = (long) i << CHUNK_BITS;
+                long length = Math.min(size - offset, 1L << CHUNK_BITS);
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+            }
+        }
+        int expected = (int) Math.min(Math.max(size / 32, 16), MAX_NODES); //nodes expected at 32 bytes a line
+        starts = new long[expected];
+        ends = new int[expected];
+        index();
+    }
+
+    /**
+     * Getter method for the number of nodes in the file
+     * @return the number of nodes, not counting the root
+     */
+    public int numNodes() {
+        return count;
+    }
+
+    /**
+     * Counts the nodes below a node from the index, without reading them
+     * @param line index of the node's line, or -1 for the root
+     * @return the number of nodes in the node's subtree, not counting the node itself
+     */
+    public int countNodes(int line) {
+        return (line < 0 ? count : ends[line]) - line - 1;
+    }
+
+    /**
+     * Getter method for the depth of the deepest node in the file
+     * @return the greatest depth of a node, where the root is at depth 0
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Getter method for the size of the file
+     * @return the number of bytes in the file
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Finds whether a file name refers to the mapped file
+     * @param filename name of a file
+     * @return true if it is the mapped file
+     */
+    public boolean isFile(String filename) {
+        try {
+            return Files.isSameFile(path, Paths.get(filename));
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates the children of a node from the lines of the file. Children that are containers with children of their
+     * own are left unloaded, to be loaded in turn when they are first needed.
+     * @param parent the node, whose children must not have been created yet
+     * @param line index of the node's line, or -1 for the root
+     */
+    public void loadChildren(FXTreeNode parent, int line) {
+        int end = line < 0 ? count : ends[line];
+        int n = 0;
+        for (int i = line + 1; i < end; i = ends[i]) {
+            n++;
+        }
+        FXTreeNode[] children = new FXTreeNode[n];
+        n = 0;
+        for (int i = line + 1; i < end; i = ends[i]) {
+            long pos = typeStart(starts[i]);
+            long typeEnd = tokenEnd(pos);
+            ComponentType type = TYPES[typeOf(pos, typeEnd)];
+            FXTreeNode child = FXTreeNode.create(type, parent);
+            if (!child.getType().isContainer()) {
+                child.setText(pool.canonical(textOf(typeEnd)));
+            }
+            else if (ends[i] > i + 1) {
+                child.setSource(this, i);
+            }
+            children[n++] = child;
+        }
+        parent.setChildren(children);
+    }
+
+    /**
+     * Finds the structural hash of a node's subtree by reading its lines in order, without creating its nodes. The
+     * containers whose lines are still being read are kept on an explicit stack along with their hashes so far.
+     * @param line index of the node's line, or -1 for the root
+     * @return the hash of the node's subtree
+     */
+    public long hash(int line) {
+        ComponentType type = line < 0 ? ComponentType.AnchorPane : TYPES[typeOf(typeStart(starts[line]),
+                tokenEnd(typeStart(starts[line])))];
+        long[] hashes = new long[16]; //hash so far of each open container, by level
+        int[] counts = new int[16]; //number of children added to the hash of each open container, by level
+        int[] stops = new int[16]; //index of the first line after the subtree of each open container, by level
+        int top = 0;
+        hashes[0] = SubtreeHash.start(type, null);
+        stops[0] = line < 0 ? count : ends[line];
+        int i = line + 1;
+        while (true) {
+            while (i == stops[top]) {
+                long h = SubtreeHash.finish(hashes[top], counts[top]);
+                if (top == 0) {
+                    return h;
+                }
+                top--;
+                hashes[top] = SubtreeHash.add(hashes[top], h);
+                counts[top]++;
+            }
+            long pos = typeStart(starts[i]);
+            long typeEnd = tokenEnd(pos);
+            ComponentType childType = TYPES[typeOf(pos, typeEnd)];
+            if (childType.isContainer()) {
+                top++;
+                if (top == hashes.length) {
+                    hashes = Arrays.copyOf(hashes, top * 2);
+                    counts = Arrays.copyOf(counts, top * 2);
+                    stops = Arrays.copyOf(stops, top * 2);
+                }
+                hashes[top] = SubtreeHash.start(childType, null);
+                counts[top] = 0;
+                stops[top] = ends[i];
+            }
+            else {
+                hashes[top] = SubtreeHash.add(hashes[top],
+                        SubtreeHash.finish(SubtreeHash.start(childType, textOf(typeEnd)), -1));
+                counts[top]++;
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Provides an immutable node whose children are read from the file when they are first needed
+     * @param type the component type of the node
+     * @param line index of the node's line, or -1 for the root
+     * @return the immutable node
+     */
+    public PersistentTree.Node toNode(ComponentType type, int line) {
+        return PersistentTree.lazy(type, null, this, line);
+    }
+
+    /**
+     * Creates the immutable children of a node from the lines of the file, leaving the children of containers to be
+     * read when they are first needed
+     * @param line index of the node's line, or -1 for the root
+     * @return the children of the node
+     */
+    public PersistentList<PersistentTree.Node> persistentChildren(int line) {
+        int end = line < 0 ? count : ends[line];
+        int n = 0;
+        for (int i = line + 1; i < end; i = ends[i]) {
+            n++;
+        }
+        PersistentTree.Node[] children = new PersistentTree.Node[n];
+        n = 0;
+        for (int i = line + 1; i < end; i = ends[i]) {
+            long pos = typeStart(starts[i]);
+            long typeEnd = tokenEnd(pos);
+            ComponentType type = TYPES[typeOf(pos, typeEnd)];
+            children[n++] = PersistentTree.lazy(type, textOf(typeEnd), ends[i] > i + 1 ? this : null, i);
+        }
+        return PersistentList.of(children);
+    }
+
+    /**
+     * Scans the whole file once, checking each line and recording the start of each node's line and the end of its
+     * subtree. The file is copied from the mapping into a small window at a time, so the scan runs over a plain array.
+     * @throws MalformedTreeFileException if a line does not describe a valid next node of the tree
+     */
+    private void index() throws MalformedTreeFileException {
+        byte[] window = new byte[WINDOW_SIZE]; //bytes of the file being scanned
+        long windowStart = 0; //offset of the window's first byte in the file
+        int windowLength = 0; //number of bytes in the window
+        int[] segments = new int[16]; //indices parsed from the position of the current line
+        int[] open = new int[16]; //index of each open ancestor, by depth, with -1 for the root
+        int[] openPath = new int[16]; //index of each open ancestor within its parent, by depth
+        int[] openChildren = new int[16]; //number of children found so far for each open ancestor, by depth
+        boolean[] openContainer = new boolean[16]; //whether each open ancestor can have children, by depth
+        open[0] = -1;
+        openContainer[0] = true;
+        int openDepth = 0;
+        boolean rootSeen = false;
+        int lineNumber = 0;
+        long next = 0;
+        while (next < size) {
+            lineNumber++;
+            int start = (int) (next - windowStart);
+            int end = start;
+            while (true) {
+                while (end < windowLength && window[end] != '\n' && window[end] != '\r') {
+                    end++;
+                }
+                if (end + 1 < windowLength || windowStart + windowLength == size) {
+                    break;
+                }
+                if (start == 0 && windowLength == window.length) {
+                    window = new byte[window.length * 2]; //the line does not fit in the window
+                }
+                windowStart = next;
+                windowLength = (int) Math.min(window.length, size - windowStart);
+                read(windowStart, window, windowLength);
+                start = 0;
+                end = 0;
+            }
+            boolean crlf = end + 1 < windowLength && window[end] == '\r' && window[end + 1] == '\n';
+            next = windowStart + Math.min(end + (crlf ? 2 : 1), windowLength);
+            if (end == start) {
+                continue;
+            }
+            int pos = start;
+            int n = 0;
+            while (true) {
+                int value = 0;
+                int digits = pos;
+                while (pos < end && window[pos] >= '0' && window[pos] <= '9') {
+                    int digit = window[pos] - '0';
+                    if (value > (FXTreeNode.maxChildren - digit) / 10) {
+                        throw new MalformedTreeFileException(lineNumber, "index too large in position");
+                    }
+                    value = value * 10 + digit;
+                    pos++;
+                }
+                if (pos == digits) {
+                    throw new MalformedTreeFileException(lineNumber, "invalid position");
+                }
+                if (n == segments.length) {
+                    segments = Arrays.copyOf(segments, n * 2);
+                }
+                segments[n++] = value;
+                if (pos < end && window[pos] == '-') {
+                    pos++;
+                }
+                else {
+                    break;
+                }
+            }
+            if (pos == end || window[pos] != ' ') {
+                throw new MalformedTreeFileException(lineNumber, "expected a space after the position");
+            }
+            int typeEnd = pos + 1;
+            while (typeEnd < end && window[typeEnd] != ' ') {
+                typeEnd++;
+            }
+            int type = typeOf(window, pos + 1, typeEnd);
+            if (type < 0) {
+                throw new MalformedTreeFileException(lineNumber, "unknown component type '"
+                        + new String(window, pos + 1, typeEnd - pos - 1, StandardCharsets.UTF_8) + "'");
+            }
+
+            if (segments[0] != 0) {
+                throw new MalformedTreeFileException(lineNumber, "position must start at the root 0");
+            }
+            int depth = n - 1;
+            if (depth == 0) {
+                if (rootSeen) {
+                    throw new MalformedTreeFileException(lineNumber, "root is listed more than once");
+                }
+                if (TYPES[type] != ComponentType.AnchorPane) {
+                    throw new MalformedTreeFileException(lineNumber, "root must be an AnchorPane");
+                }
+                rootSeen = true;
+                continue;
+            }
+            rootSeen = true;
+            if (depth > openDepth + 1) {
+                throw new MalformedTreeFileException(lineNumber, "parent of this node has not been listed");
+            }
+            for (int d = 1; d < depth; d++) {
+                if (segments[d] != openPath[d]) {
+                    throw new MalformedTreeFileException(lineNumber, "parent of this node has not been listed");
+                }
+            }
+            int parentDepth = depth - 1;
+            if (!openContainer[parentDepth]) {
+                throw new MalformedTreeFileException(lineNumber, "parent of this node is a control");
+            }
+            if (segments[depth] != openChildren[parentDepth]) {
+                throw new MalformedTreeFileException(lineNumber, "expected child index "
+                        + openChildren[parentDepth] + " but found " + segments[depth]);
+            }
+            for (int d = openDepth; d >= depth; d--) {
+                ends[open[d]] = count; //the subtrees of the open nodes at this depth and below end here
+            }
+            if (depth == open.length) {
+                int capacity = depth * 2;
+                open = Arrays.copyOf(open, capacity);
+                openPath = Arrays.copyOf(openPath, capacity);
+                openChildren = Arrays.copyOf(openChildren, capacity);
+                openContainer = Arrays.copyOf(openContainer, capacity);
+            }
+            if (count == starts.length) {
+                if (count == MAX_NODES) {
+                    throw new MalformedTreeFileException(lineNumber, "too many nodes");
+                }
+                int capacity = (int) Math.min(count + (long) (count >> 1), MAX_NODES);
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+            }
+            starts[count] = windowStart + start;
+            openChildren[parentDepth]++;
+            open[depth] = count;
+            openPath[depth] = segments[depth];
+            openChildren[depth] = 0;
+            openContainer[depth] = TYPES[type].isContainer();
+            openDepth = depth;
+            maxDepth = Math.max(maxDepth, depth);
+            count++;
+        }
+        for (int d = openDepth; d >= 1; d--) {
+            ends[open[d]] = count;
+        }
+    }
+
+    /**
+     * Copies part of the file out of its mapped regions
+     * @param pos offset of the first byte to copy
+     * @param dst array to copy the bytes to, from its start
+     * @param length number of bytes to copy
+     */
+    private void read(long pos, byte[] dst, int length) {
+        int copied = 0;
+        while (copied < length) {
+            MappedByteBuffer chunk = chunks[(int) (pos >>> CHUNK_BITS)];
+            int offset = (int) (pos & CHUNK_MASK);
+            int n = Math.min(length - copied, chunk.limit() - offset);
+            chunk.get(offset, dst, copied, n);
+            copied += n;
+            pos += n;
+        }
+    }
+
+    /**
+     * Reads a byte of the file
+     * @param pos offset of the byte
+     * @return the byte at the offset
+     */
+    private byte byteAt(long pos) {
+        return chunks[(int) (pos >>> CHUNK_BITS)].get((int) (pos & CHUNK_MASK));
+    }
+
+    /**
+     * Finds the end of a line, which like BufferedReader.readLine ends at a newline, a carriage return or both
+     * @param pos offset within the line
+     * @return offset of the line's terminator, or the size of the file if it is the last line and has none
+     */
+    private long lineEnd(long pos) {
+        while (pos < size) {
+            byte b = byteAt(pos);
+            if (b == '\n' || b == '\r') {
+                break;
+            }
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * Finds the end of a space-separated token
+     * @param pos offset of the token's first byte
+     * @return offset of the space, carriage return or newline after the token, or the size of the file
+     */
+    private long tokenEnd(long pos) {
+        while (pos < size) {
+            byte b = byteAt(pos);
+            if (b == ' ' || b == '\n' || b == '\r') {
+                break;
+            }
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * Finds the start of the component type of a node's line
+     * @param lineStart offset of the line, which has already been checked
+     * @return offset of the component type
+     */
+    private long typeStart(long lineStart) {
+        return tokenEnd(lineStart) + 1;
+    }
+
+    /**
+     * Finds the component type named by a token
+     * @param start offset of the token
+     * @param end offset after the token
+     * @return the ordinal of the component type, or -1 if no component type has that name
+     */
+    private int typeOf(long start, long end) {
+        for (int t = 0; t < TYPES.length; t++) {
+            byte[] name = TYPES[t].getNameBytes();
+            if (name.length == end - start) {
+                int i = 0;
+                while (i < name.length && byteAt(start + i) == name[i]) {
+                    i++;
+                }
+                if (i == name.length) {
+                    return t;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the component type named by a token in an array
+     * @param bytes the array
+     * @param start index of the token
+     * @param end index after the token
+     * @return the ordinal of the component type, or -1 if no component type has that name
+     */
+    private static int typeOf(byte[] bytes, int start, int end) {
+        for (int t = 0; t < TYPES.length; t++) {
+            byte[] name = TYPES[t].getNameBytes();
+            if (Arrays.equals(name, 0, name.length, bytes, start, end)) {
+                return t;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads the text of a node's line
+     * @param typeEnd offset after the component type of the line
+     * @return the text after the space following the component type, or an empty String if there is none
+     */
+    private String textOf(long typeEnd) {
+        if (typeEnd == size || byteAt(typeEnd) != ' ') {
+            return "";
+        }
+        return decode(typeEnd + 1, lineEnd(typeEnd));
+    }
+
+    /**
+     * Decodes part of the file as UTF-8
+     * @param start offset of the first byte
+     * @param end offset after the last byte
+     * @return the decoded text
+     */
+    private String decode(long start, long end) {
+        byte[] bytes = new byte[(int) (end - start)];
+        read(start, bytes, bytes.length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,25 @@
+/**
+ * Exception to be thrown if a line of a tree text file, or part of another tree file, cannot be turned into a node of
+ * an FXComponentTree
+ */
+public class MalformedTreeFileException extends Exception {
+    private final int lineNumber; //line of the file at which the problem was found
+
+    public MalformedTreeFileException(int lineNumber, String message) {
+        super("Line " + lineNumber + ": " + message);
+        this.lineNumber = lineNumber;
+    }
+
+    public MalformedTreeFileException(String message) {
+        super(message);
+        this.lineNumber = 0;
+    }
+
+    /**
+     * Getter method for the line at which the problem was found
+     * @return the 1-based line number of the malformed line, or 0 for files that are not made of lines
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+}
@@ -0,0 +1,69 @@
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * Gives the nodes of a tree ids that stay the same while the tree is edited, so that a node can be found again in
+ * constant time after edits have shifted its position among its siblings. A node is only given an id the first time
+ * one is asked for, so the nodes never named cost nothing. The ids of a subtree are dropped when it is removed from
+ * the tree, and an id is never given out twice.
+ */
+public class NodeIds {
+    private final HashMap<Integer, FXTreeNode> nodes = new HashMap<>(); //node of each id still in the tree
+    private final IdentityHashMap<FXTreeNode, Integer> ids = new IdentityHashMap<>(); //id of each node given one
+    private final TreeWalker walker = new TreeWalker(); //walker reused for every subtree removed
+    private int nextId = 1; //id given to the next node
+
+    /**
+     * Finds the id of a node, giving it the next id if it has none yet
+     * @param node a node of the tree
+     * @return the id of the node
+     */
+    public int idOf(FXTreeNode node) {
+        Integer id = ids.get(node);
+        if (id == null) {
+            id = nextId++;
+            ids.put(node, id);
+            nodes.put(id, node);
+        }
+        return id;
+    }
+
+    /**
+     * Finds the node given an id
+     * @param id the id
+     * @return the node, or null if no node of the tree has the id
+     */
+    public FXTreeNode find(int id) {
+        return nodes.get(id);
+    }
+
+    /**
+     * Drops the ids of a subtree removed from the tree. The subtrees below it that were never read hold no node with
+     * an id, and are not read.
+     * @param node root of the subtree removed
+     */
+    public void removed(FXTreeNode node) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        walker.start(node, 0);
+        while (walker.nextPreOrder()) {
+            FXTreeNode curr = walker.getNode();
+            Integer id = ids.remove(curr);
+            if (id != null) {
+                nodes.remove(id);
+            }
+            if (curr.getSource() != null) {
+                walker.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * Drops every id, once the tree's nodes are replaced. The ids given out before are not given out again.
+     */
+    public void clear() {
+        nodes.clear();
+        ids.clear();
+    }
+}
@@ -0,0 +1,485 @@
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes a large FXComponentTree as FXML or in the text format of writeToFile using all the threads of a fork/join
+ * pool. A subtree is handed to another task whenever the pool runs short of queued work, and each task writes into its
+ * own buffer at the right indentation, handing out a chunk whenever the buffer fills. The calling thread writes the
+ * chunks out in document order as soon as they are ready, so the output is streamed while the tasks run. Once
+ * MAX_QUEUED bytes are waiting to be written, no more subtrees are forked and every task but the one being written out
+ * waits. The output is the same, byte for byte, as that of exportToFXML and writeToFile. With a single-threaded pool
+ * the tree is written in the calling thread without any forking.
+ */
+public class ParallelExporter {
+    private static final int MAX_SURPLUS = 2; //queued tasks beyond which a worker keeps subtrees to itself
+    private static final int BUFFER_SIZE = 1 << 16; //size of the output buffer
+    private static final int TASK_BUFFER_SIZE = 1 << 12; //initial size of the buffer of each task
+    private static final int CHUNK_SIZE = 1 << 16; //amount a task buffers before handing it out as a chunk
+    private static final long MAX_QUEUED = 1 << 24; //bytes of chunks waiting to be written that hold back the tasks
+    private static final Object END = new Object(); //part marking the end of a task's output
+
+    private final ForkJoinPool pool; //pool the subtrees are written on
+
+    /**
+     * Creates an exporter using the common fork/join pool
+     */
+    public ParallelExporter() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates an exporter using a given fork/join pool
+     * @param pool the pool to write subtrees on
+     */
+    public ParallelExporter(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Creates a valid FXML file of a tree that can be opened in SceneBuilder
+     * @param tree the tree to export
+     * @param filename name of FXML file to export to
+     * @throws IOException if the file cannot be written
+     */
+    public void exportToFXML(FXComponentTree tree, String filename) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(filename), BUFFER_SIZE)) {
+            exportToFXML(tree, out);
+        }
+    }
+
+    /**
+     * Writes a tree as an FXML document
+     * @param tree the tree to export
+     * @param out stream to write the document to
+     * @throws IOException if the document cannot be written
+     */
+    public void exportToFXML(FXComponentTree tree, OutputStream out) throws IOException {
+        write(new FXMLTask(tree.getRoot(), 0, pool.getParallelism() > 1, new Backlog()), out);
+    }
+
+    /**
+     * Generates a text file that reflects the structure of a tree, as writeToFile does
+     * @param tree the tree to write
+     * @param filename name of the file to write the tree in
+     * @throws IOException if the file cannot be written
+     */
+    public void writeToFile(FXComponentTree tree, String filename) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(filename), BUFFER_SIZE)) {
+            writeToFile(tree, out);
+        }
+    }
+
+    /**
+     * Writes a tree in the text format of writeToFile
+     * @param tree the tree to write
+     * @param out stream to write the text to
+     * @throws IOException if the text cannot be written
+     */
+    public void writeToFile(FXComponentTree tree, OutputStream out) throws IOException {
+        write(new TextTask(tree.getRoot(), 0, pool.getParallelism() > 1, new Backlog(), tree.getCursor()), out);
+    }
+
+    /**
+     * Runs a task on the pool and writes its output as it is produced. Without forking, the task runs in the calling
+     * thread and writes its chunks straight to the stream. Tasks are never joined, since a deep tree would make a
+     * chain of joins as deep as itself; the output of every task ends with END whether it succeeded or not, and the
+     * first failure is rethrown once all of the output was written.
+     * @param task the task writing the whole tree
+     * @param out stream to write the output to
+     * @throws IOException if the output cannot be written
+     */
+    private void write(SubtreeTask task, OutputStream out) throws IOException {
+        if (task.forking) {
+            pool.execute(task);
+            task.writeTo(out);
+        }
+        else {
+            task.direct = out;
+            task.compute();
+        }
+        Throwable failure = task.backlog.failure.get();
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        else if (failure != null) {
+            throw (Error) failure;
+        }
+        out.flush();
+    }
+
+    /**
+     * The state shared by the tasks writing one tree: the first failure of any of them, and the chunks waiting to be
+     * written, which hold back every task but the one being written out once there are more than MAX_QUEUED bytes
+     */
+    private static final class Backlog {
+        private final AtomicReference<Throwable> failure = new AtomicReference<>(); //first failure of any task
+        private long queued; //bytes of chunks handed out and not yet written, guarded by this backlog
+        private SubtreeTask head; //task whose chunks are being written, guarded by this backlog
+
+        /**
+         * Records a chunk handed out by a task, then waits while too much is queued, unless the task is the one being
+         * written out. The pool is told the thread is blocked, so that it can start another thread to run the task
+         * being written out if that task is still queued.
+         * @param task the task handing out the chunk
+         * @param n size of the chunk
+         * @throws InterruptedIOException if the thread is interrupted while waiting
+         */
+        void add(SubtreeTask task, int n) throws InterruptedIOException {
+            ForkJoinPool.ManagedBlocker blocker = new ForkJoinPool.ManagedBlocker() {
+                public boolean block() throws InterruptedException {
+                    synchronized (Backlog.this) {
+                        while (!isReleasable()) {
+                            Backlog.this.wait();
+                        }
+                    }
+                    return true;
+                }
+
+                public boolean isReleasable() {
+                    synchronized (Backlog.this) {
+                        return queued <= MAX_QUEUED || head == task;
+                    }
+                }
+            };
+            synchronized (this) {
+                queued += n;
+            }
+            try {
+                ForkJoinPool.managedBlock(blocker);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Export interrupted");
+            }
+        }
+
+        /**
+         * Records that a chunk was written, letting the tasks go on once no more than MAX_QUEUED bytes are queued
+         * @param n size of the chunk
+         */
+        synchronized void written(int n) {
+            queued -= n;
+            if (queued <= MAX_QUEUED) {
+                notifyAll();
+            }
+        }
+
+        /**
+         * Records which task is being written out, letting it go on if it was waiting
+         * @param task the task whose chunks are written next
+         */
+        synchronized void setHead(SubtreeTask task) {
+            head = task;
+            notifyAll();
+        }
+
+        /**
+         * Finds whether too much is queued for more subtrees to be forked
+         * @return true if more than MAX_QUEUED bytes are waiting to be written
+         */
+        synchronized boolean isFull() {
+            return queued > MAX_QUEUED;
+        }
+    }
+
+    /**
+     * Writes a subtree into buffers, handing its larger children to other tasks while the pool is short of work. The
+     * output is handed out as a queue of chunks and forked tasks in document order, ended by END.
+     */
+    private abstract static class SubtreeTask extends RecursiveAction implements TreeWalker.Visitor<IOException> {
+        private static final long serialVersionUID = 1L;
+
+        private final FXTreeNode node; //root of the subtree
+        private final int depth; //depth of the root within the tree
+        final boolean forking; //whether subtrees may be handed to other tasks, false for a single-threaded pool
+        private final LinkedBlockingQueue<Object> parts = new LinkedBlockingQueue<>(); //chunks and forked tasks
+        final Backlog backlog; //state shared by the tasks writing the tree
+        OutputStream direct; //stream chunks are written to instead of being queued, set for a task that does not fork
+
+        /**
+         * Creates a task
+         * @param node root of the subtree to write
+         * @param depth depth of the root within the tree
+         * @param forking whether subtrees may be handed to other tasks
+         * @param backlog state shared by the tasks writing the tree
+         */
+        SubtreeTask(FXTreeNode node, int depth, boolean forking, Backlog backlog) {
+            this.node = node;
+            this.depth = depth;
+            this.forking = forking;
+            this.backlog = backlog;
+        }
+
+        /**
+         * Writes the subtree, recording any failure and marking the end of the output even if it fails. The buffer is
+         * dropped once the output is handed out, as the task may be kept until all of its output is written.
+         */
+        protected void compute() {
+            try {
+                new TreeWalker().walk(node, depth, this);
+                cut();
+            }
+            catch (Throwable e) {
+                backlog.failure.compareAndSet(null, e);
+            }
+            finally {
+                release();
+                parts.add(END);
+            }
+        }
+
+        /**
+         * Starts writing a node, forking it to another task instead if it is a container below the root of the
+         * subtree and the pool is short of work
+         * @param node the node entered
+         * @param depth depth of the node within the tree
+         * @return false if the node was forked, so that its children are skipped
+         * @throws IOException if the node cannot be written
+         */
+        public boolean enter(FXTreeNode node, int depth) throws IOException {
+            if (depth > this.depth && forking && node.numChildren() > 0 && getSurplusQueuedTaskCount() < MAX_SURPLUS
+                    && !backlog.isFull()) {
+                cut();
+                SubtreeTask task = subtask(node, depth);
+                task.fork();
+                parts.add(task);
+                return false;
+            }
+            writeStart(node, depth);
+            if (buffered() >= CHUNK_SIZE) {
+                cut();
+            }
+            return true;
+        }
+
+        /**
+         * Finishes writing a node once its children are written
+         * @param node the node exited
+         * @param depth depth of the node within the tree
+         * @throws IOException if the node cannot be written
+         */
+        public void exit(FXTreeNode node, int depth) throws IOException {
+            writeEnd(node, depth);
+            if (buffered() >= CHUNK_SIZE) {
+                cut();
+            }
+        }
+
+        /**
+         * Ends the current buffer, handing its contents out as a chunk of the output
+         * @throws IOException if the chunk cannot be written to the stream of a task that does not fork
+         */
+        private void cut() throws IOException {
+            byte[] segment = takeSegment();
+            if (segment.length == 0) {
+                return;
+            }
+            if (direct != null) {
+                direct.write(segment);
+            }
+            else {
+                parts.add(segment);
+                backlog.add(this, segment.length);
+            }
+        }
+
+        /**
+         * Writes the output of the task and of the tasks it forked as each chunk becomes ready, keeping the tasks
+         * whose output is being written on a stack rather than recursing into them
+         * @param out stream to write the output to
+         * @throws IOException if the output cannot be written or the thread is interrupted while waiting
+         */
+        void writeTo(OutputStream out) throws IOException {
+            ArrayDeque<SubtreeTask> open = new ArrayDeque<>(); //tasks whose output is being written, innermost on top
+            open.push(this);
+            backlog.setHead(this);
+            try {
+                while (!open.isEmpty()) {
+                    Object part = open.peek().parts.take();
+                    if (part == END) {
+                        open.pop();
+                        backlog.setHead(open.peek());
+                    }
+                    else if (part instanceof SubtreeTask) {
+                        open.push((SubtreeTask) part);
+                        backlog.setHead((SubtreeTask) part);
+                    }
+                    else {
+                        out.write((byte[]) part);
+                        backlog.written(((byte[]) part).length);
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Export interrupted");
+            }
+        }
+
+        /**
+         * Writes what comes before the children of a node
+         * @param node the node
+         * @param depth depth of the node within the tree
+         * @throws IOException if the node cannot be written
+         */
+        abstract void writeStart(FXTreeNode node, int depth) throws IOException;
+
+        /**
+         * Writes what comes after the children of a node
+         * @param node the node
+         * @param depth depth of the node within the tree
+         * @throws IOException if the node cannot be written
+         */
+        abstract void writeEnd(FXTreeNode node, int depth) throws IOException;
+
+        /**
+         * Takes what was written since the last call, emptying the buffer
+         * @return the bytes written since the last call
+         */
+        abstract byte[] takeSegment();
+
+        /**
+         * Finds how much was written since the last call to takeSegment
+         * @return the size of the buffer, in bytes or characters
+         */
+        abstract int buffered();
+
+        /**
+         * Drops the buffer of the task once it is done writing
+         */
+        abstract void release();
+
+        /**
+         * Creates a task of the same kind for a child subtree
+         * @param node root of the child subtree
+         * @param depth depth of the root within the tree
+         * @return the new task
+         */
+        abstract SubtreeTask subtask(FXTreeNode node, int depth);
+    }
+
+    /**
+     * Writes a subtree as FXML, the root of the tree being written as the document's header and footer
+     */
+    private static final class FXMLTask extends SubtreeTask {
+        private static final long serialVersionUID = 1L;
+
+        private FXMLWriter writer = new FXMLWriter(null, TASK_BUFFER_SIZE); //in-memory buffer of the task
+
+        /**
+         * Creates a task
+         * @param node root of the subtree to write
+         * @param depth depth of the root within the tree
+         * @param forking whether subtrees may be handed to other tasks
+         * @param backlog state shared by the tasks writing the tree
+         */
+        FXMLTask(FXTreeNode node, int depth, boolean forking, Backlog backlog) {
+            super(node, depth, forking, backlog);
+        }
+
+        void writeStart(FXTreeNode node, int depth) throws IOException {
+            if (depth == 0) {
+                writer.writeHeader();
+            }
+            else {
+                writer.writeStart(node.getType(), node.getText(), depth);
+            }
+        }
+
+        void writeEnd(FXTreeNode node, int depth) throws IOException {
+            if (depth == 0) {
+                writer.writeFooter();
+            }
+            else {
+                writer.writeEnd(node.getType(), depth);
+            }
+        }
+
+        byte[] takeSegment() {
+            byte[] segment = writer.copyRange(0, writer.position());
+            writer.reset();
+            return segment;
+        }
+
+        int buffered() {
+            return (int) writer.position();
+        }
+
+        void release() {
+            writer = null;
+        }
+
+        SubtreeTask subtask(FXTreeNode node, int depth) {
+            return new FXMLTask(node, depth, true, backlog);
+        }
+    }
+
+    /**
+     * Writes a subtree in the text format of writeToFile, one line per node
+     */
+    private static final class TextTask extends SubtreeTask {
+        private static final long serialVersionUID = 1L;
+        private static final String LINE_SEPARATOR = System.lineSeparator();
+
+        private final FXTreeNode cursor; //node marked as the cursor
+        private StringBuilder sb = new StringBuilder(); //in-memory buffer of the task
+
+        /**
+         * Creates a task
+         * @param node root of the subtree to write
+         * @param depth depth of the root within the tree
+         * @param forking whether subtrees may be handed to other tasks
+         * @param backlog state shared by the tasks writing the tree
+         * @param cursor node marked as the cursor
+         */
+        TextTask(FXTreeNode node, int depth, boolean forking, Backlog backlog, FXTreeNode cursor) {
+            super(node, depth, forking, backlog);
+            this.cursor = cursor;
+        }
+
+        void writeStart(FXTreeNode node, int depth) {
+            for (int i = 0; i < depth; i++) {
+                sb.append('\t');
+            }
+            sb.append(node == cursor ? "==>" : "+--").append(node.getType());
+            if (!node.getType().isContainer()) {
+                sb.append(": ").append(node.getText());
+            }
+            sb.append(LINE_SEPARATOR);
+        }
+
+        void writeEnd(FXTreeNode node, int depth) {
+            //a node's line has nothing after its children
+        }
+
+        byte[] takeSegment() {
+            byte[] segment = sb.toString().getBytes(StandardCharsets.UTF_8);
+            sb.setLength(0);
+            return segment;
+        }
+
+        int buffered() {
+            return sb.length();
+        }
+
+        void release() {
+            sb = null;
+        }
+
+        SubtreeTask subtask(FXTreeNode node, int depth) {
+            return new TextTask(node, depth, true, backlog, cursor);
+        }
+    }
+}
@@ -0,0 +1,302 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable list that is edited by making a new list sharing most of its structure with the old one. The elements
+ * are kept in chunks of at most WIDTH, and the chunks in a tree of the same width, so a list of any length is edited
+ * by copying only the few short arrays on the path to the changed element instead of all of its elements.
+ * @param <T> type of the elements
+ */
+public final class PersistentList<T> implements Iterable<T> {
+    private static final int WIDTH = 32; //largest number of elements of a leaf or children of a branch
+    private static final PersistentList<?> EMPTY = new PersistentList<>(new Object[0], null, 0);
+
+    private final Object[] items; //elements of a leaf, or lists holding the elements of a branch
+    private final int[] ends; //number of elements up to and including each child of a branch, or null for a leaf
+    private final int size; //number of elements
+
+    /**
+     * Creates a list
+     * @param items elements of a leaf, or lists holding the elements of a branch
+     * @param ends number of elements up to and including each child of a branch, or null for a leaf
+     * @param size number of elements
+     */
+    private PersistentList(Object[] items, int[] ends, int size) {
+        this.items = items;
+        this.ends = ends;
+        this.size = size;
+    }
+
+    /**
+     * Getter method for the empty list
+     * @param <T> type of the elements
+     * @return a list without elements
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> PersistentList<T> empty() {
+        return (PersistentList<T>) EMPTY;
+    }
+
+    /**
+     * Creates a list holding the elements of an array
+     * @param elements the elements, which are copied
+     * @param <T> type of the elements
+     * @return a list holding the elements in order
+     */
+    public static <T> PersistentList<T> of(T[] elements) {
+        if (elements.length == 0) {
+            return empty();
+        }
+        Object[] level = new Object[(elements.length + WIDTH - 1) / WIDTH];
+        for (int i = 0; i < level.length; i++) {
+            int from = i * WIDTH;
+            int to = Math.min(from + WIDTH, elements.length);
+            level[i] = new PersistentList<T>(Arrays.copyOfRange(elements, from, to, Object[].class), null, to - from);
+        }
+        while (level.length > 1) {
+            Object[] above = new Object[(level.length + WIDTH - 1) / WIDTH];
+            for (int i = 0; i < above.length; i++) {
+                above[i] = branch(Arrays.copyOfRange(level, i * WIDTH, Math.min((i + 1) * WIDTH, level.length)));
+            }
+            level = above;
+        }
+        @SuppressWarnings("unchecked")
+        PersistentList<T> list = (PersistentList<T>) level[0];
+        return list;
+    }
+
+    /**
+     * Creates a branch holding a sequence of lists
+     * @param children the lists, which must not be modified afterwards
+     * @param <T> type of the elements
+     * @return a branch holding the elements of the lists in order
+     */
+    private static <T> PersistentList<T> branch(Object[] children) {
+        int[] ends = new int[children.length];
+        int size = 0;
+        for (int i = 0; i < children.length; i++) {
+            size += ((PersistentList<?>) children[i]).size;
+            ends[i] = size;
+        }
+        return new PersistentList<>(children, ends, size);
+    }
+
+    /**
+     * Getter method for the number of elements
+     * @return the number of elements
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Getter method for the element at a specified index
+     * @param index index of the element, which must be less than size()
+     * @return the element at the index
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        PersistentList<?> list = this;
+        while (list.ends != null) {
+            int child = list.childAt(index);
+            index -= list.start(child);
+            list = (PersistentList<?>) list.items[child];
+        }
+        return (T) list.items[index];
+    }
+
+    /**
+     * Creates a list with an element replaced
+     * @param index index of the element to replace, which must be less than size()
+     * @param element the new element
+     * @return the new list
+     */
+    public PersistentList<T> set(int index, T element) {
+        Object[] items = this.items.clone();
+        if (ends == null) {
+            items[index] = element;
+        }
+        else {
+            int child = childAt(index);
+            items[child] = child(child).set(index - start(child), element);
+        }
+        return new PersistentList<>(items, ends, size);
+    }
+
+    /**
+     * Creates a list with an element inserted, shifting the elements at and after the index one place to the right
+     * @param index index to insert the element at, between 0 and size()
+     * @param element the element to insert
+     * @return the new list
+     */
+    public PersistentList<T> insert(int index, T element) {
+        Object[] parts = insertInto(index, element);
+        @SuppressWarnings("unchecked")
+        PersistentList<T> list = parts.length == 1 ? (PersistentList<T>) parts[0] : branch(parts);
+        return list;
+    }
+
+    /**
+     * Inserts an element, splitting the list in two if it becomes wider than WIDTH
+     * @param index index to insert the element at
+     * @param element the element to insert
+     * @return the new list, or the two halves of it
+     */
+    private Object[] insertInto(int index, Object element) {
+        Object[] items;
+        if (ends == null) {
+            items = new Object[this.items.length + 1];
+            System.arraycopy(this.items, 0, items, 0, index);
+            items[index] = element;
+            System.arraycopy(this.items, index, items, index + 1, this.items.length - index);
+            if (items.length <= WIDTH) {
+                return new Object[] {new PersistentList<>(items, null, size + 1)};
+            }
+            int half = items.length / 2;
+            return new Object[] {
+                new PersistentList<>(Arrays.copyOfRange(items, 0, half), null, half),
+                new PersistentList<>(Arrays.copyOfRange(items, half, items.length), null, items.length - half)
+            };
+        }
+        int child = index == size ? this.items.length - 1 : childAt(index);
+        Object[] parts = child(child).insertInto(index - start(child), element);
+        items = new Object[this.items.length + parts.length - 1];
+        System.arraycopy(this.items, 0, items, 0, child);
+        System.arraycopy(parts, 0, items, child, parts.length);
+        System.arraycopy(this.items, child + 1, items, child + parts.length, this.items.length - child - 1);
+        if (items.length <= WIDTH) {
+            return new Object[] {branch(items)};
+        }
+        int half = items.length / 2;
+        return new Object[] {branch(Arrays.copyOfRange(items, 0, half)),
+            branch(Arrays.copyOfRange(items, half, items.length))};
+    }
+
+    /**
+     * Creates a list with an element removed, shifting the elements after the index one place to the left
+     * @param index index of the element to remove, which must be less than size()
+     * @return the new list
+     */
+    public PersistentList<T> remove(int index) {
+        PersistentList<T> list = removeFrom(index);
+        while (list.ends != null && list.items.length == 1) {
+            list = list.child(0);
+        }
+        return list.size == 0 ? empty() : list;
+    }
+
+    /**
+     * Removes an element, dropping any chunk left empty
+     * @param index index of the element to remove
+     * @return the new list
+     */
+    private PersistentList<T> removeFrom(int index) {
+        if (ends == null) {
+            Object[] items = new Object[this.items.length - 1];
+            System.arraycopy(this.items, 0, items, 0, index);
+            System.arraycopy(this.items, index + 1, items, index, items.length - index);
+            return new PersistentList<>(items, null, size - 1);
+        }
+        int child = childAt(index);
+        PersistentList<T> part = child(child).removeFrom(index - start(child));
+        Object[] items;
+        if (part.size == 0) {
+            items = new Object[this.items.length - 1];
+            System.arraycopy(this.items, 0, items, 0, child);
+            System.arraycopy(this.items, child + 1, items, child, items.length - child);
+        }
+        else {
+            items = this.items.clone();
+            items[child] = part;
+        }
+        return items.length == 0 ? empty() : branch(items);
+    }
+
+    /**
+     * Finds the child of a branch holding an element
+     * @param index index of the element, which must be less than size()
+     * @return index of the child holding the element
+     */
+    private int childAt(int index) {
+        int low = 0;
+        int high = ends.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ends[mid] > index) {
+                high = mid;
+            }
+            else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Finds the index of the first element of a child of a branch
+     * @param child index of the child
+     * @return the number of elements in the children before it
+     */
+    private int start(int child) {
+        return child == 0 ? 0 : ends[child - 1];
+    }
+
+    /**
+     * Getter method for a child of a branch
+     * @param child index of the child
+     * @return the child list
+     */
+    @SuppressWarnings("unchecked")
+    private PersistentList<T> child(int child) {
+        return (PersistentList<T>) items[child];
+    }
+
+    /**
+     * Provides an iterator over the elements in order
+     * @return an iterator over the elements
+     */
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private final Object[][] stack = new Object[8][]; //items of the lists being walked, from the top
+            private final int[] positions = new int[8]; //position within each list being walked
+            private int depth = descend(PersistentList.this, 0);
+
+            /**
+             * Walks down the first children from a list to a leaf, pushing each list
+             * @param list the list to start from
+             * @param depth depth of the list in the stack
+             * @return depth of the leaf in the stack
+             */
+            private int descend(PersistentList<?> list, int depth) {
+                while (true) {
+                    stack[depth] = list.items;
+                    positions[depth] = 0;
+                    if (list.ends == null) {
+                        return depth;
+                    }
+                    list = (PersistentList<?>) list.items[0];
+                    depth++;
+                }
+            }
+
+            public boolean hasNext() {
+                while (depth > 0 && positions[depth] == stack[depth].length) {
+                    depth--;
+                    if (++positions[depth] < stack[depth].length) {
+                        depth = descend((PersistentList<?>) stack[depth][positions[depth]], depth + 1);
+                    }
+                }
+                return positions[depth] < stack[depth].length;
+            }
+
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return (T) stack[depth][positions[depth]++];
+            }
+        };
+    }
+}
@@ -0,0 +1,847 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Objects;
+
+/**
+ * An immutable version of an FXComponentTree. Editing a version never changes it: addChild, deleteChild and setText
+ * return a new version that copies only the nodes on the path from the root to the edit and shares every other subtree
+ * with the version it was made from. Children are kept in a PersistentList, so even the children of a very wide
+ * container are copied only in a few short chunks. Keeping a version is therefore as cheap as keeping a reference to
+ * it, whatever the size of the tree. Every walk over the nodes of a version is made with a Walker rather than by
+ * recursion, so versions of any depth can be copied, hashed, compared and written.
+ */
+public class PersistentTree {
+    private final Node root; //root AnchorPane of the version
+
+    /**
+     * An immutable node of a PersistentTree, which may be shared by many versions. The children of a container from a
+     * lazily loaded file are read from the file the first time they are needed. Nodes are equal when their subtrees
+     * are, and a NodeTable can make all equal nodes one and the same.
+     */
+    public static final class Node {
+        private final ComponentType type; //component type of the node
+        private final String text; //text attribute of the node, or null for containers
+        private PersistentList<Node> children; //children of the node, or null for controls and unread containers
+        private volatile LazyTreeFile source; //file the children are read from when first needed, or null once read
+        private final int line; //index of the node's line in the source file
+        private volatile long hash; //structural hash of the node's subtree, or 0 until it is computed
+        private volatile int size; //number of nodes in the node's subtree, or 0 until they are counted
+
+        /**
+         * Creates a node
+         * @param type the component type of the node
+         * @param text the text attribute of the node, ignored for containers
+         * @param children the children of the node, ignored for controls
+         */
+        private Node(ComponentType type, String text, PersistentList<Node> children) {
+            this.type = type;
+            boolean container = type.isContainer();
+            this.text = container ? null : text;
+            this.children = container ? children : null;
+            this.line = -1;
+        }
+
+        /**
+         * Creates a container whose children are read from a lazily loaded file the first time they are needed
+         * @param type the component type of the container
+         * @param source the file holding the container's line
+         * @param line index of the container's line in the file, or -1 for the root
+         */
+        private Node(ComponentType type, LazyTreeFile source, int line) {
+            this.type = type;
+            this.text = null;
+            this.source = source;
+            this.line = line;
+        }
+
+        /**
+         * Getter method for the node's children, reading them from the node's file the first time they are needed.
+         * Since versions are shared between threads, the children are read at most once under the node's lock.
+         * @return the node's children, or null for controls
+         */
+        private PersistentList<Node> children() {
+            if (source != null) {
+                synchronized (this) {
+                    if (source != null) {
+                        children = source.persistentChildren(line);
+                        source = null;
+                    }
+                }
+            }
+            return children;
+        }
+
+        /**
+         * Getter method for the node's component type
+         * @return the node's component type enum
+         */
+        public ComponentType getType() {
+            return type;
+        }
+
+        /**
+         * Getter method for the node's text attribute
+         * @return the node's text, or null for containers
+         */
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * Finds the number of children the node has
+         * @return the number of children the node has, or -1 if the node is a control
+         */
+        public int numChildren() {
+            PersistentList<Node> list = children();
+            return list == null ? -1 : list.size();
+        }
+
+        /**
+         * Getter method for the child at a specified index
+         * @param index index of the child, which must be less than numChildren()
+         * @return the child node at the index
+         */
+        public Node getChild(int index) {
+            return children().get(index);
+        }
+
+        /**
+         * Finds the structural hash of the node's subtree, as FXTreeNode.hash does, computing it only once. The nodes
+         * of the subtree not hashed yet are hashed in post-order by a Walker, which does not go into hashed subtrees
+         * or into unread ones, whose hash is read from their file.
+         * @return the hash of the node's subtree
+         */
+        public long hash() {
+            if (hash == 0) {
+                Walker walker = new Walker().start(this);
+                while (walker.next()) {
+                    Node node = walker.getNode();
+                    if (node.hash != 0) {
+                        walker.skipChildren();
+                        continue;
+                    }
+                    LazyTreeFile file = node.source;
+                    if (file != null) {
+                        node.hash = file.hash(node.line);
+                        walker.skipChildren();
+                    }
+                    else if (node.children == null || !walker.isEntering()) {
+                        node.hash = node.combineHashes();
+                    }
+                }
+            }
+            return hash;
+        }
+
+        /**
+         * Counts the nodes of the node's subtree, including the node itself, walking it with a Walker. The count of
+         * every node walked is kept, so a shared subtree is only walked once, and the nodes of a lazily loaded file
+         * are counted from its index without being read.
+         * @return the number of nodes in the subtree
+         */
+        public int size() {
+            if (size == 0) {
+                Walker walker = new Walker().start(this);
+                while (walker.next()) {
+                    Node node = walker.getNode();
+                    if (node.size != 0) {
+                        walker.skipChildren();
+                        continue;
+                    }
+                    LazyTreeFile file = node.source;
+                    if (file != null) {
+                        node.size = file.countNodes(node.line) + 1;
+                        walker.skipChildren();
+                    }
+                    else if (node.children == null || !walker.isEntering()) {
+                        int count = 1;
+                        if (node.children != null) {
+                            for (Node child : node.children) {
+                                count += child.size;
+                            }
+                        }
+                        node.size = count;
+                    }
+                }
+            }
+            return size;
+        }
+
+        /**
+         * Computes the structural hash of the node's subtree from the hashes of its children, which must all be
+         * computed already
+         * @return the hash of the node's subtree
+         */
+        private long combineHashes() {
+            long h = SubtreeHash.start(type, text);
+            if (children != null) {
+                for (Node child : children) {
+                    h = SubtreeHash.add(h, child.hash);
+                }
+            }
+            return SubtreeHash.finish(h, children == null ? -1 : children.size());
+        }
+
+        /**
+         * Finds whether the node's subtree has the same structure as another node's by comparing their hashes, which
+         * takes constant time once both are hashed
+         * @param other the other node
+         * @return true if the two subtrees have the same nodes in the same places
+         */
+        public boolean sameSubtree(Node other) {
+            return this == other || hash() == other.hash();
+        }
+
+        /**
+         * Finds whether another node has the same subtree, checking every node unless the two are one and the same or
+         * their hashes differ. The two subtrees are walked side by side, skipping the pairs of subtrees that are one
+         * and the same.
+         * @param o the object to compare to
+         * @return true if the object is a node with the same subtree
+         */
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Node)) {
+                return false;
+            }
+            Walker mine = new Walker().start(this);
+            Walker theirs = new Walker().start((Node) o);
+            while (mine.nextPreOrder() && theirs.nextPreOrder()) {
+                Node node = mine.getNode();
+                Node other = theirs.getNode();
+                if (node == other) {
+                    mine.skipChildren();
+                    theirs.skipChildren();
+                }
+                else if (node.type != other.type || node.hash() != other.hash()
+                        || !Objects.equals(node.text, other.text) || node.numChildren() != other.numChildren()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Provides a hash code consistent with equals
+         * @return the low and high halves of the structural hash combined
+         */
+        public int hashCode() {
+            long h = hash();
+            return (int) (h ^ (h >>> 32));
+        }
+
+        /**
+         * Creates a mutable node holding the same subtree whose children are only created when they are first needed,
+         * so that the parts of a shared subtree that are never visited or edited stay shared
+         * @param parent the parent the node is to be added to
+         * @param pool text pool to take the texts of the created nodes from
+         * @return the mutable node
+         */
+        public FXTreeNode toLazyTreeNode(FXTreeNode parent, TextPool pool) {
+            FXTreeNode node = FXTreeNode.create(type, parent);
+            if (!node.getType().isContainer()) {
+                node.setText(pool.canonical(text));
+            }
+            else {
+                node.setSource(new NodeSource(this, pool), 0);
+            }
+            return node;
+        }
+
+        /**
+         * Copies the node and all of its children into new mutable nodes, walking them with a Walker. Unread
+         * children of a lazily loaded file are left to be read by the copies.
+         * @param parent the parent the copy is to be added to
+         * @return the copy of the node
+         */
+        public FXTreeNode toTreeNode(FXTreeNode parent) {
+            FXTreeNode[] copies = new FXTreeNode[16]; //copy of each node on the walker's path, by level
+            Walker walker = new Walker().start(this);
+            while (walker.nextPreOrder()) {
+                Node original = walker.getNode();
+                int level = walker.getLevel();
+                FXTreeNode copyParent = level == 0 ? parent : copies[level - 1];
+                FXTreeNode copy = FXTreeNode.create(original.type, copyParent);
+                LazyTreeFile file = original.source;
+                if (file != null) {
+                    copy.setSource(file, original.line);
+                    walker.skipChildren();
+                }
+                else if (original.children == null) {
+                    copy.setText(original.text);
+                }
+                if (level > 0) {
+                    copyParent.insertChild(copyParent.numChildren(), copy);
+                }
+                if (level == copies.length) {
+                    copies = Arrays.copyOf(copies, level * 2);
+                }
+                copies[level] = copy;
+            }
+            return copies[0];
+        }
+
+        /**
+         * Provides a string representation of the node
+         * @return a string representation of the node's type and, if applicable, text
+         */
+        public String toString() {
+            return source == null && children == null ? type + ": " + text : type.toString();
+        }
+    }
+
+    /**
+     * Walks the nodes below a node of a PersistentTree without recursion, as TreeWalker walks those of an
+     * FXComponentTree. The path from the start node to the current node is kept on an explicit stack, so a version of
+     * any depth can be walked. A walk is a sequence of events, each either entering a node, before any of its children,
+     * or exiting it, after all of them.
+     */
+    public static final class Walker {
+        private Node[] nodes = new Node[16]; //nodes from the start node to the current node, by level
+        private int[] indices = new int[16]; //index of each node of the path within its parent, by level
+        private int level = -1; //level of the current node below the start node, or -1 once the walk is over
+        private boolean started; //whether the first event has been returned
+        private boolean entering; //whether the current event enters the current node rather than exiting it
+        private boolean descend; //whether the walk goes into the children of the current node after entering it
+
+        /**
+         * Starts a new walk, abandoning any walk in progress
+         * @param node the node to walk from, which is the first node entered and the last exited
+         * @return this walker
+         */
+        public Walker start(Node node) {
+            Arrays.fill(nodes, 0, Math.max(level + 1, 1), null);
+            nodes[0] = node;
+            indices[0] = -1;
+            level = 0;
+            started = false;
+            return this;
+        }
+
+        /**
+         * Moves to the next event of the walk
+         * @return false if the walk is over
+         */
+        public boolean next() {
+            if (level < 0) {
+                return false;
+            }
+            if (!started) {
+                started = true;
+                entering = true;
+                descend = true;
+                return true;
+            }
+            if (entering) {
+                Node node = nodes[level];
+                if (descend && node.numChildren() > 0) {
+                    if (level + 1 == nodes.length) {
+                        nodes = Arrays.copyOf(nodes, nodes.length * 2);
+                        indices = Arrays.copyOf(indices, indices.length * 2);
+                    }
+                    level++;
+                    nodes[level] = node.getChild(0);
+                    indices[level] = 0;
+                    descend = true;
+                }
+                else {
+                    entering = false;
+                }
+                return true;
+            }
+            if (level == 0) {
+                nodes[0] = null;
+                level = -1;
+                return false;
+            }
+            Node parent = nodes[level - 1];
+            int next = indices[level] + 1;
+            if (next < parent.numChildren()) {
+                nodes[level] = parent.getChild(next);
+                indices[level] = next;
+                entering = true;
+                descend = true;
+            }
+            else {
+                nodes[level--] = null;
+            }
+            return true;
+        }
+
+        /**
+         * Moves to the next node entered, which walks the nodes in pre-order
+         * @return false if the walk is over
+         */
+        public boolean nextPreOrder() {
+            while (next()) {
+                if (entering) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Skips the children of the node just entered, so that the next event exits it
+         */
+        public void skipChildren() {
+            descend = false;
+        }
+
+        /**
+         * Finds whether the current event enters a node rather than exiting it
+         * @return true before the node's children, false after them
+         */
+        public boolean isEntering() {
+            return entering;
+        }
+
+        /**
+         * Getter method for the node of the current event
+         * @return the current node
+         */
+        public Node getNode() {
+            return nodes[level];
+        }
+
+        /**
+         * Getter method for a node of the current path
+         * @param level level of the node below the start node, from 0 to getLevel()
+         * @return the node at that level
+         */
+        public Node getNode(int level) {
+            return nodes[level];
+        }
+
+        /**
+         * Getter method for the level of the current node below the start node
+         * @return the number of nodes between the start node and the current node, 0 for the start node itself
+         */
+        public int getLevel() {
+            return level;
+        }
+
+        /**
+         * Finds the index of a node of the current path within its parent
+         * @param level level of the node below the start node, from 1 to getLevel()
+         * @return the index of the node among its parent's children
+         */
+        public int getIndex(int level) {
+            return indices[level];
+        }
+
+        /**
+         * Finds the child indices leading from the start node to the current node
+         * @return the child indices, empty for the start node
+         */
+        public int[] getPath() {
+            int[] path = new int[level];
+            for (int i = 0; i < level; i++) {
+                path[i] = indices[i + 1];
+            }
+            return path;
+        }
+    }
+
+    /**
+     * Creates the children of a mutable node from the children of an immutable one when they are first needed
+     */
+    private static final class NodeSource implements ChildSource {
+        private final Node node; //the immutable node holding the children
+        private final TextPool pool; //pool to take the texts of the created nodes from
+
+        /**
+         * Creates a source
+         * @param node the immutable node holding the children
+         * @param pool pool to take the texts of the created nodes from
+         */
+        NodeSource(Node node, TextPool pool) {
+            this.node = node;
+            this.pool = pool;
+        }
+
+        public void loadChildren(FXTreeNode parent, int key) {
+            FXTreeNode[] children = new FXTreeNode[node.numChildren()];
+            for (int i = 0; i < children.length; i++) {
+                children[i] = node.getChild(i).toLazyTreeNode(parent, pool);
+            }
+            parent.setChildren(children);
+        }
+
+        public long hash(int key) {
+            return node.hash();
+        }
+
+        public int countNodes(int key) {
+            return node.size() - 1;
+        }
+
+        public Node toNode(ComponentType type, int key) {
+            return node;
+        }
+    }
+
+    /**
+     * A hash-consing table that hands out a single node for each distinct subtree. Building a tree bottom-up through
+     * the table makes every repeated subtree, such as the same toolbar used many times, one shared node, so it is kept
+     * in memory once and two equal subtrees are always the same object. Texts of controls are shared the same way.
+     */
+    public static final class NodeTable {
+        private final HashMap<Node, Node> nodes = new HashMap<>(); //the node handed out for each distinct subtree
+        private final HashMap<String, String> texts = new HashMap<>(); //the String handed out for each text
+
+        /**
+         * Provides the node for a control
+         * @param type the component type of the control
+         * @param text the text of the control
+         * @return the shared node
+         */
+        public Node control(ComponentType type, String text) {
+            if (text != null) {
+                String shared = texts.putIfAbsent(text, text);
+                text = shared == null ? text : shared;
+            }
+            return intern(new Node(type, text, null));
+        }
+
+        /**
+         * Provides the node for a container
+         * @param type the component type of the container
+         * @param children the children of the container, which should already come from the table
+         * @return the shared node
+         */
+        public Node container(ComponentType type, Node[] children) {
+            return intern(new Node(type, null, PersistentList.of(children)));
+        }
+
+        /**
+         * Provides the node equal to a given one, which is the given node itself the first time it is seen
+         * @param node the node, whose children should already come from the table
+         * @return the shared node
+         */
+        public Node intern(Node node) {
+            Node existing = nodes.putIfAbsent(node, node);
+            return existing == null ? node : existing;
+        }
+
+        /**
+         * Finds the number of distinct subtrees seen
+         * @return the number of shared nodes
+         */
+        public int size() {
+            return nodes.size();
+        }
+    }
+
+    /**
+     * Creates a version holding only an empty root AnchorPane
+     */
+    public PersistentTree() {
+        this(new Node(ComponentType.AnchorPane, null, PersistentList.empty()));
+    }
+
+    /**
+     * Creates a version with a given root
+     * @param root the root node of the version
+     */
+    private PersistentTree(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Creates a version holding a copy of a mutable tree
+     * @param root root of the mutable tree
+     * @return a version with the same nodes as the mutable tree
+     */
+    public static PersistentTree of(FXTreeNode root) {
+        return new PersistentTree(copy(root));
+    }
+
+    /**
+     * Copies a mutable node and all of its children into immutable nodes. Subtrees whose children were never created
+     * are taken from their source as they are, without creating them.
+     * @param node the node to copy
+     * @return the immutable copy of the node
+     */
+    public static Node copy(FXTreeNode node) {
+        return copy(node, null);
+    }
+
+    /**
+     * Copies a mutable node and all of its children into immutable nodes taken from a hash-consing table, so that
+     * every repeated subtree becomes one shared node. The nodes are walked in post-order with a TreeWalker, each
+     * container being made once all of its children are.
+     * @param node the node to copy
+     * @param table the table to take the nodes from, or null to make new nodes and keep unread subtrees unread
+     * @return the immutable copy of the node
+     */
+    public static Node copy(FXTreeNode node, NodeTable table) {
+        Node[][] children = new Node[16][]; //copies of the children of each open container, by level + 1
+        Node copy = null;
+        TreeWalker walker = new TreeWalker().start(node, 0);
+        while (walker.next()) {
+            FXTreeNode current = walker.getNode();
+            int level = walker.getLevel();
+            if (walker.isEntering()) {
+                if (table == null && current.getSource() != null) {
+                    copy = current.getSource().toNode(current.getType(), current.getSourceKey());
+                }
+                else if (!current.getType().isContainer()) {
+                    copy = table == null ? new Node(current.getType(), current.getText(), null)
+                            : table.control(current.getType(), current.getText());
+                }
+                else {
+                    if (level + 1 == children.length) {
+                        children = Arrays.copyOf(children, children.length * 2);
+                    }
+                    children[level + 1] = new Node[current.numChildren()];
+                    continue;
+                }
+                walker.skipChildren();
+            }
+            else if (level + 1 < children.length && children[level + 1] != null) {
+                Node[] made = children[level + 1];
+                children[level + 1] = null;
+                copy = table == null ? new Node(current.getType(), null, PersistentList.of(made))
+                        : table.container(current.getType(), made);
+            }
+            else {
+                continue; //the exit of a node copied when it was entered
+            }
+            if (level > 0) {
+                children[level][walker.getIndex(level)] = copy;
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Creates a node without children
+     * @param type the component type of the node
+     * @param text the text attribute of the node, ignored for containers
+     * @return the node
+     */
+    public static Node node(ComponentType type, String text) {
+        return new Node(type, text, PersistentList.empty());
+    }
+
+    /**
+     * Creates a node read from a lazily loaded file
+     * @param type the component type of the node
+     * @param text the text attribute of the node, ignored for containers
+     * @param source the file to read the node's children from when they are first needed, or null if it has none
+     * @param line index of the node's line in the file
+     * @return the node
+     */
+    public static Node lazy(ComponentType type, String text, LazyTreeFile source, int line) {
+        if (source != null) {
+            return new Node(type, source, line);
+        }
+        return new Node(type, text, PersistentList.empty());
+    }
+
+    /**
+     * Getter method for the version's root
+     * @return the root node of the version
+     */
+    public Node getRoot() {
+        return root;
+    }
+
+    /**
+     * Finds the node at a specified position
+     * @param path child indices leading from the root to the node, empty for the root itself
+     * @return the node at the position, or null if there is none
+     */
+    public Node find(int[] path) {
+        Node node = root;
+        for (int index : path) {
+            if (index < 0 || index >= node.numChildren()) {
+                return null;
+            }
+            node = node.children().get(index);
+        }
+        return node;
+    }
+
+    /**
+     * Creates a version with a child inserted into a container
+     * @param path child indices leading from the root to the container
+     * @param index index to insert the child at, between 0 and the number of children of the container
+     * @param child the child to insert
+     * @return the new version
+     * @throws InvalidIndexException if the node at the position is a control
+     * @throws IndexOutOfBoundsException if there is no node at the position or the index is out of range
+     */
+    public PersistentTree addChild(int[] path, int index, Node child) throws InvalidIndexException,
+            IndexOutOfBoundsException {
+        Node parent = existing(path);
+        if (parent.children() == null) {
+            throw new InvalidIndexException("Invalid");
+        }
+        if (index < 0 || index > parent.children().size()) {
+            throw new IndexOutOfBoundsException("IndexOutOfBounds");
+        }
+        return replace(path, new Node(parent.type, null, parent.children().insert(index, child)));
+    }
+
+    /**
+     * Creates a version with a child removed from a container, along with all of its children
+     * @param path child indices leading from the root to the container
+     * @param index index of the child to remove
+     * @return the new version
+     * @throws IndexOutOfBoundsException if there is no child at the position and index
+     */
+    public PersistentTree deleteChild(int[] path, int index) throws IndexOutOfBoundsException {
+        Node parent = existing(path);
+        if (index < 0 || index >= parent.numChildren()) {
+            throw new IndexOutOfBoundsException("IndexOutOfBounds");
+        }
+        return replace(path, new Node(parent.type, null, parent.children().remove(index)));
+    }
+
+    /**
+     * Creates a version with the text of a control changed
+     * @param path child indices leading from the root to the control
+     * @param text the new text of the control
+     * @return the new version
+     * @throws InvalidIndexException if the node at the position is a container
+     * @throws IndexOutOfBoundsException if there is no node at the position
+     */
+    public PersistentTree setText(int[] path, String text) throws InvalidIndexException, IndexOutOfBoundsException {
+        Node node = existing(path);
+        if (node.children() != null) {
+            throw new InvalidIndexException("Invalid");
+        }
+        return replace(path, new Node(node.type, text, null));
+    }
+
+    /**
+     * Finds the node at a position that must exist
+     * @param path child indices leading from the root to the node
+     * @return the node at the position
+     * @throws IndexOutOfBoundsException if there is no node at the position
+     */
+    private Node existing(int[] path) throws IndexOutOfBoundsException {
+        Node node = find(path);
+        if (node == null) {
+            throw new IndexOutOfBoundsException("IndexOutOfBounds");
+        }
+        return node;
+    }
+
+    /**
+     * Creates a version in which the node at a position is replaced, copying each of its ancestors
+     * @param path child indices leading from the root to the node
+     * @param replacement the node to put at the position
+     * @return the new version
+     */
+    private PersistentTree replace(int[] path, Node replacement) {
+        Node[] ancestors = new Node[path.length];
+        Node node = root;
+        for (int i = 0; i < path.length; i++) {
+            ancestors[i] = node;
+            node = node.children().get(path[i]);
+        }
+        for (int i = path.length - 1; i >= 0; i--) {
+            replacement = new Node(ancestors[i].type, null, ancestors[i].children().set(path[i], replacement));
+        }
+        return new PersistentTree(replacement);
+    }
+
+    /**
+     * Copies the version into a new mutable tree root
+     * @return the root AnchorPane of the copy
+     */
+    public FXTreeNode toTreeNode() {
+        return root.toTreeNode(null);
+    }
+
+    /**
+     * Creates a valid FXML file of the version that can be opened in SceneBuilder
+     * @param filename name of FXML file to export to
+     * @param pool text pool whose cached encodings are reused, or null
+     * @throws IOException if the file cannot be written
+     */
+    public void exportToFXML(String filename, TextPool pool) throws IOException {
+        try (FXMLWriter writer = new FXMLWriter(new FileOutputStream(filename), pool)) {
+            writeFXML(writer);
+        }
+    }
+
+    /**
+     * Writes the version as an FXML document
+     * @param out stream to write the document to
+     * @param pool text pool whose cached encodings are reused, or null
+     * @throws IOException if the document cannot be written
+     */
+    public void writeFXML(OutputStream out, TextPool pool) throws IOException {
+        FXMLWriter writer = new FXMLWriter(out, pool);
+        writeFXML(writer);
+        writer.flush();
+    }
+
+    /**
+     * Writes the version as an FXML document, walking its nodes with a Walker
+     * @param writer writer to write the document with
+     * @throws IOException if the document cannot be written
+     */
+    private void writeFXML(FXMLWriter writer) throws IOException {
+        writer.writeHeader();
+        Walker walker = new Walker().start(root);
+        while (walker.next()) {
+            int depth = walker.getLevel();
+            if (depth == 0) {
+                continue; //the root is the document's header and footer
+            }
+            Node node = walker.getNode();
+            if (walker.isEntering()) {
+                writer.writeStart(node.type, node.text, depth);
+            }
+            else {
+                writer.writeEnd(node.type, depth);
+            }
+        }
+        writer.writeFooter();
+    }
+
+    /**
+     * Turns a position such as 0-0-2 into the child indices leading from the root to the node
+     * @param path the position, starting with 0 for the root
+     * @return the child indices, or null if the position is not valid
+     */
+    public static int[] parsePath(String path) {
+        String[] parts = path.split("-", -1);
+        if (!parts[0].equals("0")) {
+            return null;
+        }
+        int[] indices = new int[parts.length - 1];
+        try {
+            for (int i = 1; i < parts.length; i++) {
+                indices[i - 1] = Integer.parseInt(parts[i]);
+            }
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+        return indices;
+    }
+
+    /**
+     * Turns child indices leading from the root to a node into a position such as 0-0-2
+     * @param path the child indices
+     * @return the position, starting with 0 for the root
+     */
+    public static String formatPath(int[] path) {
+        StringBuilder sb = new StringBuilder("0");
+        for (int index : path) {
+            sb.append('-').append(index);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,303 @@
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+
+/**
+ * Indexes the nodes of a tree by component type and the controls by the words of their text, so that they can be
+ * found without walking the tree. Words are the runs of letters and digits of a text, ignoring case. Besides the nodes
+ * holding each word, the index keeps the words holding each run of up to three characters, so a query for part of a
+ * word only looks at the words that can contain it. The index is updated when a subtree is added or removed or the
+ * text of a control changes.
+ */
+public class SearchIndex {
+    private static final int GRAM = 3; //longest run of characters the words are indexed by
+
+    private final EnumMap<ComponentType, HashSet<FXTreeNode>> byType; //nodes of each type
+    private final TreeMap<String, HashSet<FXTreeNode>> byWord = new TreeMap<>(); //controls whose text has each word
+    private final HashMap<String, HashSet<String>> byGram = new HashMap<>(); //words holding each run of characters
+    private final TreeWalker walker = new TreeWalker(); //walker reused for every subtree added or removed
+
+    /**
+     * How a query is matched against the text of a control, ignoring case
+     */
+    public enum Mode {
+        EXACT, //the text is the query
+        PREFIX, //each word of the query starts a word of the text
+        SUBSTRING //the text contains the query
+    }
+
+    /**
+     * Creates an index of all the nodes of a tree
+     * @param root root of the tree
+     */
+    public SearchIndex(FXTreeNode root) {
+        byType = new EnumMap<>(ComponentType.class);
+        for (ComponentType type : ComponentType.values()) {
+            byType.put(type, new HashSet<>());
+        }
+        added(root);
+    }
+
+    /**
+     * Finds the nodes of a type whose text matches a query
+     * @param type the component type of the nodes to find, or null for any
+     * @param query the text to match, or null or empty to find every node of the type
+     * @param mode how the query is matched
+     * @return the matching nodes, in no particular order
+     */
+    public List<FXTreeNode> find(ComponentType type, String query, Mode mode) {
+        ArrayList<FXTreeNode> found = new ArrayList<>();
+        if (query == null || query.isEmpty()) {
+            for (ComponentType t : ComponentType.values()) {
+                if (type == null || type == t) {
+                    found.addAll(byType.get(t));
+                }
+            }
+            return found;
+        }
+        String lower = query.toLowerCase(Locale.ROOT);
+        List<String> words = words(lower);
+        if (words.isEmpty()) {
+            return found; //the index cannot narrow the search, so the caller walks the tree instead
+        }
+        HashSet<FXTreeNode> candidates = null;
+        for (String word : words) {
+            HashSet<FXTreeNode> matches = new HashSet<>();
+            if (mode == Mode.EXACT) {
+                HashSet<FXTreeNode> nodes = byWord.get(word);
+                if (nodes != null) {
+                    matches.addAll(nodes);
+                }
+            }
+            else if (mode == Mode.PREFIX) {
+                for (HashSet<FXTreeNode> nodes : byWord.subMap(word, word + Character.MAX_VALUE).values()) {
+                    matches.addAll(nodes);
+                }
+            }
+            else {
+                for (String holder : wordsContaining(word)) {
+                    matches.addAll(byWord.get(holder));
+                }
+            }
+            if (candidates == null || matches.size() < candidates.size()) {
+                if (candidates != null) {
+                    matches.retainAll(candidates);
+                }
+                candidates = matches;
+            }
+            else {
+                candidates.retainAll(matches);
+            }
+        }
+        for (FXTreeNode node : candidates) {
+            if ((type == null || node.getType() == type) && matches(node.getText(), lower, mode)) {
+                found.add(node);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Finds whether the index can narrow a query, which it cannot when the query has no letters or digits
+     * @param query the text to match
+     * @return true if find answers the query
+     */
+    public static boolean canAnswer(String query) {
+        return query == null || query.isEmpty() || !words(query).isEmpty();
+    }
+
+    /**
+     * Finds whether a text matches a query
+     * @param text the text of a control
+     * @param query the query in lower case
+     * @param mode how the query is matched
+     * @return true if the text matches
+     */
+    public static boolean matches(String text, String query, Mode mode) {
+        if (text == null) {
+            return false;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        if (mode == Mode.EXACT) {
+            return lower.equals(query);
+        }
+        else if (mode == Mode.SUBSTRING) {
+            return lower.contains(query);
+        }
+        List<String> textWords = words(lower);
+        for (String word : words(query)) {
+            boolean started = false;
+            for (String textWord : textWords) {
+                if (textWord.startsWith(word)) {
+                    started = true;
+                    break;
+                }
+            }
+            if (!started) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the indexed words containing a run of characters
+     * @param part the run of characters, in lower case
+     * @return the words containing it
+     */
+    private List<String> wordsContaining(String part) {
+        ArrayList<String> holders = new ArrayList<>();
+        if (part.length() <= GRAM) {
+            HashSet<String> words = byGram.get(part);
+            if (words != null) {
+                holders.addAll(words);
+            }
+            return holders;
+        }
+        HashSet<String> fewest = null;
+        for (int i = 0; i + GRAM <= part.length(); i++) {
+            HashSet<String> words = byGram.get(part.substring(i, i + GRAM));
+            if (words == null) {
+                return holders;
+            }
+            if (fewest == null || words.size() < fewest.size()) {
+                fewest = words;
+            }
+        }
+        for (String word : fewest) {
+            if (word.contains(part)) {
+                holders.add(word);
+            }
+        }
+        return holders;
+    }
+
+    /**
+     * Indexes a node and all of its children after they were added to the tree
+     * @param node the node added
+     */
+    public void added(FXTreeNode node) {
+        walker.start(node, 0);
+        while (walker.nextPreOrder()) {
+            FXTreeNode current = walker.getNode();
+            byType.get(current.getType()).add(current);
+            if (!current.getType().isContainer()) {
+                addText(current, current.getText());
+            }
+        }
+    }
+
+    /**
+     * Drops a node and all of its children from the index after they were removed from the tree
+     * @param node the node removed
+     */
+    public void removed(FXTreeNode node) {
+        walker.start(node, 0);
+        while (walker.nextPreOrder()) {
+            FXTreeNode current = walker.getNode();
+            byType.get(current.getType()).remove(current);
+            if (!current.getType().isContainer()) {
+                removeText(current, current.getText());
+            }
+        }
+    }
+
+    /**
+     * Updates the index after the text of a control changed
+     * @param node the control
+     * @param oldText the text of the control before the change
+     */
+    public void textChanged(FXTreeNode node, String oldText) {
+        removeText(node, oldText);
+        addText(node, node.getText());
+    }
+
+    /**
+     * Indexes a control under the words of a text
+     * @param node the control
+     * @param text its text
+     */
+    private void addText(FXTreeNode node, String text) {
+        if (text == null) {
+            return;
+        }
+        for (String word : words(text.toLowerCase(Locale.ROOT))) {
+            HashSet<FXTreeNode> nodes = byWord.get(word);
+            if (nodes == null) {
+                nodes = new HashSet<>();
+                byWord.put(word, nodes);
+                for (String gram : grams(word)) {
+                    byGram.computeIfAbsent(gram, g -> new HashSet<>()).add(word);
+                }
+            }
+            nodes.add(node);
+        }
+    }
+
+    /**
+     * Drops a control from the words of a text, forgetting the words no other control has
+     * @param node the control
+     * @param text its text
+     */
+    private void removeText(FXTreeNode node, String text) {
+        if (text == null) {
+            return;
+        }
+        for (String word : words(text.toLowerCase(Locale.ROOT))) {
+            HashSet<FXTreeNode> nodes = byWord.get(word);
+            if (nodes != null && nodes.remove(node) && nodes.isEmpty()) {
+                byWord.remove(word);
+                for (String gram : grams(word)) {
+                    HashSet<String> words = byGram.get(gram);
+                    words.remove(word);
+                    if (words.isEmpty()) {
+                        byGram.remove(gram);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits a text into its words, the runs of letters and digits
+     * @param text the text
+     * @return the distinct words of the text, in order
+     */
+    private static List<String> words(String text) {
+        ArrayList<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean inWord = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            }
+            else if (!inWord && start >= 0) {
+                String word = text.substring(start, i);
+                if (!words.contains(word)) {
+                    words.add(word);
+                }
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Finds the runs of one to GRAM characters of a word
+     * @param word the word
+     * @return its distinct runs
+     */
+    private static HashSet<String> grams(String word) {
+        HashSet<String> grams = new HashSet<>();
+        for (int length = 1; length <= GRAM; length++) {
+            for (int i = 0; i + length <= word.length(); i++) {
+                grams.add(word.substring(i, i + length));
+            }
+        }
+        return grams;
+    }
+}
@@ -0,0 +1,214 @@
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Reads a consistent snapshot of an FXComponentTree from any thread while the tree is being edited. A reader holds one
+ * immutable version of the tree, which no edit can change, along with a cursor of its own, so any number of readers can
+ * navigate, export, print, search and check the tree at the same time as the editor. Calling refresh moves a reader to
+ * the latest version.
+ */
+public class SnapshotReader {
+    private static final int BUFFER_SIZE = 1 << 16; //size of the output buffer
+
+    private final FXComponentTree tree; //tree the versions are published by
+    private PersistentTree version; //version being read
+    private int[] cursor = new int[0]; //child indices leading from the root to the reader's cursor
+
+    /**
+     * Creates a reader of the version most recently published by a tree
+     * @param tree the tree, which must already publish versions
+     */
+    SnapshotReader(FXComponentTree tree) {
+        this.tree = tree;
+        this.version = tree.getPublished();
+    }
+
+    /**
+     * Moves the reader to the version most recently published by the tree. The cursor keeps its position if the new
+     * version still has a node there, and moves to the root otherwise.
+     */
+    public void refresh() {
+        version = tree.getPublished();
+        if (version.find(cursor) == null) {
+            cursor = new int[0];
+        }
+    }
+
+    /**
+     * Getter method for the version being read
+     * @return the version of the tree the reader sees
+     */
+    public PersistentTree getVersion() {
+        return version;
+    }
+
+    /**
+     * Getter method for the node at the reader's cursor
+     * @return the node at the cursor
+     */
+    public PersistentTree.Node getCursor() {
+        return version.find(cursor);
+    }
+
+    /**
+     * Getter method for the position of the reader's cursor
+     * @return the position of the cursor, such as 0-0-2
+     */
+    public String getCursorPath() {
+        return PersistentTree.formatPath(cursor);
+    }
+
+    /**
+     * Moves the reader's cursor to the root
+     */
+    public void cursorToRoot() {
+        cursor = new int[0];
+    }
+
+    /**
+     * Moves the reader's cursor to a child of the node at the cursor
+     * @param index index of the child
+     * @throws InvalidIndexException if the node at the cursor has no child at the index
+     */
+    public void cursorToChild(int index) throws InvalidIndexException {
+        if (index < 0 || index >= getCursor().numChildren()) {
+            throw new InvalidIndexException("Invalid");
+        }
+        cursor = Arrays.copyOf(cursor, cursor.length + 1);
+        cursor[cursor.length - 1] = index;
+    }
+
+    /**
+     * Moves the reader's cursor to the parent of the node at the cursor, staying at the root if it is there
+     */
+    public void cursorToParent() {
+        if (cursor.length > 0) {
+            cursor = Arrays.copyOf(cursor, cursor.length - 1);
+        }
+    }
+
+    /**
+     * Moves the reader's cursor to the node at a specified position
+     * @param path position of the node, such as 0-0-2
+     * @throws InvalidIndexException if there is no node at the position
+     */
+    public void cursorToPath(String path) throws InvalidIndexException {
+        int[] indices = PersistentTree.parsePath(path);
+        if (indices == null || version.find(indices) == null) {
+            throw new InvalidIndexException("Invalid");
+        }
+        cursor = indices;
+    }
+
+    /**
+     * Creates a valid FXML file of the version that can be opened in SceneBuilder
+     * @param filename name of FXML file to export to
+     * @throws IOException if the file cannot be written
+     */
+    public void exportToFXML(String filename) throws IOException {
+        version.exportToFXML(filename, null);
+    }
+
+    /**
+     * Writes the version as an FXML document
+     * @param out stream to write the document to
+     * @throws IOException if the document cannot be written
+     */
+    public void exportToFXML(OutputStream out) throws IOException {
+        version.writeFXML(out, null);
+    }
+
+    /**
+     * Generates a text file of the version in the format of FXComponentTree.writeToFile, marking the reader's cursor
+     * @param filename name of the file to write the version in
+     * @throws IOException if the file cannot be written
+     */
+    public void writeToFile(String filename) throws IOException {
+        try (PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(filename), BUFFER_SIZE),
+                false, StandardCharsets.UTF_8)) {
+            printTree(out);
+            if (out.checkError()) {
+                throw new IOException(filename + " could not be written");
+            }
+        }
+    }
+
+    /**
+     * Prints the version in the format of FXComponentTree.printTree, marking the reader's cursor
+     * @param out stream to print to
+     */
+    public void printTree(PrintStream out) {
+        StringBuilder sb = new StringBuilder();
+        int onPath = 0; //deepest level of the walker's path that is on the path to the cursor
+        PersistentTree.Walker walker = new PersistentTree.Walker().start(version.getRoot());
+        while (walker.nextPreOrder()) {
+            PersistentTree.Node node = walker.getNode();
+            int depth = walker.getLevel();
+            onPath = Math.min(onPath, depth - 1);
+            if (depth == 0
+                    || onPath == depth - 1 && onPath < cursor.length && cursor[onPath] == walker.getIndex(depth)) {
+                onPath = depth;
+            }
+            for (int i = 0; i < depth; i++) {
+                sb.append('\t');
+            }
+            sb.append(onPath == depth && depth == cursor.length ? "==>" : "+--").append(node.getType());
+            if (!node.getType().isContainer()) {
+                sb.append(": ").append(node.getText());
+            }
+            sb.append(System.lineSeparator());
+            if (sb.length() >= BUFFER_SIZE) {
+                out.print(sb);
+                sb.setLength(0);
+            }
+        }
+        out.print(sb);
+    }
+
+    /**
+     * Finds the controls whose text contains a query
+     * @param query the text to look for
+     * @return the positions of the matching controls, in document order
+     */
+    public List<String> search(String query) {
+        List<String> found = new ArrayList<>();
+        PersistentTree.Walker walker = new PersistentTree.Walker().start(version.getRoot());
+        while (walker.nextPreOrder()) {
+            PersistentTree.Node node = walker.getNode();
+            if (node.getText() != null && node.getText().contains(query)) {
+                found.add(PersistentTree.formatPath(walker.getPath()));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Checks that the version can be loaded from FXML, which requires the fx:id given to each TextArea to be unique
+     * @return a description of each problem found, empty if there are none
+     */
+    public List<String> validate() {
+        List<String> problems = new ArrayList<>();
+        HashMap<String, String> ids = new HashMap<>(); //position of the first TextArea found with each fx:id
+        PersistentTree.Walker walker = new PersistentTree.Walker().start(version.getRoot());
+        while (walker.nextPreOrder()) {
+            PersistentTree.Node node = walker.getNode();
+            if (node.getType() == ComponentType.TextArea) {
+                String id = new String(FXMLWriter.encodeId(node.getText()), StandardCharsets.US_ASCII);
+                String path = PersistentTree.formatPath(walker.getPath());
+                String first = ids.putIfAbsent(id, path);
+                if (first != null) {
+                    problems.add("TextArea at " + path + " has the same fx:id " + id + " as the one at " + first);
+                }
+            }
+        }
+        return problems;
+    }
+}
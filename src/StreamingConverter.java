@@ -0,0 +1,123 @@
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Converts a tree text file to FXML without building the tree. Since the nodes of a text file are listed in pre-order,
+ * each line is written as soon as it is read, and only the containers still open above it are kept, so the memory
+ * used depends on the depth of the tree and not on its size. The output is the same, byte for byte, as loading the
+ * file with readFromFile and exporting it with exportToFXML, which lets files of any size be converted through a pipe.
+ */
+public class StreamingConverter {
+    private ComponentType[] open = new ComponentType[16]; //type of each open container, by depth
+    private int openDepth; //depth of the deepest open container, 0 when only the root is open
+    private int nodes; //number of nodes written below the root
+
+    /**
+     * Converts a file given on the command line as --stream input output, where either can be - for standard input
+     * or output
+     * @param args command line arguments, starting with --stream
+     * @return the exit status: 0 if the file was converted, 1 if it could not be, 2 if the arguments are wrong
+     */
+    public static int run(String[] args) {
+        if (args.length != 3) {
+            System.err.println("Usage: FXGuiMaker --stream <input|-> <output|->");
+            return 2;
+        }
+        String input = args[1];
+        String output = args[2];
+        try {
+            Reader in = new InputStreamReader(input.equals("-") ? new FileInputStream(FileDescriptor.in)
+                    : new FileInputStream(input), StandardCharsets.UTF_8);
+            OutputStream out = output.equals("-") ? new FileOutputStream(FileDescriptor.out)
+                    : Channels.newOutputStream(FileChannel.open(Paths.get(output), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+            new StreamingConverter().convert(in, out);
+            return 0;
+        }
+        catch (IOException | MalformedTreeFileException e) {
+            if (!output.equals("-")) {
+                try {
+                    Files.deleteIfExists(Paths.get(output));
+                }
+                catch (IOException ignored) {
+                    //the failure is reported either way
+                }
+            }
+            System.err.println(input + " could not be converted: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * Converts a tree text file to an FXML file
+     * @param input name of the text file to read
+     * @param output name of the FXML file to write
+     * @return the number of nodes written, not counting the root
+     * @throws IOException if either file cannot be read or written
+     * @throws MalformedTreeFileException if a line of the text file does not describe a valid next node of the tree
+     */
+    public int convert(Path input, Path output) throws IOException, MalformedTreeFileException {
+        return convert(Files.newBufferedReader(input, StandardCharsets.UTF_8),
+                Channels.newOutputStream(FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)));
+    }
+
+    /**
+     * Converts a tree in text form to an FXML document, closing both streams once it is done
+     * @param in reader supplying the lines of the tree
+     * @param out stream to write the document to
+     * @return the number of nodes written, not counting the root
+     * @throws IOException if the input cannot be read or the output cannot be written
+     * @throws MalformedTreeFileException if a line does not describe a valid next node of the tree
+     */
+    public int convert(Reader in, OutputStream out) throws IOException, MalformedTreeFileException {
+        openDepth = 0;
+        nodes = 0;
+        try (TreeFileReader reader = new TreeFileReader(in); FXMLWriter writer = new FXMLWriter(out)) {
+            writer.writeHeader();
+            while (reader.next()) {
+                int depth = reader.getDepth();
+                closeTo(writer, depth - 1);
+                ComponentType type = reader.getType();
+                writer.writeStart(type, reader.getText(), depth);
+                if (type.isContainer()) {
+                    if (depth == open.length) {
+                        open = Arrays.copyOf(open, depth * 2);
+                    }
+                    open[depth] = type;
+                    openDepth = depth;
+                }
+                nodes++;
+            }
+            closeTo(writer, 0);
+            writer.writeFooter();
+        }
+        return nodes;
+    }
+
+    /**
+     * Writes the closing tags of the open containers deeper than a depth
+     * @param writer writer to write the tags with
+     * @param depth depth of the deepest container to leave open
+     * @throws IOException if the output cannot be written
+     */
+    private void closeTo(FXMLWriter writer, int depth) throws IOException {
+        while (openDepth > depth) {
+            writer.writeEnd(open[openDepth], openDepth);
+            open[openDepth--] = null;
+        }
+    }
+}
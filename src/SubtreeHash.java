@@ -0,0 +1,69 @@
+/**
+ * Computes structural hashes of subtrees. The hash of a node covers its component type, its text if it is a control
+ * and the hashes of its children in order, so two subtrees have the same hash when they have the same nodes in the
+ * same places. Hashes are 64 bits wide and well mixed, so different subtrees share a hash with a chance of about one in
+ * 2^64 and comparing two hashes stands in for comparing the subtrees themselves. FXTreeNode, PersistentTree and
+ * LazyTreeFile all hash with these methods, so their hashes of the same subtree agree.
+ */
+public final class SubtreeHash {
+    private static final long MULTIPLIER = 0x9E3779B97F4A7C15L; //odd constant spreading each child over all bits
+    private static final long TEXT_OFFSET = 0xCBF29CE484222325L; //FNV-1a offset basis
+    private static final long TEXT_PRIME = 0x100000001B3L; //FNV-1a prime
+
+    /**
+     * Prevents instances, since all methods are static
+     */
+    private SubtreeHash() {
+    }
+
+    /**
+     * Starts the hash of a node
+     * @param type the component type of the node
+     * @param text the text of the node, or null for containers
+     * @return the hash of the node before its children are added
+     */
+    public static long start(ComponentType type, String text) {
+        long h = 0;
+        if (text != null) {
+            h = TEXT_OFFSET;
+            for (int i = 0; i < text.length(); i++) {
+                h = (h ^ text.charAt(i)) * TEXT_PRIME;
+            }
+        }
+        return mix(h + type.ordinal() * MULTIPLIER);
+    }
+
+    /**
+     * Adds the hash of the next child to the hash of a node
+     * @param hash the hash of the node so far
+     * @param child the hash of the child
+     * @return the hash of the node with the child added
+     */
+    public static long add(long hash, long child) {
+        return Long.rotateLeft(hash, 23) * MULTIPLIER + child;
+    }
+
+    /**
+     * Finishes the hash of a node once all of its children are added
+     * @param hash the hash of the node so far
+     * @param children the number of children added, or -1 for controls
+     * @return the hash of the node
+     */
+    public static long finish(long hash, int children) {
+        return mix(hash ^ children);
+    }
+
+    /**
+     * Spreads the bits of a value over the whole word, as the finalizer of MurmurHash3 does
+     * @param h the value
+     * @return the mixed value
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,181 @@
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Deduplicates the texts of the nodes of one tree. Every distinct text is kept once under an int id along with a
+ * count of the nodes using it, so repeated labels such as OK or Cancel share a single String, and their FXML-escaped
+ * bytes are encoded only the first time they are exported. An entry is dropped when its last node releases it.
+ */
+public class TextPool {
+    public static final int NONE = -1; //id returned for texts that are not in the pool
+
+    private final HashMap<String, Integer> ids = new HashMap<>(); //id of each pooled text
+    private String[] values = new String[16]; //pooled text of each id
+    private int[] refCounts = new int[16]; //number of nodes using each id
+    private byte[][] encoded = new byte[16][]; //escaped UTF-8 text attribute of each id, once exported
+    private byte[][] encodedIds = new byte[16][]; //TextArea fx:id derived from each id, once exported
+    private int capacity; //number of ids used, including freed ones
+    private int freeList = NONE; //first freed id, with the rest linked through refCounts
+    private long lookups; //number of texts interned
+    private long hits; //number of texts interned that were already pooled
+
+    /**
+     * Adds a use of a text to the pool
+     * @param text the text to intern
+     * @return id of the pooled text, or NONE if the text is null
+     */
+    public int intern(String text) {
+        if (text == null) {
+            return NONE;
+        }
+        lookups++;
+        Integer existing = ids.get(text);
+        if (existing != null) {
+            hits++;
+            refCounts[existing]++;
+            return existing;
+        }
+        int id;
+        if (freeList != NONE) {
+            id = freeList;
+            freeList = refCounts[id];
+        }
+        else {
+            if (capacity == values.length) {
+                int newCapacity = capacity + (capacity >> 1);
+                values = Arrays.copyOf(values, newCapacity);
+                refCounts = Arrays.copyOf(refCounts, newCapacity);
+                encoded = Arrays.copyOf(encoded, newCapacity);
+                encodedIds = Arrays.copyOf(encodedIds, newCapacity);
+            }
+            id = capacity++;
+        }
+        values[id] = text;
+        refCounts[id] = 1;
+        ids.put(text, id);
+        return id;
+    }
+
+    /**
+     * Adds a use of a text to the pool
+     * @param text the text to intern
+     * @return the pooled String equal to the text, or null if the text is null
+     */
+    public String canonical(String text) {
+        return get(intern(text));
+    }
+
+    /**
+     * Removes a use of a pooled text, dropping the text once no node uses it
+     * @param id id of the pooled text, ignored if it is NONE
+     */
+    public void release(int id) {
+        if (id == NONE || --refCounts[id] > 0) {
+            return;
+        }
+        ids.remove(values[id]);
+        values[id] = null;
+        encoded[id] = null;
+        encodedIds[id] = null;
+        refCounts[id] = freeList;
+        freeList = id;
+    }
+
+    /**
+     * Removes a use of a text, dropping the text once no node uses it
+     * @param text the text to release, ignored if it is not pooled
+     */
+    public void release(String text) {
+        release(find(text));
+    }
+
+    /**
+     * Finds the id of a pooled text without adding a use of it
+     * @param text the text to find
+     * @return id of the text, or NONE if it is not pooled
+     */
+    public int find(String text) {
+        if (text == null) {
+            return NONE;
+        }
+        Integer id = ids.get(text);
+        return id == null ? NONE : id;
+    }
+
+    /**
+     * Getter method for a pooled text
+     * @param id id of the text
+     * @return the pooled text, or null if the id is NONE
+     */
+    public String get(int id) {
+        return id == NONE ? null : values[id];
+    }
+
+    /**
+     * Getter method for the FXML text attribute of a pooled text, encoding it the first time it is asked for
+     * @param id id of the text
+     * @return the escaped UTF-8 bytes of the text, which must not be modified
+     */
+    public byte[] getEncoded(int id) {
+        byte[] bytes = encoded[id];
+        if (bytes == null) {
+            bytes = FXMLWriter.encodeAttribute(values[id]);
+            encoded[id] = bytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * Getter method for the TextArea fx:id derived from a pooled text, deriving it the first time it is asked for
+     * @param id id of the text
+     * @return the ASCII bytes of the fx:id, which must not be modified
+     */
+    public byte[] getEncodedId(int id) {
+        byte[] bytes = encodedIds[id];
+        if (bytes == null) {
+            bytes = FXMLWriter.encodeId(values[id]);
+            encodedIds[id] = bytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * Getter method for the number of distinct texts
+     * @return the number of texts in the pool
+     */
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * Getter method for the number of times a text was interned
+     * @return the number of texts interned
+     */
+    public long getLookups() {
+        return lookups;
+    }
+
+    /**
+     * Getter method for the number of times an interned text was already pooled
+     * @return the number of texts interned that were already pooled
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Finds the fraction of interned texts that were already pooled
+     * @return the hit rate between 0 and 1, or 0 if nothing was interned
+     */
+    public double getHitRate() {
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * Provides a summary of the pool's statistics
+     * @return the size, lookups and hit rate of the pool
+     */
+    public String toString() {
+        return String.format("%d distinct texts, %d lookups, %.1f%% hit rate", size(), lookups, getHitRate() * 100);
+    }
+}
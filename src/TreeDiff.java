@@ -0,0 +1,755 @@
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The differences between two FXComponentTrees as an edit script of adds, deletes, moves and text changes, which
+ * FXComponentTree.applyPatch applies to turn the first tree into the second. Subtrees with equal hashes are skipped
+ * without being visited, so comparing two revisions of a large layout only looks at the parts that changed. Within a
+ * container, children are matched first by hash, and the children left over are then matched by type only within
+ * the gaps between the hash-matched children that keep their order, so a changed child is paired with the one at its
+ * place rather than with any child of its type. Only the children outside the longest run already in the right order
+ * are moved.
+ * <p>
+ * Every operation is located by positions in the notation of tree text files, each one as it is in the tree when the
+ * operation is applied, that is after the operations before it:
+ * <pre>
+ * + 0-0-2 Button OK     adds a Button with the text OK as the third child of 0-0
+ * - 0-0-2               deletes the node at 0-0-2 along with its children
+ * &gt; 0-0-5 0-0-1         moves the node at 0-0-5 to 0-0-1, within the same container
+ * ~ 0-0-1-3 Cancel      changes the text of the control at 0-0-1-3 to Cancel
+ * </pre>
+ * An added container is written as one + line for it followed by a + line for each node below it.
+ */
+public class TreeDiff {
+    private static final int ALIGN_LIMIT = 1 << 20; //largest gap, in pairs of children, aligned by type with an LCS
+    private static final int SCORE_LIMIT = 1 << 12; //largest gap, in pairs of children, scored by shared children
+
+    private final ArrayList<Op> ops; //operations of the script, in the order they are applied
+
+    /**
+     * The kind of an operation
+     */
+    public enum Kind {
+        ADD, DELETE, MOVE, TEXT
+    }
+
+    /**
+     * An operation of an edit script. Every operation is located by the position of a container and the index of one
+     * of its children: the child added, deleted or moved, or the control whose text changes.
+     */
+    public static final class Op {
+        private final Kind kind; //kind of the operation
+        private final int[] path; //child indices leading from the root to the container
+        private final int index; //index of the child within the container
+        private final int target; //index a moved child ends up at, after it is taken out of the container
+        private final PersistentTree.Node node; //the child added, or null for other operations
+        private final String text; //new text of the control for text changes, or null for other operations
+
+        /**
+         * Creates an operation
+         * @param kind kind of the operation
+         * @param path child indices leading from the root to the container
+         * @param index index of the child within the container
+         * @param target index a moved child ends up at
+         * @param node the child added, or null for other operations
+         * @param text new text of the control for text changes
+         */
+        private Op(Kind kind, int[] path, int index, int target, PersistentTree.Node node, String text) {
+            this.kind = kind;
+            this.path = path;
+            this.index = index;
+            this.target = target;
+            this.node = node;
+            this.text = text;
+        }
+
+        /**
+         * Getter method for the kind of the operation
+         * @return the kind of the operation
+         */
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * Getter method for the position of the container the operation is made in
+         * @return child indices leading from the root to the container, which must not be modified
+         */
+        public int[] getPath() {
+            return path;
+        }
+
+        /**
+         * Getter method for the index of the child the operation is made on
+         * @return index of the child within the container
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Getter method for the index a moved child ends up at
+         * @return index of the child within the container once moved, counted after it was taken out
+         */
+        public int getTarget() {
+            return target;
+        }
+
+        /**
+         * Getter method for the child added
+         * @return the child, with all of its children, or null for other operations
+         */
+        public PersistentTree.Node getNode() {
+            return node;
+        }
+
+        /**
+         * Getter method for the new text of a control
+         * @return the new text, or null for other operations
+         */
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * Provides the operation in the notation of edit scripts
+         * @return the lines of the operation, without a line break after the last one
+         */
+        public String toString() {
+            StringWriter sw = new StringWriter();
+            PrintWriter pw = new PrintWriter(sw);
+            print(pw);
+            pw.flush();
+            return sw.toString().stripTrailing();
+        }
+
+        /**
+         * Prints the operation in the notation of edit scripts, one line per node for adds
+         * @param pw the PrintWriter to print to
+         */
+        void print(PrintWriter pw) {
+            String position = PersistentTree.formatPath(path) + "-" + index;
+            if (kind == Kind.ADD) {
+                printAdd(pw, node, position);
+            }
+            else if (kind == Kind.DELETE) {
+                pw.println("- " + position);
+            }
+            else if (kind == Kind.MOVE) {
+                pw.println("> " + position + " " + PersistentTree.formatPath(path) + "-" + target);
+            }
+            else {
+                pw.println("~ " + position + " " + text);
+            }
+        }
+
+        /**
+         * Prints the + lines of an added node and its children, walking them with a PersistentTree.Walker
+         * @param pw the PrintWriter to print to
+         * @param added the node to print
+         * @param position position of the node
+         */
+        private static void printAdd(PrintWriter pw, PersistentTree.Node added, String position) {
+            StringBuilder sb = new StringBuilder(position);
+            int[] lengths = new int[16]; //length of the position of each node on the walker's path, by level
+            PersistentTree.Walker walker = new PersistentTree.Walker().start(added);
+            while (walker.nextPreOrder()) {
+                PersistentTree.Node node = walker.getNode();
+                int level = walker.getLevel();
+                if (level > 0) {
+                    sb.setLength(lengths[level - 1]);
+                    sb.append('-').append(walker.getIndex(level));
+                }
+                if (level == lengths.length) {
+                    lengths = Arrays.copyOf(lengths, level * 2);
+                }
+                lengths[level] = sb.length();
+                pw.print("+ ");
+                pw.print(sb);
+                pw.print(' ');
+                pw.print(node.getType());
+                if (!node.getType().isContainer()) {
+                    pw.print(' ');
+                    pw.print(node.getText() == null ? "" : node.getText());
+                }
+                pw.println();
+            }
+        }
+    }
+
+    /**
+     * Creates an edit script
+     * @param ops operations of the script, in the order they are applied
+     */
+    private TreeDiff(ArrayList<Op> ops) {
+        this.ops = ops;
+    }
+
+    /**
+     * Finds the edit script turning one tree into another
+     * @param from the tree the script is applied to
+     * @param to the tree the script turns it into
+     * @return the edit script, empty if the trees are the same
+     */
+    public static TreeDiff compare(FXComponentTree from, FXComponentTree to) {
+        return compare(from.getRoot(), to.getRoot());
+    }
+
+    /**
+     * Finds the edit script turning the subtree of one container into that of another, located as if the containers
+     * were the roots of their trees
+     * @param from the container the script is applied to
+     * @param to the container of the same type the script turns it into
+     * @return the edit script, empty if the subtrees are the same
+     */
+    public static TreeDiff compare(FXTreeNode from, FXTreeNode to) {
+        ArrayList<Op> ops = new ArrayList<>();
+        if (!from.sameSubtree(to)) {
+            ArrayDeque<Object[]> pending = new ArrayDeque<>(); //pairs of containers still to compare, next on top
+            pending.push(new Object[] {from, to, new int[0]});
+            while (!pending.isEmpty()) {
+                Object[] pair = pending.pop();
+                compareChildren((FXTreeNode) pair[0], (FXTreeNode) pair[1], (int[]) pair[2], ops, pending);
+            }
+        }
+        return new TreeDiff(ops);
+    }
+
+    /**
+     * Adds the operations turning the children of one container into those of another, which have different hashes.
+     * The common first and last children are skipped, the rest are matched by hash and then by type within the gaps
+     * left between the hash-matched children that stay in order, as matchGaps describes, and the operations on the
+     * container's children come first: deletes from the last to the first, moves of the matched
+     * children that are not in the longest run already in order, and adds from the first to the last. The matched
+     * children that differ are compared after them, by which time they are at their final positions, so they are
+     * pushed onto the stack of pairs to compare with the first one on top.
+     * @param from the container the operations are applied to
+     * @param to the container the operations turn it into
+     * @param path child indices leading from the root to the containers
+     * @param ops operations found so far
+     * @param pending pairs of containers still to compare, each with its path, the next one on top
+     */
+    private static void compareChildren(FXTreeNode from, FXTreeNode to, int[] path, ArrayList<Op> ops,
+            ArrayDeque<Object[]> pending) {
+        int n = from.numChildren();
+        int m = to.numChildren();
+        int start = 0;
+        while (start < n && start < m && from.getChild(start).sameSubtree(to.getChild(start))) {
+            start++;
+        }
+        int end = 0;
+        while (end < n - start && end < m - start
+                && from.getChild(n - 1 - end).sameSubtree(to.getChild(m - 1 - end))) {
+            end++;
+        }
+        int oldCount = n - start - end;
+        int newCount = m - start - end;
+        int[] oldMatch = new int[oldCount]; //index within the middle of to of the child matched with each old child
+        int[] newMatch = new int[newCount]; //index within the middle of from of the child matched with each new child
+        boolean[] same = new boolean[newCount]; //whether each new child was matched with an equal subtree
+        Arrays.fill(oldMatch, -1);
+        Arrays.fill(newMatch, -1);
+
+        HashMap<Long, ArrayDeque<Integer>> byHash = new HashMap<>();
+        for (int i = 0; i < oldCount; i++) {
+            byHash.computeIfAbsent(from.getChild(start + i).hash(), h -> new ArrayDeque<>()).add(i);
+        }
+        for (int j = 0; j < newCount; j++) {
+            ArrayDeque<Integer> candidates = byHash.get(to.getChild(start + j).hash());
+            if (candidates != null && !candidates.isEmpty()) {
+                int i = candidates.poll();
+                oldMatch[i] = j;
+                newMatch[j] = i;
+                same[j] = true;
+            }
+        }
+        matchGaps(from, to, start, oldMatch, newMatch);
+
+        for (int i = oldCount - 1; i >= 0; i--) {
+            if (oldMatch[i] < 0) {
+                ops.add(new Op(Kind.DELETE, path, start + i, -1, null, null));
+            }
+        }
+        addMoves(oldMatch, newMatch, path, start, ops);
+        for (int j = 0; j < newCount; j++) {
+            if (newMatch[j] < 0) {
+                ops.add(new Op(Kind.ADD, path, start + j, -1, PersistentTree.copy(to.getChild(start + j)), null));
+            }
+        }
+        ArrayList<Object[]> differing = new ArrayList<>(); //matched containers that differ, in order
+        for (int j = 0; j < newCount; j++) {
+            if (newMatch[j] >= 0 && !same[j]) {
+                FXTreeNode oldChild = from.getChild(start + newMatch[j]);
+                FXTreeNode newChild = to.getChild(start + j);
+                if (!newChild.getType().isContainer()) {
+                    if (!Objects.equals(oldChild.getText(), newChild.getText())) {
+                        ops.add(new Op(Kind.TEXT, path, start + j, -1, null, newChild.getText()));
+                    }
+                }
+                else {
+                    int[] childPath = Arrays.copyOf(path, path.length + 1);
+                    childPath[path.length] = start + j;
+                    differing.add(new Object[] {oldChild, newChild, childPath});
+                }
+            }
+        }
+        for (int i = differing.size() - 1; i >= 0; i--) {
+            pending.push(differing.get(i));
+        }
+    }
+
+    /**
+     * Matches the children left over after matching by hash, by type. The hash-matched children in the longest run
+     * whose old order is already the new order are anchors, and an old child is only matched with a new one in the
+     * same gap between two consecutive anchors. Within a gap the children are aligned by the heaviest common
+     * subsequence of their types, where a pair of containers weighs more the more child hashes they share, so that a
+     * changed container is paired with its old self rather than with a deleted neighbour of the same type. A gap of
+     * more than SCORE_LIMIT pairs is aligned by the longest common subsequence of types alone, and one of more than
+     * ALIGN_LIMIT pairs by order alone, each old child being matched with the new child at the same place among the
+     * leftovers if their types are the same.
+     * @param from the container the operations are applied to
+     * @param to the container the operations turn it into
+     * @param offset index within the containers of the first child considered
+     * @param oldMatch index within the new children of the child matched with each old child, or -1
+     * @param newMatch index within the old children of the child matched with each new child, or -1
+     */
+    private static void matchGaps(FXTreeNode from, FXTreeNode to, int offset, int[] oldMatch, int[] newMatch) {
+        int k = 0;
+        for (int j = 0; j < newMatch.length; j++) {
+            if (newMatch[j] >= 0) {
+                k++;
+            }
+        }
+        int[] matched = new int[k]; //new index of each hash-matched child, in new order
+        int[] oldOrder = new int[k]; //old index of each of them
+        k = 0;
+        for (int j = 0; j < newMatch.length; j++) {
+            if (newMatch[j] >= 0) {
+                matched[k] = j;
+                oldOrder[k++] = newMatch[j];
+            }
+        }
+        boolean[] anchor = longestIncreasing(oldOrder);
+        int oldFrom = 0;
+        int newFrom = 0;
+        for (int r = 0; r <= k; r++) {
+            if (r < k && !anchor[r]) {
+                continue;
+            }
+            int oldTo = r < k ? oldOrder[r] : oldMatch.length;
+            int newTo = r < k ? matched[r] : newMatch.length;
+            alignGap(from, to, offset, oldMatch, newMatch, oldFrom, oldTo, newFrom, newTo);
+            oldFrom = oldTo + 1;
+            newFrom = newTo + 1;
+        }
+    }
+
+    /**
+     * Matches by type the unmatched old and new children of one gap between anchors
+     * @param from the container the operations are applied to
+     * @param to the container the operations turn it into
+     * @param offset index within the containers of the first child considered
+     * @param oldMatch index within the new children of the child matched with each old child, or -1
+     * @param newMatch index within the old children of the child matched with each new child, or -1
+     * @param oldFrom first old index of the gap
+     * @param oldTo old index after the gap
+     * @param newFrom first new index of the gap
+     * @param newTo new index after the gap
+     */
+    private static void alignGap(FXTreeNode from, FXTreeNode to, int offset, int[] oldMatch, int[] newMatch,
+            int oldFrom, int oldTo, int newFrom, int newTo) {
+        int[] olds = unmatched(oldMatch, oldFrom, oldTo);
+        int[] news = unmatched(newMatch, newFrom, newTo);
+        if (olds.length == 0 || news.length == 0) {
+            return;
+        }
+        ComponentType[] oldTypes = new ComponentType[olds.length];
+        for (int a = 0; a < olds.length; a++) {
+            oldTypes[a] = from.getChild(offset + olds[a]).getType();
+        }
+        ComponentType[] newTypes = new ComponentType[news.length];
+        for (int b = 0; b < news.length; b++) {
+            newTypes[b] = to.getChild(offset + news[b]).getType();
+        }
+        if ((long) olds.length * news.length > ALIGN_LIMIT) {
+            for (int c = 0; c < olds.length && c < news.length; c++) {
+                if (oldTypes[c] == newTypes[c]) {
+                    oldMatch[olds[c]] = news[c];
+                    newMatch[news[c]] = olds[c];
+                }
+            }
+            return;
+        }
+        int[][] shared = (long) olds.length * news.length > SCORE_LIMIT ? null
+                : sharedChildren(from, to, offset, olds, news, oldTypes, newTypes);
+        int[][] best = new int[olds.length + 1][news.length + 1]; //weight of the best alignment of the suffixes
+        for (int a = olds.length - 1; a >= 0; a--) {
+            for (int b = news.length - 1; b >= 0; b--) {
+                best[a][b] = Math.max(best[a + 1][b], best[a][b + 1]);
+                if (oldTypes[a] == newTypes[b]) {
+                    int weight = 1 + (shared == null ? 0 : shared[a][b]);
+                    best[a][b] = Math.max(best[a][b], best[a + 1][b + 1] + weight);
+                }
+            }
+        }
+        for (int a = 0, b = 0; a < olds.length && b < news.length; ) {
+            if (oldTypes[a] == newTypes[b]
+                    && best[a][b] == best[a + 1][b + 1] + 1 + (shared == null ? 0 : shared[a][b])) {
+                oldMatch[olds[a]] = news[b];
+                newMatch[news[b]] = olds[a];
+                a++;
+                b++;
+            }
+            else if (best[a + 1][b] >= best[a][b + 1]) {
+                a++;
+            }
+            else {
+                b++;
+            }
+        }
+    }
+
+    /**
+     * Counts, for each pair of old and new containers of the same type in a gap, the hashes of the new container's
+     * children that are also hashes of the old one's. Containers whose children were never read count as sharing
+     * none, so that deleted subtrees of a lazily loaded tree are not read to be scored.
+     * @param from the container the operations are applied to
+     * @param to the container the operations turn it into
+     * @param offset index within the containers of the first child considered
+     * @param olds indices of the unmatched old children of the gap
+     * @param news indices of the unmatched new children of the gap
+     * @param oldTypes type of each unmatched old child
+     * @param newTypes type of each unmatched new child
+     * @return the number of shared child hashes of each pair, by old and new place among the unmatched children
+     */
+    private static int[][] sharedChildren(FXTreeNode from, FXTreeNode to, int offset, int[] olds, int[] news,
+            ComponentType[] oldTypes, ComponentType[] newTypes) {
+        ArrayList<HashSet<Long>> oldHashes = new ArrayList<>(olds.length); //child hashes of each old container
+        for (int a = 0; a < olds.length; a++) {
+            oldHashes.add(childHashes(from.getChild(offset + olds[a])));
+        }
+        ArrayList<HashSet<Long>> newHashes = new ArrayList<>(news.length); //child hashes of each new container
+        for (int b = 0; b < news.length; b++) {
+            newHashes.add(childHashes(to.getChild(offset + news[b])));
+        }
+        int[][] shared = new int[olds.length][news.length];
+        for (int a = 0; a < olds.length; a++) {
+            for (int b = 0; b < news.length; b++) {
+                if (oldTypes[a] == newTypes[b] && oldHashes.get(a) != null && newHashes.get(b) != null) {
+                    for (Long hash : newHashes.get(b)) {
+                        if (oldHashes.get(a).contains(hash)) {
+                            shared[a][b]++;
+                        }
+                    }
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Collects the hashes of the children of a container
+     * @param node the node
+     * @return the distinct hashes of its children, or null if it is a control or its children were never read
+     */
+    private static HashSet<Long> childHashes(FXTreeNode node) {
+        if (!node.getType().isContainer() || node.getSource() != null) {
+            return null;
+        }
+        HashSet<Long> hashes = new HashSet<>();
+        for (int i = 0; i < node.numChildren(); i++) {
+            hashes.add(node.getChild(i).hash());
+        }
+        return hashes;
+    }
+
+    /**
+     * Lists the unmatched children within a range
+     * @param match index of the child matched with each child, or -1
+     * @param from first index of the range
+     * @param to index after the range
+     * @return the indices of the unmatched children, in order
+     */
+    private static int[] unmatched(int[] match, int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (match[i] < 0) {
+                count++;
+            }
+        }
+        int[] indices = new int[count];
+        count = 0;
+        for (int i = from; i < to; i++) {
+            if (match[i] < 0) {
+                indices[count++] = i;
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * Adds the fewest moves that put the matched children of a container in their new order, once the unmatched old
+     * children are deleted. The children in the longest run whose old order is already the new order stay, and each
+     * other child, taken in new order, is moved to just after the child that comes before it in the new order. The
+     * index each move takes a child from and puts it at is found with a Fenwick tree over the slots the children pass
+     * through, so that a container with many moved children is still handled in O(k log k) time.
+     * @param oldMatch index within the new children of the child matched with each old child, or -1
+     * @param newMatch index within the old children of the child matched with each new child, or -1
+     * @param path child indices leading from the root to the container
+     * @param offset index within the container of the first child considered
+     * @param ops operations found so far
+     */
+    private static void addMoves(int[] oldMatch, int[] newMatch, int[] path, int offset, ArrayList<Op> ops) {
+        int[] oldRank = new int[oldMatch.length]; //position of each matched old child among the matched ones
+        int k = 0;
+        for (int i = 0; i < oldMatch.length; i++) {
+            if (oldMatch[i] >= 0) {
+                oldRank[i] = k++;
+            }
+        }
+        int[] oldSlot = new int[k]; //position in old order of the child at each position in new order
+        int r = 0;
+        for (int j = 0; j < newMatch.length; j++) {
+            if (newMatch[j] >= 0) {
+                oldSlot[r++] = oldRank[newMatch[j]];
+            }
+        }
+        boolean[] stays = longestIncreasing(oldSlot);
+
+        //slots 0 to k-1 hold the children in old order, slot k+r is where the child at r in new order is moved to
+        int head = 2 * k;
+        int[] next = new int[2 * k + 1];
+        for (int s = 0; s < k; s++) {
+            next[s] = s + 1 < k ? s + 1 : -1;
+        }
+        next[head] = k > 0 ? 0 : -1;
+        for (r = 0; r < k; r++) {
+            if (!stays[r]) {
+                int after = r == 0 ? head : stays[r - 1] ? oldSlot[r - 1] : k + r - 1;
+                next[k + r] = next[after];
+                next[after] = k + r;
+            }
+        }
+        int[] order = new int[2 * k];
+        int position = 0;
+        for (int s = next[head]; s >= 0; s = next[s]) {
+            order[s] = position++;
+        }
+        int[] tree = new int[position + 1];
+        for (int s = 0; s < k; s++) {
+            for (int x = order[s] + 1; x <= position; x += x & -x) {
+                tree[x]++;
+            }
+        }
+        for (r = 0; r < k; r++) {
+            if (!stays[r]) {
+                int from = countBefore(tree, order[oldSlot[r]]);
+                for (int x = order[oldSlot[r]] + 1; x <= position; x += x & -x) {
+                    tree[x]--;
+                }
+                int to = countBefore(tree, order[k + r]);
+                for (int x = order[k + r] + 1; x <= position; x += x & -x) {
+                    tree[x]++;
+                }
+                if (from != to) {
+                    ops.add(new Op(Kind.MOVE, path, offset + from, offset + to, null, null));
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts the occupied slots before a slot in a Fenwick tree
+     * @param tree the Fenwick tree, with 1 at each occupied slot
+     * @param slot the slot
+     * @return the number of occupied slots before it
+     */
+    private static int countBefore(int[] tree, int slot) {
+        int count = 0;
+        for (int x = slot; x > 0; x -= x & -x) {
+            count += tree[x];
+        }
+        return count;
+    }
+
+    /**
+     * Finds a longest increasing subsequence of distinct values
+     * @param values the values
+     * @return whether each value is in the subsequence
+     */
+    private static boolean[] longestIncreasing(int[] values) {
+        int[] tails = new int[values.length]; //index of the last value of the best run of each length found so far
+        int[] previous = new int[values.length]; //index of the value before each one in its best run
+        int length = 0;
+        for (int i = 0; i < values.length; i++) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values[tails[mid]] < values[i]) {
+                    low = mid + 1;
+                }
+                else {
+                    high = mid;
+                }
+            }
+            previous[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+        boolean[] in = new boolean[values.length];
+        for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = previous[i]) {
+            in[i] = true;
+        }
+        return in;
+    }
+
+    /**
+     * Reads an edit script from a file
+     * @param filename name of the file to read
+     * @return the edit script
+     * @throws IOException if the file cannot be found or read
+     * @throws MalformedTreeFileException if a line is not an operation
+     */
+    public static TreeDiff readFromFile(String filename) throws IOException, MalformedTreeFileException {
+        try (Reader reader = new InputStreamReader(new FileInputStream(filename), StandardCharsets.UTF_8)) {
+            return parse(reader);
+        }
+    }
+
+    /**
+     * Reads an edit script in the notation written by writeToFile, skipping blank lines
+     * @param reader reader supplying the lines of the script
+     * @return the edit script
+     * @throws IOException if the script cannot be read
+     * @throws MalformedTreeFileException if a line is not an operation
+     */
+    public static TreeDiff parse(Reader reader) throws IOException, MalformedTreeFileException {
+        BufferedReader in = new BufferedReader(reader);
+        ArrayList<Op> ops = new ArrayList<>();
+        String line;
+        int lineNumber = 0;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            if (line.length() < 3 || line.charAt(1) != ' ') {
+                throw new MalformedTreeFileException(lineNumber, "expected an operation and a position");
+            }
+            char kind = line.charAt(0);
+            int space = line.indexOf(' ', 2);
+            String rest = space < 0 ? "" : line.substring(space + 1);
+            int[] indices = PersistentTree.parsePath(space < 0 ? line.substring(2) : line.substring(2, space));
+            if (indices == null || indices.length == 0) {
+                throw new MalformedTreeFileException(lineNumber, "invalid position");
+            }
+            int[] path = Arrays.copyOf(indices, indices.length - 1);
+            int index = indices[indices.length - 1];
+            if (kind == '+') {
+                int typeEnd = rest.indexOf(' ');
+                String name = typeEnd < 0 ? rest : rest.substring(0, typeEnd);
+                ComponentType type = ComponentType.fromName(name);
+                if (type == null) {
+                    throw new MalformedTreeFileException(lineNumber, "unknown component type '" + name + "'");
+                }
+                String text = typeEnd < 0 ? "" : rest.substring(typeEnd + 1);
+                ops.add(new Op(Kind.ADD, path, index, -1, PersistentTree.node(type, text), null));
+            }
+            else if (kind == '-' && space < 0) {
+                ops.add(new Op(Kind.DELETE, path, index, -1, null, null));
+            }
+            else if (kind == '>' && space >= 0) {
+                int[] target = PersistentTree.parsePath(rest);
+                if (target == null || target.length != indices.length
+                        || !Arrays.equals(target, 0, path.length, indices, 0, path.length)) {
+                    throw new MalformedTreeFileException(lineNumber, "a node can only be moved within its container");
+                }
+                ops.add(new Op(Kind.MOVE, path, index, target[path.length], null, null));
+            }
+            else if (kind == '~' && space >= 0) {
+                ops.add(new Op(Kind.TEXT, path, index, -1, null, rest));
+            }
+            else {
+                throw new MalformedTreeFileException(lineNumber, "unknown operation '" + line + "'");
+            }
+        }
+        return new TreeDiff(ops);
+    }
+
+    /**
+     * Writes the edit script to a file, one line per operation and one line per added node
+     * @param filename name of the file to write the script in
+     * @throws IOException if the file cannot be written
+     */
+    public void writeToFile(String filename) throws IOException {
+        try (PrintWriter pw = new PrintWriter(filename, StandardCharsets.UTF_8)) {
+            print(pw);
+            if (pw.checkError()) {
+                throw new IOException(filename + " could not be written");
+            }
+        }
+    }
+
+    /**
+     * Prints the edit script, one line per operation and one line per added node
+     * @param pw the PrintWriter to print to
+     */
+    public void print(PrintWriter pw) {
+        for (Op op : ops) {
+            op.print(pw);
+        }
+    }
+
+    /**
+     * Getter method for the operations of the script
+     * @return the operations, in the order they are applied
+     */
+    public List<Op> getOps() {
+        return Collections.unmodifiableList(ops);
+    }
+
+    /**
+     * Finds the number of operations of the script, counting an added container with its children as one
+     * @return the number of operations
+     */
+    public int size() {
+        return ops.size();
+    }
+
+    /**
+     * Finds whether the script is empty, which it is when the trees compared are the same
+     * @return true if the script has no operations
+     */
+    public boolean isEmpty() {
+        return ops.isEmpty();
+    }
+
+    /**
+     * Provides the edit script in its written notation
+     * @return the lines of the script
+     */
+    public String toString() {
+        StringWriter sw = new StringWriter();
+        PrintWriter pw = new PrintWriter(sw);
+        print(pw);
+        pw.flush();
+        return sw.toString();
+    }
+}
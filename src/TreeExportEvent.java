@@ -0,0 +1,28 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event of a tree being saved as a text file or exported as FXML. It is recorded only while a recording
+ * with the fxgui.TreeExport event enabled is running, and costs next to nothing otherwise.
+ */
+@Name("fxgui.TreeExport")
+@Label("Tree Export")
+@Category("FX GUI Maker")
+@Description("A tree saved or exported to a file")
+public class TreeExportEvent extends jdk.jfr.Event {
+    @Label("File")
+    String file; //name of the file written
+
+    @Label("Format")
+    String format; //txt, fxml or fxtree
+
+    @Label("Nodes")
+    long nodes; //number of nodes written, not counting the root
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes; //size of the file written
+}
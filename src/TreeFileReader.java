@@ -0,0 +1,232 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads the nodes of a tree text file one line at a time, in the order they are listed. Each line holds a node's
+ * position (such as 0-0-2-3), its component type and, for controls, its text. Since the nodes are listed in pre-order,
+ * only the positions of the currently open ancestors are kept, so each line is checked against its parent in a single
+ * pass over its characters.
+ */
+public class TreeFileReader implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16; //size of the character buffer used to read the file
+
+    private final BufferedReader in; //reader the lines are taken from
+    private int lineNumber; //number of the last line read
+    private boolean rootSeen; //whether the root line or the first node has been read
+    private int openDepth; //depth of the most recently read node
+    private int[] openPath = new int[16]; //index of each open ancestor within its parent, by depth
+    private int[] openChildren = new int[16]; //number of children read so far for each open ancestor, by depth
+    private boolean[] openContainer = new boolean[16]; //whether each open ancestor can have children, by depth
+    private int[] segments = new int[16]; //indices parsed from the position of the current line
+
+    private int depth; //depth of the current node, where the root is at depth 0
+    private ComponentType type; //component type of the current node
+    private String text; //text of the current node, or null for containers
+
+    /**
+     * Creates a reader over the lines of a tree text file
+     * @param filename name of the file to read
+     * @throws FileNotFoundException if a file with the specified name is not found
+     */
+    public TreeFileReader(String filename) throws FileNotFoundException {
+        this(new InputStreamReader(new FileInputStream(filename), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Creates a reader over the lines of a tree in text form
+     * @param reader reader supplying the lines
+     */
+    public TreeFileReader(Reader reader) {
+        in = new BufferedReader(reader, BUFFER_SIZE);
+        openContainer[0] = true;
+    }
+
+    /**
+     * Advances to the next node below the root. A leading root line (0 AnchorPane) is checked and skipped.
+     * @return true if a node was read, false at the end of the file
+     * @throws IOException if the file cannot be read
+     * @throws MalformedTreeFileException if a line does not describe a valid next node of the tree
+     */
+    public boolean next() throws IOException, MalformedTreeFileException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            int end = line.length();
+            if (end > 0 && line.charAt(end - 1) == '\r') {
+                end--;
+            }
+            if (end == 0) {
+                continue;
+            }
+            if (parseLine(line, end)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses a non-empty line and checks it against the open ancestors
+     * @param line the line to parse
+     * @param end index after the last character of the line to consider
+     * @return true if the line is a node below the root, false if it was the root line
+     * @throws MalformedTreeFileException if the line does not describe a valid next node of the tree
+     */
+    private boolean parseLine(String line, int end) throws MalformedTreeFileException {
+        int pos = 0;
+        int count = 0;
+        while (true) {
+            int value = 0;
+            int start = pos;
+            while (pos < end && line.charAt(pos) >= '0' && line.charAt(pos) <= '9') {
+                int digit = line.charAt(pos) - '0';
+                if (value > (FXTreeNode.maxChildren - digit) / 10) {
+                    throw malformed("index too large in position"); //checked before value * 10 + digit can overflow
+                }
+                value = value * 10 + digit;
+                pos++;
+            }
+            if (pos == start) {
+                throw malformed("invalid position");
+            }
+            if (count == segments.length) {
+                segments = Arrays.copyOf(segments, count * 2);
+            }
+            segments[count++] = value;
+            if (pos < end && line.charAt(pos) == '-') {
+                pos++;
+            }
+            else {
+                break;
+            }
+        }
+        if (pos == end || line.charAt(pos) != ' ') {
+            throw malformed("expected a space after the position");
+        }
+        int typeStart = ++pos;
+        while (pos < end && line.charAt(pos) != ' ') {
+            pos++;
+        }
+        ComponentType parsed = parseType(line.substring(typeStart, pos));
+        String parsedText = pos < end ? line.substring(pos + 1, end) : "";
+
+        if (segments[0] != 0) {
+            throw malformed("position must start at the root 0");
+        }
+        int lineDepth = count - 1;
+        if (lineDepth == 0) {
+            if (rootSeen) {
+                throw malformed("root is listed more than once");
+            }
+            if (parsed != ComponentType.AnchorPane) {
+                throw malformed("root must be an AnchorPane");
+            }
+            rootSeen = true;
+            return false;
+        }
+        rootSeen = true;
+        if (lineDepth > openDepth + 1) {
+            throw malformed("parent of this node has not been listed");
+        }
+        for (int d = 1; d < lineDepth; d++) {
+            if (segments[d] != openPath[d]) {
+                throw malformed("parent of this node has not been listed");
+            }
+        }
+        int parentDepth = lineDepth - 1;
+        if (!openContainer[parentDepth]) {
+            throw malformed("parent of this node is a control");
+        }
+        if (segments[lineDepth] != openChildren[parentDepth]) {
+            throw malformed("expected child index " + openChildren[parentDepth] + " but found "
+                    + segments[lineDepth]);
+        }
+        boolean container = parsed.isContainer();
+        if (lineDepth == openPath.length) {
+            int capacity = lineDepth * 2;
+            openPath = Arrays.copyOf(openPath, capacity);
+            openChildren = Arrays.copyOf(openChildren, capacity);
+            openContainer = Arrays.copyOf(openContainer, capacity);
+        }
+        openChildren[parentDepth]++;
+        openPath[lineDepth] = segments[lineDepth];
+        openChildren[lineDepth] = 0;
+        openContainer[lineDepth] = container;
+        openDepth = lineDepth;
+
+        depth = lineDepth;
+        type = parsed;
+        text = container ? null : parsedText;
+        return true;
+    }
+
+    /**
+     * Finds the component type named in a line
+     * @param name the name of the component type
+     * @return the matching component type
+     * @throws MalformedTreeFileException if no component type has that name
+     */
+    private ComponentType parseType(String name) throws MalformedTreeFileException {
+        ComponentType type = ComponentType.fromName(name);
+        if (type == null) {
+            throw malformed("unknown component type '" + name + "'");
+        }
+        return type;
+    }
+
+    /**
+     * Creates an exception for the current line
+     * @param message description of the problem
+     * @return an exception carrying the current line number
+     */
+    private MalformedTreeFileException malformed(String message) {
+        return new MalformedTreeFileException(lineNumber, message);
+    }
+
+    /**
+     * Getter method for the depth of the current node
+     * @return the depth of the current node, which is at least 1 since the root is skipped
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Getter method for the component type of the current node
+     * @return the component type of the current node
+     */
+    public ComponentType getType() {
+        return type;
+    }
+
+    /**
+     * Getter method for the text of the current node
+     * @return the text of the current node, or null if it is a container
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Getter method for the line the current node was read from
+     * @return the 1-based line number of the current node
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Closes the underlying file
+     * @throws IOException if the file cannot be closed
+     */
+    public void close() throws IOException {
+        in.close();
+    }
+}
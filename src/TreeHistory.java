@@ -0,0 +1,395 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Keeps the recent versions of an FXComponentTree along with the edit that made each of them, so that edits can be
+ * undone and redone and any retained version can be exported. Versions are numbered from 0 for the tree as loaded,
+ * and only the most recent ones up to a limit are retained. Since versions share their unchanged subtrees, each one
+ * costs only the nodes its edit copied. A history can also start with its edits alone, which is all undo and redo
+ * need, and be given its versions later on, when the current version is first needed.
+ */
+public class TreeHistory {
+    public static final int DEFAULT_LIMIT = 100; //number of versions retained besides the current one by default
+
+    private final int limit; //number of versions retained besides the current one
+    private final ArrayList<PersistentTree> versions = new ArrayList<>(); //retained versions, oldest first, or nulls
+    private final ArrayList<Edit> edits = new ArrayList<>(); //edit that made each retained version, or null
+    private int first; //number of the oldest retained version
+    private int current; //index of the current version within versions
+
+    /**
+     * The kind of an edit
+     */
+    public enum Kind {
+        ADD, DELETE, TEXT
+    }
+
+    /**
+     * An edit that turned one version of a tree into the next. Every edit is located by the position of a container
+     * and the index of one of its children: the child added, the child deleted or the control whose text changed. A
+     * child deleted while the history keeps no versions is kept as the mutable node taken out of the tree, and only
+     * copied into an immutable node once a version or an undo needs it.
+     */
+    public static final class Edit {
+        private final Kind kind; //kind of the edit
+        private final int[] path; //child indices leading from the root to the container
+        private final int index; //index of the child within the container
+        private PersistentTree.Node node; //the child added or deleted, or null for text edits and uncopied children
+        private FXTreeNode detached; //the child deleted, until it is copied into node
+        private final String oldText; //text of the control before a text edit
+        private final String newText; //text of the control after a text edit
+
+        /**
+         * Creates an edit
+         * @param kind kind of the edit
+         * @param path child indices leading from the root to the container
+         * @param index index of the child within the container
+         * @param node the child added or deleted, or null for text edits
+         * @param oldText text of the control before a text edit
+         * @param newText text of the control after a text edit
+         */
+        private Edit(Kind kind, int[] path, int index, PersistentTree.Node node, String oldText, String newText) {
+            this.kind = kind;
+            this.path = path;
+            this.index = index;
+            this.node = node;
+            this.oldText = oldText;
+            this.newText = newText;
+        }
+
+        /**
+         * Creates an edit adding a child
+         * @param path child indices leading from the root to the container
+         * @param index index the child was added at
+         * @param node the child added
+         * @return the edit
+         */
+        public static Edit add(int[] path, int index, PersistentTree.Node node) {
+            return new Edit(Kind.ADD, path, index, node, null, null);
+        }
+
+        /**
+         * Creates an edit deleting a child
+         * @param path child indices leading from the root to the container
+         * @param index index the child was deleted from
+         * @param node the child deleted
+         * @return the edit
+         */
+        public static Edit delete(int[] path, int index, PersistentTree.Node node) {
+            return new Edit(Kind.DELETE, path, index, node, null, null);
+        }
+
+        /**
+         * Creates an edit deleting a child that is copied only when it is first needed
+         * @param path child indices leading from the root to the container
+         * @param index index the child was deleted from
+         * @param detached the child deleted, which must no longer be in the tree and must not be changed
+         * @return the edit
+         */
+        public static Edit delete(int[] path, int index, FXTreeNode detached) {
+            Edit edit = new Edit(Kind.DELETE, path, index, null, null, null);
+            edit.detached = detached;
+            return edit;
+        }
+
+        /**
+         * Creates an edit changing the text of a control
+         * @param path child indices leading from the root to the control's parent
+         * @param index index of the control within its parent
+         * @param oldText text of the control before the edit
+         * @param newText text of the control after the edit
+         * @return the edit
+         */
+        public static Edit text(int[] path, int index, String oldText, String newText) {
+            return new Edit(Kind.TEXT, path, index, null, oldText, newText);
+        }
+
+        /**
+         * Applies the edit to a version
+         * @param version the version the edit was made on
+         * @return the version made by the edit
+         * @throws InvalidIndexException if the edit does not fit the version
+         * @throws IndexOutOfBoundsException if the edit does not fit the version
+         */
+        public PersistentTree applyTo(PersistentTree version) throws InvalidIndexException, IndexOutOfBoundsException {
+            if (kind == Kind.ADD) {
+                return version.addChild(path, index, getNode());
+            }
+            else if (kind == Kind.DELETE) {
+                return version.deleteChild(path, index);
+            }
+            else {
+                int[] target = Arrays.copyOf(path, path.length + 1);
+                target[path.length] = index;
+                return version.setText(target, newText);
+            }
+        }
+
+        /**
+         * Reverts the edit from the version it made
+         * @param version the version the edit made
+         * @return the version the edit was made on
+         * @throws InvalidIndexException if the edit does not fit the version
+         * @throws IndexOutOfBoundsException if the edit does not fit the version
+         */
+        public PersistentTree revertFrom(PersistentTree version) throws InvalidIndexException,
+                IndexOutOfBoundsException {
+            if (kind == Kind.ADD) {
+                return version.deleteChild(path, index);
+            }
+            else if (kind == Kind.DELETE) {
+                return version.addChild(path, index, getNode());
+            }
+            else {
+                int[] target = Arrays.copyOf(path, path.length + 1);
+                target[path.length] = index;
+                return version.setText(target, oldText);
+            }
+        }
+
+        /**
+         * Getter method for the kind of the edit
+         * @return the kind of the edit
+         */
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * Getter method for the position of the container the edit was made in
+         * @return child indices leading from the root to the container, which must not be modified
+         */
+        public int[] getPath() {
+            return path;
+        }
+
+        /**
+         * Getter method for the index of the child the edit was made on
+         * @return index of the child within the container
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Getter method for the child added or deleted, copying a deleted child the first time it is needed
+         * @return the child, or null for text edits
+         */
+        public PersistentTree.Node getNode() {
+            if (detached != null) {
+                node = PersistentTree.copy(detached);
+                detached = null;
+            }
+            return node;
+        }
+
+        /**
+         * Getter method for the text of the control before a text edit
+         * @return the old text, or null for other edits
+         */
+        public String getOldText() {
+            return oldText;
+        }
+
+        /**
+         * Getter method for the text of the control after a text edit
+         * @return the new text, or null for other edits
+         */
+        public String getNewText() {
+            return newText;
+        }
+
+        /**
+         * Provides a description of the edit
+         * @return a description of the edit and the position it was made at
+         */
+        public String toString() {
+            String position = PersistentTree.formatPath(path) + "-" + index;
+            if (kind == Kind.ADD) {
+                return "Add " + node + " at " + position;
+            }
+            else if (kind == Kind.DELETE) {
+                return "Delete " + (detached != null ? detached : node) + " at " + position;
+            }
+            else {
+                return "Edit text at " + position + " to " + newText;
+            }
+        }
+    }
+
+    /**
+     * Creates a history of edits without versions, retaining the default number of edits
+     */
+    public TreeHistory() {
+        this(null, DEFAULT_LIMIT);
+    }
+
+    /**
+     * Creates a history starting from a version, retaining the default number of versions
+     * @param base the version the history starts from
+     */
+    public TreeHistory(PersistentTree base) {
+        this(base, DEFAULT_LIMIT);
+    }
+
+    /**
+     * Creates a history starting from a version
+     * @param base the version the history starts from, or null to keep the edits without versions
+     * @param limit number of versions to retain besides the current one
+     */
+    public TreeHistory(PersistentTree base, int limit) {
+        this.limit = limit;
+        versions.add(base);
+        edits.add(null);
+    }
+
+    /**
+     * Finds whether the history keeps its versions, rather than only the edits between them
+     * @return true if the versions are kept
+     */
+    public boolean hasVersions() {
+        return versions.get(current) != null;
+    }
+
+    /**
+     * Gives a history of edits its versions, starting from the current version and reverting the retained edits one
+     * after another, then applying the undone ones again. Each version costs only the nodes its edit copies.
+     * @param version the current version
+     * @throws InvalidIndexException if an edit does not fit the versions
+     * @throws IndexOutOfBoundsException if an edit does not fit the versions
+     */
+    public void addVersions(PersistentTree version) throws InvalidIndexException, IndexOutOfBoundsException {
+        PersistentTree[] made = new PersistentTree[versions.size()];
+        made[current] = version;
+        for (int i = current; i > 0; i--) {
+            made[i - 1] = edits.get(i).revertFrom(made[i]);
+        }
+        for (int i = current + 1; i < made.length; i++) {
+            made[i] = edits.get(i).applyTo(made[i - 1]);
+        }
+        for (int i = 0; i < made.length; i++) {
+            versions.set(i, made[i]);
+        }
+    }
+
+    /**
+     * Adds an edit of the current version, along with the version it made if the history keeps its versions
+     * @param edit the edit made
+     * @throws InvalidIndexException if the edit does not fit the current version
+     * @throws IndexOutOfBoundsException if the edit does not fit the current version
+     */
+    public void record(Edit edit) throws InvalidIndexException, IndexOutOfBoundsException {
+        record(edit, hasVersions() ? edit.applyTo(getCurrent()) : null);
+    }
+
+    /**
+     * Adds the version made by an edit of the current version, dropping any undone versions and the oldest version
+     * once more than the limit are retained
+     * @param edit the edit made
+     * @param version the version the edit made, or null if the history keeps no versions
+     */
+    public void record(Edit edit, PersistentTree version) {
+        for (int i = versions.size() - 1; i > current; i--) {
+            versions.remove(i);
+            edits.remove(i);
+        }
+        versions.add(version);
+        edits.add(edit);
+        current++;
+        if (versions.size() > limit + 1) {
+            versions.remove(0);
+            edits.remove(0);
+            edits.set(0, null);
+            first++;
+            current--;
+        }
+    }
+
+    /**
+     * Finds whether there is an edit to undo
+     * @return true if the current version was made by a retained edit
+     */
+    public boolean canUndo() {
+        return current > 0;
+    }
+
+    /**
+     * Finds whether there is an undone edit to redo
+     * @return true if a later version is retained
+     */
+    public boolean canRedo() {
+        return current < versions.size() - 1;
+    }
+
+    /**
+     * Goes back to the previous version
+     * @return the edit that made the version that was current, which is to be reverted
+     */
+    public Edit undo() {
+        return edits.get(current--);
+    }
+
+    /**
+     * Goes forward to the next version
+     * @return the edit that made the version that is now current, which is to be applied again
+     */
+    public Edit redo() {
+        return edits.get(++current);
+    }
+
+    /**
+     * Getter method for the current version
+     * @return the version matching the tree, or null if the history keeps no versions
+     */
+    public PersistentTree getCurrent() {
+        return versions.get(current);
+    }
+
+    /**
+     * Getter method for the number of the current version
+     * @return the number of the current version
+     */
+    public int getCurrentNumber() {
+        return first + current;
+    }
+
+    /**
+     * Getter method for the number of the oldest retained version
+     * @return the number of the oldest retained version
+     */
+    public int getFirstNumber() {
+        return first;
+    }
+
+    /**
+     * Getter method for the number of the latest retained version, which is later than the current one after an undo
+     * @return the number of the latest retained version
+     */
+    public int getLastNumber() {
+        return first + versions.size() - 1;
+    }
+
+    /**
+     * Getter method for a retained version
+     * @param number the number of the version
+     * @return the version, or null if it is not retained or the history keeps no versions
+     */
+    public PersistentTree getVersion(int number) {
+        if (number < first || number > getLastNumber()) {
+            return null;
+        }
+        return versions.get(number - first);
+    }
+
+    /**
+     * Getter method for the edit that made a retained version
+     * @param number the number of the version
+     * @return the edit, or null if the version is not retained or was not made by a retained edit
+     */
+    public Edit getEdit(int number) {
+        if (number < first || number > getLastNumber()) {
+            return null;
+        }
+        return edits.get(number - first);
+    }
+}
@@ -0,0 +1,31 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event of a tree being loaded from a text or FXML file. It is recorded only while a recording with the
+ * fxgui.TreeLoad event enabled is running, and costs next to nothing otherwise.
+ */
+@Name("fxgui.TreeLoad")
+@Label("Tree Load")
+@Category("FX GUI Maker")
+@Description("A tree loaded from a file")
+public class TreeLoadEvent extends jdk.jfr.Event {
+    @Label("File")
+    String file; //name of the file loaded
+
+    @Label("Format")
+    String format; //txt, fxml or fxtree
+
+    @Label("Nodes")
+    long nodes; //number of nodes loaded, not counting the root
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes; //size of the file loaded
+
+    @Label("Max Depth")
+    int maxDepth; //depth of the deepest node loaded
+}
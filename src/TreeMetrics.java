@@ -0,0 +1,299 @@
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counts and times the load, save, export and edit operations of all trees, along with the nodes and bytes they read
+ * and write. Measuring is off unless the fxgui.metrics system property is true or it is turned on with setEnabled, and
+ * while it is off each operation only reads one volatile flag. The counters are striped, so trees used by many threads
+ * at once, as by BulkConverter, do not contend on them.
+ */
+public class TreeMetrics implements TreeMetricsMBean {
+    public static final long NOT_TIMED = Long.MIN_VALUE; //start time of an operation that is not being measured
+    private static final int BUCKETS = 48; //latency histogram buckets, one per power of two nanoseconds
+    private static final TreeMetrics INSTANCE = new TreeMetrics();
+    private static volatile boolean enabled = Boolean.getBoolean("fxgui.metrics"); //whether operations are measured
+
+    private final Timer[] timers = new Timer[Operation.values().length]; //measurements of each operation
+    private final LongAdder nodesLoaded = new LongAdder(); //nodes loaded from files
+    private final LongAdder nodesWritten = new LongAdder(); //nodes saved or exported to files
+    private final LongAdder bytesRead = new LongAdder(); //bytes of the files loaded
+    private final LongAdder bytesWritten = new LongAdder(); //bytes of the files saved or exported
+    private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0); //depth of the deepest node loaded
+
+    /**
+     * An operation that is measured
+     */
+    public enum Operation {
+        READ_FILE("readFromFile"), READ_LAZY("readFromFileLazily"), READ_FXML("readFromFXMLFile"),
+        READ_BINARY("readFromBinaryFile"), WRITE_FILE("writeToFile"), WRITE_BINARY("writeToBinaryFile"),
+        EXPORT_FXML("exportToFXML"), ADD_CHILD("addChild"), DELETE_CHILD("deleteChild");
+
+        private final String method; //name of the method performing the operation
+
+        /**
+         * Creates an operation
+         * @param method name of the method performing the operation
+         */
+        Operation(String method) {
+            this.method = method;
+        }
+
+        /**
+         * Provides the name of the method performing the operation
+         * @return the method name
+         */
+        public String toString() {
+            return method;
+        }
+    }
+
+    /**
+     * The count, total and histogram of the times taken by one operation
+     */
+    private static final class Timer {
+        private final LongAdder count = new LongAdder(); //number of runs
+        private final LongAdder total = new LongAdder(); //total time of all runs, in nanoseconds
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0); //longest run, in nanoseconds
+        private final LongAdder[] buckets = new LongAdder[BUCKETS]; //runs by the power of two just above their time
+
+        /**
+         * Creates an empty timer
+         */
+        Timer() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * Adds a run
+         * @param nanos time taken by the run, in nanoseconds
+         */
+        void record(long nanos) {
+            count.increment();
+            total.add(nanos);
+            max.accumulate(nanos);
+            buckets[Math.min(64 - Long.numberOfLeadingZeros(nanos), BUCKETS - 1)].increment();
+        }
+
+        /**
+         * Finds the time within which a fraction of the runs finished, rounded up to a power of two nanoseconds
+         * @param fraction the fraction of runs, between 0 and 1
+         * @return the time in nanoseconds, or 0 if there were no runs
+         */
+        long percentile(double fraction) {
+            long[] counts = new long[BUCKETS];
+            long runs = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets[i].sum();
+                runs += counts[i];
+            }
+            long rank = (long) Math.ceil(fraction * runs);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(1L << i, max.get());
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Clears the timer
+         */
+        void reset() {
+            count.reset();
+            total.reset();
+            max.reset();
+            for (LongAdder bucket : buckets) {
+                bucket.reset();
+            }
+        }
+    }
+
+    /**
+     * Creates the measurements of all trees
+     */
+    private TreeMetrics() {
+        for (int i = 0; i < timers.length; i++) {
+            timers[i] = new Timer();
+        }
+    }
+
+    /**
+     * Getter method for the measurements of all trees
+     * @return the only TreeMetrics
+     */
+    public static TreeMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Finds whether operations are being measured
+     * @return true if measuring is on
+     */
+    public static boolean on() {
+        return enabled;
+    }
+
+    /**
+     * Marks the start of an operation
+     * @return the start time to pass to stop, or NOT_TIMED if measuring is off
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : NOT_TIMED;
+    }
+
+    /**
+     * Marks the end of an operation, recording the time it took
+     * @param operation the operation
+     * @param start the time returned by start when the operation began
+     */
+    public static void stop(Operation operation, long start) {
+        if (start != NOT_TIMED) {
+            INSTANCE.timers[operation.ordinal()].record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records the size of a loaded tree
+     * @param nodes number of nodes loaded, not counting the root
+     * @param bytes size of the file loaded
+     * @param depth depth of the deepest node loaded
+     */
+    public static void loaded(long nodes, long bytes, int depth) {
+        INSTANCE.nodesLoaded.add(nodes);
+        INSTANCE.bytesRead.add(bytes);
+        INSTANCE.maxDepth.accumulate(depth);
+    }
+
+    /**
+     * Records the size of a saved or exported tree
+     * @param nodes number of nodes written, not counting the root
+     * @param bytes size of the file written
+     */
+    public static void written(long nodes, long bytes) {
+        INSTANCE.nodesWritten.add(nodes);
+        INSTANCE.bytesWritten.add(bytes);
+    }
+
+    /**
+     * Registers the measurements with the platform MBean server as fxgui:type=TreeMetrics, unless already registered
+     */
+    public static void registerMBean() {
+        try {
+            ObjectName name = new ObjectName("fxgui:type=TreeMetrics");
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, name);
+            }
+        }
+        catch (JMException e) {
+            System.err.println("Metrics could not be registered: " + e.getMessage());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        TreeMetrics.enabled = enabled;
+    }
+
+    public String[] getOperations() {
+        String[] names = new String[timers.length];
+        for (Operation operation : Operation.values()) {
+            names[operation.ordinal()] = operation.toString();
+        }
+        return names;
+    }
+
+    public long[] getCounts() {
+        long[] counts = new long[timers.length];
+        for (int i = 0; i < timers.length; i++) {
+            counts[i] = timers[i].count.sum();
+        }
+        return counts;
+    }
+
+    public double[] getMeanMillis() {
+        double[] means = new double[timers.length];
+        for (int i = 0; i < timers.length; i++) {
+            long count = timers[i].count.sum();
+            means[i] = count == 0 ? 0 : timers[i].total.sum() / 1e6 / count;
+        }
+        return means;
+    }
+
+    public double[] getP99Millis() {
+        double[] percentiles = new double[timers.length];
+        for (int i = 0; i < timers.length; i++) {
+            percentiles[i] = timers[i].percentile(0.99) / 1e6;
+        }
+        return percentiles;
+    }
+
+    public double[] getMaxMillis() {
+        double[] maxes = new double[timers.length];
+        for (int i = 0; i < timers.length; i++) {
+            maxes[i] = timers[i].max.get() / 1e6;
+        }
+        return maxes;
+    }
+
+    public long getNodesLoaded() {
+        return nodesLoaded.sum();
+    }
+
+    public long getNodesWritten() {
+        return nodesWritten.sum();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    public long getMaxDepth() {
+        return maxDepth.get();
+    }
+
+    public void reset() {
+        for (Timer timer : timers) {
+            timer.reset();
+        }
+        nodesLoaded.reset();
+        nodesWritten.reset();
+        bytesRead.reset();
+        bytesWritten.reset();
+        maxDepth.reset();
+    }
+
+    /**
+     * Provides a table of the measurements
+     * @return the count, mean, median, 99th percentile and longest time of each operation, followed by the totals
+     */
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "%-18s %10s %11s %11s %11s %11s%n",
+                "Operation", "Count", "Mean ms", "p50 ms", "p99 ms", "Max ms"));
+        for (Operation operation : Operation.values()) {
+            Timer timer = timers[operation.ordinal()];
+            long count = timer.count.sum();
+            sb.append(String.format(Locale.ROOT, "%-18s %10d %11.3f %11.3f %11.3f %11.3f%n", operation, count,
+                    count == 0 ? 0 : timer.total.sum() / 1e6 / count, timer.percentile(0.5) / 1e6,
+                    timer.percentile(0.99) / 1e6, timer.max.get() / 1e6));
+        }
+        sb.append(String.format(Locale.ROOT, "Nodes loaded %d, written %d; bytes read %d, written %d; max depth %d",
+                getNodesLoaded(), getNodesWritten(), getBytesRead(), getBytesWritten(), getMaxDepth()));
+        return sb.toString();
+    }
+}
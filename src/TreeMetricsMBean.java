@@ -0,0 +1,82 @@
+/**
+ * Management interface of TreeMetrics, registered with the platform MBean server as fxgui:type=TreeMetrics
+ */
+public interface TreeMetricsMBean {
+
+    /**
+     * Finds whether operations are being measured
+     * @return true if measuring is on
+     */
+    boolean isEnabled();
+
+    /**
+     * Turns measuring of operations on or off
+     * @param enabled whether to measure operations
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Getter method for the names of the measured operations, in the order of the other arrays
+     * @return the names of the operations
+     */
+    String[] getOperations();
+
+    /**
+     * Getter method for the number of times each operation ran
+     * @return the count of each operation
+     */
+    long[] getCounts();
+
+    /**
+     * Getter method for the mean time taken by each operation
+     * @return the mean time of each operation, in milliseconds
+     */
+    double[] getMeanMillis();
+
+    /**
+     * Getter method for the time within which 99% of the runs of each operation finished
+     * @return the 99th percentile of the time of each operation, in milliseconds
+     */
+    double[] getP99Millis();
+
+    /**
+     * Getter method for the longest time taken by each operation
+     * @return the longest time of each operation, in milliseconds
+     */
+    double[] getMaxMillis();
+
+    /**
+     * Getter method for the number of nodes loaded from files
+     * @return the number of nodes loaded
+     */
+    long getNodesLoaded();
+
+    /**
+     * Getter method for the number of nodes written to files
+     * @return the number of nodes saved or exported
+     */
+    long getNodesWritten();
+
+    /**
+     * Getter method for the number of bytes of the files loaded
+     * @return the number of bytes read
+     */
+    long getBytesRead();
+
+    /**
+     * Getter method for the number of bytes of the files saved or exported
+     * @return the number of bytes written
+     */
+    long getBytesWritten();
+
+    /**
+     * Getter method for the depth of the deepest tree loaded
+     * @return the largest depth of a loaded node
+     */
+    long getMaxDepth();
+
+    /**
+     * Clears all the measurements
+     */
+    void reset();
+}
@@ -0,0 +1,267 @@
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Prints the nodes of an FXComponentTree in the format of FXComponentTree.printTree, which is also the format of the
+ * text files written by writeToFile. Lines are built in one reusable buffer that is printed whenever it fills, with
+ * the depth of each node taken from a TreeWalker rather than found by walking to the root. A renderer can also print
+ * only the nodes around the cursor, summarizing the siblings it leaves out as "+ 2,341 more children", which takes
+ * the same time for a tree of any size.
+ */
+public class TreeRenderer {
+    private static final int BUFFER_SIZE = 1 << 16; //characters buffered before they are printed
+    private static final char[] TABS = new char[64]; //indentation copied in chunks for any depth
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    static {
+        Arrays.fill(TABS, '\t');
+    }
+
+    private final Appendable out; //stream or writer to print to
+    private final TreeWalker walker = new TreeWalker(); //walker reused for every whole tree printed
+    private final StringBuilder sb = new StringBuilder(BUFFER_SIZE); //text not yet printed
+    private int window; //most nodes printed around the cursor, or 0 for the whole tree
+    private FXTreeNode cursor; //cursor of the tree being printed
+    private FXTreeNode[] pathNodes = new FXTreeNode[16]; //nodes from the root to the current node, by depth
+    private int[] pathIndices = new int[16]; //index of each node of the path within its parent, by depth
+    private int pathDepth; //depth of the current node
+
+    /**
+     * Creates a renderer that prints whole trees
+     * @param out stream or writer to print to, such as a PrintStream or PrintWriter
+     */
+    public TreeRenderer(Appendable out) {
+        this.out = out;
+    }
+
+    /**
+     * Limits printing to the nodes nearest the cursor in print order, so that only they are visited. Siblings cut
+     * off at either end of the window are summarized.
+     * @param window most nodes printed, half of them before the cursor, or 0 to print the whole tree
+     * @return this renderer
+     */
+    public TreeRenderer setWindow(int window) {
+        this.window = Math.max(window, 0);
+        return this;
+    }
+
+    /**
+     * Prints a node and the nodes below it, or the window around the cursor if one is set
+     * @param tree the tree the node is in
+     * @param node the node to print from, usually the root, which is not used for a window
+     */
+    public void render(FXComponentTree tree, FXTreeNode node) {
+        if (node == null) {
+            return;
+        }
+        cursor = tree.getCursor();
+        if (window > 0) {
+            renderWindow(tree);
+        }
+        else {
+            walker.start(node, tree.findDepth(node));
+            while (walker.nextPreOrder()) {
+                appendNode(walker.getNode(), walker.getDepth());
+            }
+        }
+        print();
+        if (out instanceof Flushable) {
+            try {
+                ((Flushable) out).flush();
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        cursor = null;
+        Arrays.fill(pathNodes, null);
+    }
+
+    /**
+     * Prints the window nodes nearest the cursor in print order, preceded by those of their ancestors that are as deep
+     * as the shallowest of them. The walk starts from the cursor and keeps the path to the current node, so it only
+     * visits the nodes it prints and their ancestors.
+     * @param tree the tree being printed
+     */
+    private void renderWindow(FXComponentTree tree) {
+        pathDepth = tree.findDepth(cursor);
+        ensurePathCapacity(pathDepth + 1);
+        FXTreeNode node = cursor;
+        for (int d = pathDepth; d > 0; d--) {
+            FXTreeNode parent = node.getParent();
+            pathNodes[d] = node;
+            pathIndices[d] = node.getIndex();
+            node = parent;
+        }
+        pathNodes[0] = node;
+        for (int i = 0; i < (window - 1) / 2 && stepBack(); i++) {
+            //walks back to the first node of the window
+        }
+        int firstDepth = pathDepth;
+        FXTreeNode[] firstNodes = Arrays.copyOf(pathNodes, firstDepth + 1);
+        int[] firstIndices = Arrays.copyOf(pathIndices, firstDepth + 1);
+        int minDepth = pathDepth;
+        int printed = 0;
+        do {
+            appendNode(pathNodes[pathDepth], pathDepth);
+            minDepth = Math.min(minDepth, pathDepth);
+            printed++;
+        } while (printed < window && stepForward());
+        FXTreeNode last = pathNodes[pathDepth];
+        if (last.numChildren() > 0) {
+            appendSummary(last.numChildren(), pathDepth + 1);
+        }
+        for (int d = pathDepth; d > 0 && d >= minDepth; d--) {
+            appendSummary(pathNodes[d - 1].numChildren() - pathIndices[d] - 1, d);
+        }
+        int headerStart = sb.length();
+        for (int d = Math.max(Math.max(minDepth, 1), firstDepth - window + 1); d <= firstDepth; d++) {
+            appendSummary(firstIndices[d], d);
+            if (d < firstDepth) {
+                appendNode(firstNodes[d], d);
+            }
+        }
+        String header = sb.substring(headerStart);
+        sb.setLength(headerStart);
+        sb.insert(0, header);
+    }
+
+    /**
+     * Moves the path to the node printed before the current one
+     * @return false if the current node is the first one of the tree
+     */
+    private boolean stepBack() {
+        if (pathDepth == 0) {
+            return false;
+        }
+        int index = pathIndices[pathDepth];
+        if (index == 0) {
+            pathNodes[pathDepth--] = null;
+            return true;
+        }
+        pathIndices[pathDepth] = index - 1;
+        pathNodes[pathDepth] = pathNodes[pathDepth - 1].getChild(index - 1);
+        FXTreeNode node = pathNodes[pathDepth];
+        while (node.numChildren() > 0) {
+            int last = node.numChildren() - 1;
+            node = node.getChild(last);
+            push(node, last);
+        }
+        return true;
+    }
+
+    /**
+     * Moves the path to the node printed after the current one
+     * @return false if the current node is the last one of the tree
+     */
+    private boolean stepForward() {
+        FXTreeNode node = pathNodes[pathDepth];
+        if (node.numChildren() > 0) {
+            push(node.getChild(0), 0);
+            return true;
+        }
+        for (int d = pathDepth; d > 0; d--) {
+            FXTreeNode parent = pathNodes[d - 1];
+            int next = pathIndices[d] + 1;
+            if (next < parent.numChildren()) {
+                Arrays.fill(pathNodes, d + 1, pathDepth + 1, null);
+                pathDepth = d;
+                pathIndices[d] = next;
+                pathNodes[d] = parent.getChild(next);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds a child of the current node to the end of the path
+     * @param node the child
+     * @param index index of the child within the current node
+     */
+    private void push(FXTreeNode node, int index) {
+        ensurePathCapacity(pathDepth + 2);
+        pathDepth++;
+        pathNodes[pathDepth] = node;
+        pathIndices[pathDepth] = index;
+    }
+
+    /**
+     * Grows the path arrays so that they can hold a path of the specified length
+     * @param length the number of nodes the path must be able to hold
+     */
+    private void ensurePathCapacity(int length) {
+        if (length > pathNodes.length) {
+            int capacity = Math.max(length, pathNodes.length * 2);
+            pathNodes = Arrays.copyOf(pathNodes, capacity);
+            pathIndices = Arrays.copyOf(pathIndices, capacity);
+        }
+    }
+
+    /**
+     * Adds the line of a node to the buffer, printing the buffer if it is full
+     * @param node the node
+     * @param depth depth of the node within the tree
+     */
+    private void appendNode(FXTreeNode node, int depth) {
+        appendTabs(depth);
+        sb.append(node == cursor ? "==>" : "+--").append(node.getType().toString());
+        if (!node.getType().isContainer()) {
+            sb.append(": ").append(node.getText());
+        }
+        endLine();
+    }
+
+    /**
+     * Adds a line summarizing children that are left out, unless there are none
+     * @param count number of children left out
+     * @param depth depth of the children within the tree
+     */
+    private void appendSummary(int count, int depth) {
+        if (count <= 0) {
+            return;
+        }
+        appendTabs(depth);
+        sb.append("+ ").append(String.format(Locale.ROOT, "%,d", count))
+                .append(count == 1 ? " more child" : " more children");
+        endLine();
+    }
+
+    /**
+     * Adds the indentation of a depth to the buffer
+     * @param depth depth of the line
+     */
+    private void appendTabs(int depth) {
+        while (depth > 0) {
+            int n = Math.min(depth, TABS.length);
+            sb.append(TABS, 0, n);
+            depth -= n;
+        }
+    }
+
+    /**
+     * Ends the current line, printing the buffer if it is full
+     */
+    private void endLine() {
+        sb.append(LINE_SEPARATOR);
+        if (sb.length() >= BUFFER_SIZE && window == 0) {
+            print();
+        }
+    }
+
+    /**
+     * Prints the buffer and empties it
+     */
+    private void print() {
+        try {
+            out.append(sb);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        sb.setLength(0);
+    }
+}
@@ -0,0 +1,224 @@
+import java.util.Arrays;
+
+/**
+ * Walks the nodes below a node of an FXComponentTree without recursion. The walker keeps the path from the node it
+ * started at to the current node on an explicit stack that grows with the deepest path seen and is reused by later
+ * walks, so walking a tree of any depth allocates nothing per node and cannot overflow the call stack.
+ * <p>
+ * A walk is a sequence of events, each either entering a node, before any of its children, or exiting it, after all
+ * of them. It can be stepped through with next, or only its enters or exits with nextPreOrder and nextPostOrder, or
+ * handed to a Visitor with walk. A walker is not safe for use by several threads or by nested walks at once.
+ */
+public class TreeWalker {
+    private FXTreeNode[] nodes = new FXTreeNode[16]; //nodes from the start node to the current node, by level
+    private int[] indices = new int[16]; //index of each node of the path within its parent, by level
+    private int level = -1; //level of the current node below the start node, or -1 once the walk is over
+    private int startDepth; //depth of the start node within its tree
+    private boolean started; //whether the first event has been returned
+    private boolean entering; //whether the current event enters the current node rather than exiting it
+    private boolean descend; //whether the walk goes into the children of the current node after entering it
+
+    /**
+     * Receives the events of a walk
+     * @param <E> the type of exception the visitor can throw
+     */
+    public interface Visitor<E extends Exception> {
+        /**
+         * Called when a node is entered, before any of its children
+         * @param node the node
+         * @param depth depth of the node within its tree
+         * @return false to skip the node's children, in which case exit is not called for the node
+         * @throws E if the visitor fails, which ends the walk
+         */
+        boolean enter(FXTreeNode node, int depth) throws E;
+
+        /**
+         * Called when a node is exited, after all of its children
+         * @param node the node
+         * @param depth depth of the node within its tree
+         * @throws E if the visitor fails, which ends the walk
+         */
+        default void exit(FXTreeNode node, int depth) throws E {
+            //nothing happens after the children by default
+        }
+    }
+
+    /**
+     * Starts a new walk, abandoning any walk in progress
+     * @param node the node to walk from, which is the first node entered and the last exited
+     * @param depth depth of the node within its tree
+     * @return this walker
+     */
+    public TreeWalker start(FXTreeNode node, int depth) {
+        Arrays.fill(nodes, 0, Math.max(level + 1, 1), null);
+        nodes[0] = node;
+        indices[0] = -1;
+        level = 0;
+        startDepth = depth;
+        started = false;
+        return this;
+    }
+
+    /**
+     * Walks the nodes below a node, passing each event to a visitor
+     * @param node the node to walk from
+     * @param depth depth of the node within its tree
+     * @param visitor the visitor receiving the events
+     * @param <E> the type of exception the visitor can throw
+     * @throws E if the visitor fails
+     */
+    public <E extends Exception> void walk(FXTreeNode node, int depth, Visitor<E> visitor) throws E {
+        start(node, depth);
+        while (next()) {
+            FXTreeNode current = nodes[level];
+            if (!entering) {
+                visitor.exit(current, startDepth + level);
+            }
+            else if (!visitor.enter(current, startDepth + level)) {
+                skipChildren();
+                next(); //the exit of a node whose children are skipped is not passed on
+            }
+        }
+    }
+
+    /**
+     * Moves to the next event of the walk
+     * @return false if the walk is over
+     */
+    public boolean next() {
+        if (level < 0) {
+            return false;
+        }
+        if (!started) {
+            started = true;
+            entering = true;
+            descend = true;
+            return true;
+        }
+        if (entering) {
+            FXTreeNode node = nodes[level];
+            if (descend && node.numChildren() > 0) {
+                push(node.getChild(0));
+                descend = true;
+            }
+            else {
+                entering = false;
+            }
+            return true;
+        }
+        if (level == 0) {
+            nodes[0] = null;
+            level = -1;
+            return false;
+        }
+        FXTreeNode parent = nodes[level - 1];
+        int next = indices[level] + 1;
+        if (next < parent.numChildren()) {
+            nodes[level] = parent.getChild(next);
+            indices[level] = next;
+            entering = true;
+            descend = true;
+        }
+        else {
+            nodes[level--] = null;
+        }
+        return true;
+    }
+
+    /**
+     * Moves to the next node entered, which walks the nodes in pre-order
+     * @return false if the walk is over
+     */
+    public boolean nextPreOrder() {
+        while (next()) {
+            if (entering) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves to the next node exited, which walks the nodes in post-order
+     * @return false if the walk is over
+     */
+    public boolean nextPostOrder() {
+        while (next()) {
+            if (!entering) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Skips the children of the node just entered, so that the next event exits it
+     */
+    public void skipChildren() {
+        descend = false;
+    }
+
+    /**
+     * Adds a child of the current node to the end of the path
+     * @param node the first child of the current node
+     */
+    private void push(FXTreeNode node) {
+        if (level + 1 == nodes.length) {
+            nodes = Arrays.copyOf(nodes, nodes.length * 2);
+            indices = Arrays.copyOf(indices, indices.length * 2);
+        }
+        level++;
+        nodes[level] = node;
+        indices[level] = 0;
+    }
+
+    /**
+     * Finds whether the current event enters a node rather than exiting it
+     * @return true before the node's children, false after them
+     */
+    public boolean isEntering() {
+        return entering;
+    }
+
+    /**
+     * Getter method for the node of the current event
+     * @return the current node
+     */
+    public FXTreeNode getNode() {
+        return nodes[level];
+    }
+
+    /**
+     * Getter method for the depth of the current node within its tree
+     * @return the depth of the current node
+     */
+    public int getDepth() {
+        return startDepth + level;
+    }
+
+    /**
+     * Getter method for the level of the current node below the start node
+     * @return the number of nodes between the start node and the current node, 0 for the start node itself
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Finds the index of a node of the current path within its parent
+     * @param level level of the node below the start node, from 1 to getLevel()
+     * @return the index of the node among its parent's children
+     */
+    public int getIndex(int level) {
+        return indices[level];
+    }
+
+    /**
+     * Finds the ancestor of the current node at a level of the current path
+     * @param level level of the ancestor below the start node, from 0 to getLevel()
+     * @return the node at that level
+     */
+    public FXTreeNode getNode(int level) {
+        return nodes[level];
+    }
+}
@@ -0,0 +1,177 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ * Exports versions of an FXComponentTree as FXML, reusing the output of the previous export for the subtrees the
+ * versions share. An edit copies only the path from the root to the node it changes, so a node of the new version that
+ * is the very node of the previous one has an unchanged subtree. As in IncrementalFXMLExporter, each largest subtree
+ * whose FXML is at most FRAGMENT_LIMIT bytes keeps a copy of those bytes after an export, and the document is streamed
+ * to its destination as it is written. Since versions never change, the fragments are kept by the exporter rather
+ * than by the nodes, and the versions may be written on a thread other than the one editing the tree.
+ */
+public class VersionFXMLExporter {
+    private static final int FRAGMENT_LIMIT = 8192; //largest subtree FXML, in bytes, cached as one fragment
+
+    private IdentityHashMap<PersistentTree.Node, Fragment> fragments = new IdentityHashMap<>(); //of the last export
+    private IdentityHashMap<PersistentTree.Node, Fragment> fresh; //fragments of the export in progress
+    private FXMLWriter writer; //writer of the export in progress
+    private long[] offsets = new long[64]; //start and end of each finished child of the open nodes, and their starts
+    private int top; //number of offsets in use
+    private int[] bases = new int[64]; //size of the offset stack when the children of each open node began, by depth
+    private int firstSmall; //depth of the first open node below the root whose output is still small enough to cache
+    private final PersistentTree.Walker walker = new PersistentTree.Walker(); //walker reused between exports
+
+    /**
+     * The FXML of a subtree, which depends on the depth it was written at
+     */
+    private static final class Fragment {
+        private final byte[] bytes; //FXML of the subtree
+        private final int depth; //depth of the subtree's root when it was written
+
+        /**
+         * Creates a fragment
+         * @param bytes FXML of the subtree
+         * @param depth depth of the subtree's root
+         */
+        Fragment(byte[] bytes, int depth) {
+            this.bytes = bytes;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * Writes a version as an FXML document. The fragments of the previous export are kept if this one fails.
+     * @param version the version to write
+     * @param out stream to write the document to
+     * @throws IOException if the document cannot be written
+     */
+    public void export(PersistentTree version, OutputStream out) throws IOException {
+        writer = new FXMLWriter(out, null);
+        fresh = new IdentityHashMap<>();
+        try {
+            writer.writeHeader();
+            walker.start(version.getRoot());
+            while (walker.next()) {
+                if (!walker.isEntering()) {
+                    exit(walker.getNode(), walker.getLevel());
+                }
+                else if (!enter(walker.getNode(), walker.getLevel())) {
+                    walker.skipChildren();
+                    walker.next(); //the fragment holds the node's end too
+                }
+            }
+            writer.writeFooter();
+            writer.flush();
+            fragments = fresh;
+        }
+        finally {
+            writer = null;
+            fresh = null;
+            top = 0;
+        }
+    }
+
+    /**
+     * Starts writing a node, copying the fragment of the previous export instead if it was written at the same depth.
+     * The start of every node below the root is pushed onto the offset stack, followed by its end once it is written.
+     * @param node the node entered
+     * @param depth depth of the node within the version
+     * @return false if the fragment was copied, so that the node's children are skipped
+     * @throws IOException if the output cannot be written
+     */
+    private boolean enter(PersistentTree.Node node, int depth) throws IOException {
+        if (depth == 0) {
+            bases[0] = top;
+            firstSmall = 1;
+            writer.retainFrom(writer.position());
+            return true;
+        }
+        push(writer.position());
+        Fragment cached = fragments.get(node);
+        if (cached != null && cached.depth == depth) {
+            writer.write(cached.bytes);
+            fresh.put(node, cached);
+            push(writer.position());
+            settle(depth - 1);
+            return false;
+        }
+        if (depth == bases.length) {
+            bases = Arrays.copyOf(bases, depth * 2);
+        }
+        writer.writeStart(node.getType(), node.getText(), depth);
+        bases[depth] = top;
+        settle(depth);
+        return true;
+    }
+
+    /**
+     * Finishes writing a node once its children are written. A node that is still small drops the fragments of its
+     * children, since it is cached whole, and keeps its own fragment if its parent is too large to be cached.
+     * @param node the node exited
+     * @param depth depth of the node within the version
+     * @throws IOException if the output cannot be written
+     */
+    private void exit(PersistentTree.Node node, int depth) throws IOException {
+        if (depth == 0) {
+            top = bases[0];
+            return;
+        }
+        writer.writeEnd(node.getType(), depth);
+        settle(depth);
+        if (firstSmall <= depth) {
+            for (int i = 0; i < node.numChildren(); i++) {
+                fresh.remove(node.getChild(i));
+            }
+        }
+        top = bases[depth];
+        push(writer.position());
+        if (firstSmall == depth) {
+            fresh.put(node, new Fragment(writer.copyRange(offsets[top - 2], offsets[top - 1]), depth));
+        }
+        firstSmall = Math.min(firstSmall, depth);
+        settle(depth - 1);
+    }
+
+    /**
+     * Passes over the open nodes whose output has grown beyond FRAGMENT_LIMIT, keeping the fragments of their small
+     * finished children, and lets the writer flush everything before the first open node that may still be cached
+     * @param depth depth of the deepest open node
+     */
+    private void settle(int depth) {
+        while (firstSmall <= depth && writer.position() - offsets[bases[firstSmall] - 1] > FRAGMENT_LIMIT) {
+            int end = firstSmall < depth ? bases[firstSmall + 1] - 1 : top;
+            cacheChildren(walker.getNode(firstSmall), firstSmall + 1, bases[firstSmall], end);
+            firstSmall++;
+        }
+        writer.retainFrom(firstSmall <= depth ? offsets[bases[firstSmall] - 1] : writer.position());
+    }
+
+    /**
+     * Keeps the fragment of each freshly written child of a node that is small enough to be cached
+     * @param node the node whose children were written
+     * @param depth depth of the children within the version
+     * @param from index in the offset stack of the start of the first child
+     * @param to index in the offset stack after the end of the last finished child
+     */
+    private void cacheChildren(PersistentTree.Node node, int depth, int from, int to) {
+        for (int i = 0, k = from; k + 1 < to; i++, k += 2) {
+            PersistentTree.Node child = node.getChild(i);
+            if (!fresh.containsKey(child) && offsets[k + 1] - offsets[k] <= FRAGMENT_LIMIT) {
+                fresh.put(child, new Fragment(writer.copyRange(offsets[k], offsets[k + 1]), depth));
+            }
+        }
+    }
+
+    /**
+     * Pushes an offset onto the offset stack
+     * @param offset the offset to push
+     */
+    private void push(long offset) {
+        if (top == offsets.length) {
+            offsets = Arrays.copyOf(offsets, top * 2);
+        }
+        offsets[top++] = offset;
+    }
+}
@@ -0,0 +1,142 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that trees saved by writeToBinaryFile load back through readFromBinaryFile as the very nodes listed in the
+ * text file they were first loaded from, read again with TreeFileReader
+ */
+class BinaryTreeFileTest {
+    @TempDir
+    Path dir; //directory holding the files of each test
+
+    @Test
+    void keepsMarkupCharactersInTexts() throws Exception {
+        roundTrip("0 AnchorPane\n"
+                + "0-0 VBox\n"
+                + "0-0-0 Button <b>&amp;</b>\n"
+                + "0-0-1 Label \"quoted\" and 'single'\n"
+                + "0-0-2 TextArea a < b && c > d\n"
+                + "0-1 Label back\\slash\n");
+    }
+
+    @Test
+    void keepsUnicodeTexts() throws Exception {
+        roundTrip("0 AnchorPane\n"
+                + "0-0 Button héllo\n"
+                + "0-1 Label 日本語\n"
+                + "0-2 TextArea 😀 and 🎉\n"
+                + "0-3 HBox\n"
+                + "0-3-0 Label مرحبا\n");
+    }
+
+    @Test
+    void keepsEmptyAndSpacedTexts() throws Exception {
+        roundTrip("0 AnchorPane\n"
+                + "0-0 Button\n"
+                + "0-1 Label \n"
+                + "0-2 TextArea   padded  \n"
+                + "0-3 VBox\n");
+    }
+
+    @Test
+    void keepsRepeatedTexts() throws Exception {
+        StringBuilder sb = new StringBuilder("0 AnchorPane\n");
+        for (int i = 0; i < 1000; i++) {
+            sb.append("0-").append(i).append(i % 2 == 0 ? " Button ok\n" : " Label ok" + i % 7 + "\n");
+        }
+        roundTrip(sb.toString());
+    }
+
+    @Test
+    void keepsDeepTrees() throws Exception {
+        StringBuilder sb = new StringBuilder("0 AnchorPane\n");
+        StringBuilder position = new StringBuilder("0");
+        for (int i = 0; i < 5000; i++) {
+            position.append("-0");
+            sb.append(position).append(i % 2 == 0 ? " VBox\n" : " HBox\n");
+        }
+        sb.append(position).append("-0 Button bottom\n");
+        roundTrip(sb.toString());
+    }
+
+    @Test
+    void keepsWideTrees() throws Exception {
+        StringBuilder sb = new StringBuilder("0 AnchorPane\n0-0 VBox\n");
+        for (int i = 0; i < 100000; i++) {
+            sb.append("0-0-").append(i).append(" Button b").append(i).append('\n');
+        }
+        roundTrip(sb.toString());
+    }
+
+    @Test
+    void keepsEmptyTrees() throws Exception {
+        roundTrip("0 AnchorPane\n");
+    }
+
+    @Test
+    void rejectsFilesThatAreNotBinaryTrees() throws Exception {
+        Path file = dir.resolve("tree" + BinaryTreeFile.EXTENSION);
+        Files.write(file, "0 AnchorPane\n".getBytes(StandardCharsets.UTF_8));
+        assertThrows(MalformedTreeFileException.class, () -> new FXComponentTree().readFromBinaryFile(file.toString()));
+    }
+
+    @Test
+    void rejectsTruncatedFiles() throws Exception {
+        Path text = write("0 AnchorPane\n0-0 VBox\n0-0-0 Button ok\n0-0-1 Label héllo\n");
+        Path binary = dir.resolve("tree" + BinaryTreeFile.EXTENSION);
+        new FXComponentTree().readFromFile(text.toString()).writeToBinaryFile(binary.toString());
+        byte[] bytes = Files.readAllBytes(binary);
+        for (int length = 0; length < bytes.length; length++) {
+            Files.write(binary, Arrays.copyOf(bytes, length));
+            assertThrows(MalformedTreeFileException.class,
+                    () -> new FXComponentTree().readFromBinaryFile(binary.toString()), "truncated to " + length);
+        }
+    }
+
+    /**
+     * Loads a tree from a text file, saves it as a binary file, loads that, and checks the loaded nodes against the
+     * lines of the text file
+     * @param lines the text file, in the positional format
+     * @throws Exception if a file cannot be written or read
+     */
+    private void roundTrip(String lines) throws Exception {
+        Path text = write(lines);
+        Path binary = dir.resolve("tree" + BinaryTreeFile.EXTENSION);
+        new FXComponentTree().readFromFile(text.toString()).writeToBinaryFile(binary.toString());
+        FXComponentTree loaded = new FXComponentTree().readFromBinaryFile(binary.toString());
+        TreeWalker walker = new TreeWalker().start(loaded.getRoot(), 0);
+        assertTrue(walker.nextPreOrder());
+        assertEquals(ComponentType.AnchorPane, walker.getNode().getType());
+        try (TreeFileReader reader = new TreeFileReader(text.toString())) {
+            while (reader.next()) {
+                String where = "line " + reader.getLineNumber();
+                assertTrue(walker.nextPreOrder(), where);
+                assertEquals(reader.getDepth(), walker.getLevel(), where);
+                assertEquals(reader.getType(), walker.getNode().getType(), where);
+                assertEquals(reader.getText(), walker.getNode().getText(), where);
+            }
+        }
+        assertFalse(walker.nextPreOrder(), "nodes after the last line");
+    }
+
+    /**
+     * Writes a text file in the test's directory
+     * @param lines contents of the file
+     * @return the file
+     * @throws IOException if the file cannot be written
+     */
+    private Path write(String lines) throws IOException {
+        return Files.write(dir.resolve("tree.txt"), lines.getBytes(StandardCharsets.UTF_8));
+    }
+}
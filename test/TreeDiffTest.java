@@ -0,0 +1,98 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that TreeDiff pairs each changed container with its old self, so that the edit script holds one operation
+ * per change, and that applying the script turns the first tree into the second
+ */
+class TreeDiffTest {
+    @TempDir
+    Path dir; //directory holding the files of each test
+
+    @Test
+    void dropsOneContainerAndChangesOneText() throws Exception {
+        FXComponentTree from = load(layout(200, 5, 20));
+        FXComponentTree to = load(layout(200, 5, 20));
+        to.cursorToRoot();
+        to.deleteChild(3);
+        to.cursorToPath("0-149-2-7");
+        to.setTextAtCursor("changed");
+        TreeDiff diff = TreeDiff.compare(from, to);
+        assertEquals(Map.of(TreeDiff.Kind.DELETE, 1, TreeDiff.Kind.TEXT, 1), count(diff), diff.toString());
+        from.applyPatch(diff);
+        assertTrue(from.sameTree(to));
+    }
+
+    @Test
+    void pairsChangedContainersNextToDroppedOnes() throws Exception {
+        FXComponentTree from = load(layout(100, 3, 10));
+        FXComponentTree to = load(layout(100, 3, 10));
+        int changes = 0;
+        for (int i = 90; i >= 10; i -= 10) {
+            to.cursorToRoot();
+            to.deleteChild(i);
+            to.cursorToPath("0-" + i + "-0-5"); //the container that took the dropped one's place
+            to.setTextAtCursor("changed");
+            changes++;
+        }
+        TreeDiff diff = TreeDiff.compare(from, to);
+        assertEquals(Map.of(TreeDiff.Kind.DELETE, changes, TreeDiff.Kind.TEXT, changes), count(diff), diff.toString());
+        from.applyPatch(diff);
+        assertTrue(from.sameTree(to));
+    }
+
+    /**
+     * Counts the operations of an edit script by kind
+     * @param diff the edit script
+     * @return the number of operations of each kind in the script
+     */
+    private static Map<TreeDiff.Kind, Integer> count(TreeDiff diff) {
+        Map<TreeDiff.Kind, Integer> counts = new EnumMap<>(TreeDiff.Kind.class);
+        for (TreeDiff.Op op : diff.getOps()) {
+            counts.merge(op.getKind(), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * Writes a tree text file of VBoxes below the root, each holding HBoxes of Labels whose texts are all distinct
+     * @param boxes number of VBoxes
+     * @param rows number of HBoxes in each VBox
+     * @param labels number of Labels in each HBox
+     * @return the lines of the file
+     */
+    private static String layout(int boxes, int rows, int labels) {
+        StringBuilder sb = new StringBuilder("0 AnchorPane\n");
+        for (int i = 0; i < boxes; i++) {
+            sb.append("0-").append(i).append(" VBox\n");
+            for (int j = 0; j < rows; j++) {
+                sb.append("0-").append(i).append('-').append(j).append(" HBox\n");
+                for (int k = 0; k < labels; k++) {
+                    sb.append("0-").append(i).append('-').append(j).append('-').append(k)
+                            .append(" Label t").append(i).append('.').append(j).append('.').append(k).append('\n');
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Loads a tree from a text file written in the test's directory
+     * @param lines contents of the file
+     * @return the tree
+     * @throws Exception if the file cannot be written or read
+     */
+    private FXComponentTree load(String lines) throws Exception {
+        Path file = Files.write(Files.createTempFile(dir, "tree", ".txt"), lines.getBytes(StandardCharsets.UTF_8));
+        return new FXComponentTree().readFromFile(file.toString());
+    }
+}